@@ -0,0 +1,100 @@
+package com.xiuxian.game.aop;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.aop.ProxyMethodInvocation;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * {@link RetryOnConflict}的拦截器，顺序在事务拦截器之外，每次重试都是一个新事务
+ */
+@Slf4j
+public class OptimisticRetryInterceptor implements MethodInterceptor {
+
+    private final int defaultMaxAttempts;
+    private final long baseBackoffMillis;
+    private final long maxBackoffMillis;
+    /**
+     * 延迟获取，避免Advisor创建时提前初始化MeterRegistry
+     */
+    private final ObjectProvider<MeterRegistry> meterRegistry;
+
+    public OptimisticRetryInterceptor(int defaultMaxAttempts, long baseBackoffMillis, long maxBackoffMillis,
+                                      ObjectProvider<MeterRegistry> meterRegistry) {
+        this.defaultMaxAttempts = defaultMaxAttempts;
+        this.baseBackoffMillis = baseBackoffMillis;
+        this.maxBackoffMillis = maxBackoffMillis;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+        // 外层已有事务时重试无意义（外层事务已被标记为回滚），交给外层处理；
+        // 不能复制的调用也不重试
+        if (TransactionSynchronizationManager.isActualTransactionActive()
+                || !(invocation instanceof ProxyMethodInvocation)) {
+            return invocation.proceed();
+        }
+        // 同一个MethodInvocation再次proceed会从拦截器链的当前位置之后继续，跳过事务拦截器，
+        // 每次尝试使用一个副本，从头走完后续拦截器
+        ProxyMethodInvocation proxyInvocation = (ProxyMethodInvocation) invocation;
+
+        Method method = invocation.getMethod();
+        RetryOnConflict annotation = method.getAnnotation(RetryOnConflict.class);
+        int maxAttempts = annotation != null && annotation.maxAttempts() > 0
+                ? annotation.maxAttempts() : defaultMaxAttempts;
+        String operation = method.getDeclaringClass().getSimpleName() + "." + method.getName();
+
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return proxyInvocation.invocableClone().proceed();
+            } catch (OptimisticLockingFailureException e) {
+                conflictCounter(operation).increment();
+                if (attempt >= maxAttempts) {
+                    Counter.builder("xiuxian.optimistic-lock.retries.exhausted")
+                            .description("重试次数用尽仍然冲突的次数")
+                            .tag("operation", operation)
+                            .register(meterRegistry.getObject())
+                            .increment();
+                    log.warn("乐观锁冲突重试次数用尽: {}, 次数={}", operation, attempt);
+                    throw e;
+                }
+                log.debug("乐观锁冲突，准备重试: {}, 第{}次", operation, attempt);
+                sleep(backoffMillis(attempt));
+            }
+        }
+    }
+
+    private Counter conflictCounter(String operation) {
+        return Counter.builder("xiuxian.optimistic-lock.conflicts")
+                .description("乐观锁版本冲突次数")
+                .tag("source", "service")
+                .tag("operation", operation)
+                .register(meterRegistry.getObject());
+    }
+
+    /**
+     * 指数退避加全抖动，避免冲突双方同时重试再次冲突
+     */
+    private long backoffMillis(int attempt) {
+        long ceiling = Math.min(maxBackoffMillis, baseBackoffMillis << Math.min(attempt - 1, 16));
+        return ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("重试等待被中断", e);
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package com.xiuxian.game.aop;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 标记在事务性服务方法上：遇到乐观锁版本冲突时，在新事务中以带抖动的退避重新执行整个方法
+ * 已处于外层事务中调用时不重试，由最外层标注的方法负责重试
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface RetryOnConflict {
+
+    /**
+     * 最大执行次数（含首次），小于等于0时使用app.game.retry.max-attempts
+     */
+    int maxAttempts() default 0;
+}
@@ -0,0 +1,37 @@
+package com.xiuxian.game.config;
+
+import com.xiuxian.game.aop.OptimisticRetryInterceptor;
+import com.xiuxian.game.aop.RetryOnConflict;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.aop.support.DefaultPointcutAdvisor;
+import org.springframework.aop.support.annotation.AnnotationMatchingPointcut;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Role;
+import org.springframework.core.Ordered;
+
+@Configuration
+public class RetryConfig {
+
+    /**
+     * 乐观锁冲突重试切面
+     * 注册为基础设施Advisor，由事务使用的自动代理一并织入（无需AspectJ依赖）；
+     * 顺序先于事务拦截器，保证每次重试开启新事务
+     */
+    @Bean
+    @Role(BeanDefinition.ROLE_INFRASTRUCTURE)
+    public static DefaultPointcutAdvisor optimisticRetryAdvisor(
+            @Value("${app.game.retry.max-attempts:3}") int maxAttempts,
+            @Value("${app.game.retry.base-backoff-ms:20}") long baseBackoffMillis,
+            @Value("${app.game.retry.max-backoff-ms:200}") long maxBackoffMillis,
+            ObjectProvider<MeterRegistry> meterRegistry) {
+        DefaultPointcutAdvisor advisor = new DefaultPointcutAdvisor(
+                AnnotationMatchingPointcut.forMethodAnnotation(RetryOnConflict.class),
+                new OptimisticRetryInterceptor(maxAttempts, baseBackoffMillis, maxBackoffMillis, meterRegistry));
+        advisor.setOrder(Ordered.LOWEST_PRECEDENCE - 1);
+        return advisor;
+    }
+}
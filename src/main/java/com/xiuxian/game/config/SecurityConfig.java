@@ -1,25 +1,36 @@
 package com.xiuxian.game.config;
 
+import com.xiuxian.game.security.AdaptiveBCryptPasswordEncoder;
 import com.xiuxian.game.security.JwtAuthenticationFilter;
+import com.xiuxian.game.security.OffloadingPasswordEncoder;
+import com.xiuxian.game.security.PasswordHashingExecutor;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.annotation.Order;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.config.annotation.authentication.configuration.AuthenticationConfiguration;
 import org.springframework.security.config.annotation.method.configuration.EnableGlobalMethodSecurity;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
+import org.springframework.security.config.annotation.web.configuration.WebSecurityCustomizer;
 import org.springframework.security.config.http.SessionCreationPolicy;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.web.SecurityFilterChain;
 import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
+import org.springframework.security.web.util.matcher.AntPathRequestMatcher;
+import org.springframework.security.web.util.matcher.OrRequestMatcher;
+import org.springframework.security.web.util.matcher.RequestMatcher;
 import org.springframework.web.cors.CorsConfiguration;
 import org.springframework.web.cors.CorsConfigurationSource;
 import org.springframework.web.cors.UrlBasedCorsConfigurationSource;
 
 import java.util.Arrays;
 
+@Slf4j
 @Configuration
 @EnableWebSecurity
 @EnableGlobalMethodSecurity(prePostEnabled = true)
@@ -28,9 +39,52 @@ public class SecurityConfig {
 
     private final JwtAuthenticationFilter jwtAuthenticationFilter;
 
+    /**
+     * 静态资源路径：完全绕过Spring Security过滤器链
+     */
+    private static final String[] STATIC_RESOURCES = {
+            "/static/**",
+            "/css/**",
+            "/js/**",
+            "/images/**",
+            "/fonts/**",
+            "/assets/**",
+            "/favicon.ico"
+    };
+
+    /**
+     * 公共只读API：使用不含JWT过滤器的精简过滤器链，匹配器启动时预编译
+     */
+    private static final RequestMatcher PUBLIC_API_MATCHER = new OrRequestMatcher(
+            new AntPathRequestMatcher("/api/public/**"),
+            new AntPathRequestMatcher("/api/players/public/**"),
+            new AntPathRequestMatcher("/api/skills/public/**"),
+            new AntPathRequestMatcher("/api/quests/public/**"),
+            new AntPathRequestMatcher("/api/equipments/public/**"),
+            new AntPathRequestMatcher("/api/inventory/public/**"),
+            new AntPathRequestMatcher("/api/shop/public/**")
+    );
+
+    /**
+     * BCrypt强度默认按本机延迟预算校准；多节点部署应配置全集群统一的强度，配置后不再校准
+     * 计算在独立的有界线程池中执行，不占用Tomcat工作线程的CPU时间
+     */
     @Bean
-    public PasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder();
+    public PasswordEncoder passwordEncoder(PasswordHashingExecutor passwordHashingExecutor,
+                                           @Value("${app.security.bcrypt.cost:0}") int configuredCost,
+                                           @Value("${app.security.bcrypt.rehash-tolerance:1}") int tolerance,
+                                           @Value("${app.security.bcrypt.budget-ms:100}") long budgetMillis,
+                                           @Value("${app.security.bcrypt.min-cost:8}") int minCost,
+                                           @Value("${app.security.bcrypt.max-cost:14}") int maxCost) {
+        int cost;
+        if (configuredCost > 0) {
+            cost = configuredCost;
+            log.info("使用配置的BCrypt强度: {}", cost);
+        } else {
+            cost = AdaptiveBCryptPasswordEncoder.calibrate(budgetMillis, minCost, maxCost);
+        }
+        AdaptiveBCryptPasswordEncoder encoder = new AdaptiveBCryptPasswordEncoder(cost, tolerance);
+        return new OffloadingPasswordEncoder(encoder, passwordHashingExecutor);
     }
 
     @Bean
@@ -52,26 +106,58 @@ public class SecurityConfig {
         return source;
     }
 
+    /**
+     * JwtAuthenticationFilter只在安全过滤器链中运行，禁止Spring Boot将其自动注册为全局Servlet过滤器
+     * （否则静态资源和公共API也会执行JWT解析）
+     */
+    @Bean
+    public FilterRegistrationBean<JwtAuthenticationFilter> jwtAuthenticationFilterRegistration() {
+        FilterRegistrationBean<JwtAuthenticationFilter> registration = new FilterRegistrationBean<>(jwtAuthenticationFilter);
+        registration.setEnabled(false);
+        return registration;
+    }
+
     @Bean
+    public WebSecurityCustomizer webSecurityCustomizer() {
+        return web -> web.ignoring().antMatchers(STATIC_RESOURCES);
+    }
+
+    /**
+     * 公共只读API的精简过滤器链：无JWT解析、无会话、无请求缓存
+     * 全部放行，不需要登出、匿名身份、异常转换、安全响应头和授权过滤器，链中只保留CORS
+     */
+    @Bean
+    @Order(1)
+    public SecurityFilterChain publicApiFilterChain(HttpSecurity http) throws Exception {
+        http
+                .requestMatcher(PUBLIC_API_MATCHER)
+                .cors(cors -> cors.configurationSource(corsConfigurationSource()))
+                .csrf(csrf -> csrf.disable())
+                .sessionManagement(session -> session.disable())
+                .securityContext(context -> context.disable())
+                .requestCache(cache -> cache.disable())
+                .logout(logout -> logout.disable())
+                .anonymous(anonymous -> anonymous.disable())
+                .exceptionHandling(exceptions -> exceptions.disable())
+                .headers(headers -> headers.disable());
+
+        return http.build();
+    }
+
+    @Bean
+    @Order(2)
     public SecurityFilterChain securityFilterChain(HttpSecurity http) throws Exception {
         http
                 .cors(cors -> cors.configurationSource(corsConfigurationSource()))
                 .csrf(csrf -> csrf.disable())
                 .sessionManagement(session -> session.sessionCreationPolicy(SessionCreationPolicy.STATELESS))
                 .authorizeRequests(auth -> auth
-                        // 静态资源允许匿名访问
+                        // 页面入口允许匿名访问（静态资源已在WebSecurityCustomizer中忽略）
                         .antMatchers(
                                 "/",
                                 "/index.html",
                                 "/xiuxian-game/",
                                 "/xiuxian-game/index.html",
-                                "/static/**",
-                                "/css/**",
-                                "/js/**",
-                                "/images/**",
-                                "/fonts/**",
-                                "/assets/**",
-                                "/favicon.ico",
                                 "/error/**"
                         ).permitAll()
 
@@ -79,19 +165,10 @@ public class SecurityConfig {
                         .antMatchers(
                                 "/api/auth/login",
                                 "/api/auth/register",
+                                "/api/auth/refresh",
                                 "/api/auth/validate"
                         ).permitAll()
 
-                        // 公共API允许匿名访问（只读操作）
-                        .antMatchers(
-                                "/api/players/public/**",
-                                "/api/skills/public/**",
-                                "/api/quests/public/**",
-                                "/api/equipments/public/**",
-                                "/api/inventory/public/**",
-                                "/api/shop/public/**"
-                        ).permitAll()
-
                         // 其他所有API需要认证
                         .anyRequest().authenticated()
                 )
@@ -1,16 +1,23 @@
 package com.xiuxian.game.controller;
 
 import com.xiuxian.game.dto.request.LoginRequest;
+import com.xiuxian.game.dto.request.RefreshTokenRequest;
 import com.xiuxian.game.dto.request.RegisterRequest;
 import com.xiuxian.game.dto.response.ApiResponse;
 import com.xiuxian.game.dto.response.LoginResponse;
+import com.xiuxian.game.dto.response.TokenRefreshResponse;
 import com.xiuxian.game.entity.User;
+import com.xiuxian.game.exception.ServiceBusyException;
+import com.xiuxian.game.exception.TooManyRequestsException;
+import com.xiuxian.game.security.AuthRateLimiter;
 import com.xiuxian.game.service.AuthService;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
 
+import javax.servlet.http.HttpServletRequest;
 import javax.validation.Valid;
 
 @RestController
@@ -19,27 +26,46 @@ import javax.validation.Valid;
 public class AuthController {
 
     private final AuthService authService;
+    private final AuthRateLimiter authRateLimiter;
 
     @PostMapping("/register")
-    public ResponseEntity<ApiResponse<LoginResponse>> register(@Valid @RequestBody RegisterRequest request) {
+    public ResponseEntity<ApiResponse<LoginResponse>> register(@Valid @RequestBody RegisterRequest request,
+                                                               HttpServletRequest httpRequest) {
+        checkRateLimit("register", httpRequest, request.getUsername());
         try {
             LoginResponse response = authService.register(request);
             return ResponseEntity.ok(ApiResponse.success("注册成功", response));
+        } catch (ServiceBusyException e) {
+            throw e;
         } catch (Exception e) {
             return ResponseEntity.badRequest().body(ApiResponse.error(e.getMessage()));
         }
     }
 
     @PostMapping("/login")
-    public ResponseEntity<ApiResponse<LoginResponse>> login(@Valid @RequestBody LoginRequest request) {
+    public ResponseEntity<ApiResponse<LoginResponse>> login(@Valid @RequestBody LoginRequest request,
+                                                            HttpServletRequest httpRequest) {
+        checkRateLimit("login", httpRequest, request.getUsername());
         try {
             LoginResponse response = authService.login(request);
             return ResponseEntity.ok(ApiResponse.success("登录成功", response));
+        } catch (ServiceBusyException e) {
+            throw e;
         } catch (Exception e) {
             return ResponseEntity.badRequest().body(ApiResponse.error("用户名或密码错误"));
         }
     }
 
+    @PostMapping("/refresh")
+    public ResponseEntity<ApiResponse<TokenRefreshResponse>> refresh(@Valid @RequestBody RefreshTokenRequest request) {
+        try {
+            TokenRefreshResponse response = authService.refresh(request.getRefreshToken());
+            return ResponseEntity.ok(ApiResponse.success("刷新成功", response));
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(ApiResponse.error(e.getMessage()));
+        }
+    }
+
     @GetMapping("/me")
     @PreAuthorize("isAuthenticated()")
     public ResponseEntity<ApiResponse<User>> getCurrentUser() {
@@ -53,9 +79,9 @@ public class AuthController {
 
     @PostMapping("/logout")
     @PreAuthorize("isAuthenticated()")
-    public ResponseEntity<ApiResponse<Void>> logout() {
+    public ResponseEntity<ApiResponse<Void>> logout(@RequestBody(required = false) RefreshTokenRequest request) {
         try {
-            authService.logout();
+            authService.logout(request != null ? request.getRefreshToken() : null);
             return ResponseEntity.ok(ApiResponse.success("登出成功", null));
         } catch (Exception e) {
             return ResponseEntity.badRequest().body(ApiResponse.error(e.getMessage()));
@@ -71,4 +97,14 @@ public class AuthController {
             return ResponseEntity.badRequest().body(ApiResponse.error("Token无效", false));
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * 按IP和用户名限流，超限时抛出TooManyRequestsException（429）
+     */
+    private void checkRateLimit(String endpoint, HttpServletRequest httpRequest, String username) {
+        long retryAfter = authRateLimiter.tryAcquire(endpoint, httpRequest.getRemoteAddr(), username);
+        if (retryAfter > 0) {
+            throw new TooManyRequestsException("请求过于频繁，请稍后再试", retryAfter);
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.xiuxian.game.controller;
+
+import com.xiuxian.game.dto.response.ApiResponse;
+import com.xiuxian.game.dto.response.CultivationLogPageResponse;
+import com.xiuxian.game.service.OfflineRewardService;
+import com.xiuxian.game.util.GameConstants;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+
+@RestController
+@RequestMapping("/api/player")
+@RequiredArgsConstructor
+@ConditionalOnProperty(value = "app.features.offline.enabled", havingValue = "true")
+public class CultivationLogController {
+
+    private final OfflineRewardService offlineRewardService;
+
+    /**
+     * 修炼日志游标分页：首次请求不带cursor，之后传入上一页返回的nextCursor
+     */
+    @GetMapping("/cultivation-logs")
+    @PreAuthorize("isAuthenticated()")
+    public ResponseEntity<ApiResponse<CultivationLogPageResponse>> getCultivationLogs(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "" + GameConstants.DEFAULT_CULTIVATION_LOG_PAGE_SIZE) Integer limit) {
+        try {
+            CultivationLogPageResponse page = offlineRewardService.getCultivationLogs(cursor, limit);
+            return ResponseEntity.ok(ApiResponse.success("获取成功", page));
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body(ApiResponse.error(e.getMessage()));
+        }
+    }
+}
@@ -1,12 +1,24 @@
 package com.xiuxian.game.controller;
 
 import com.xiuxian.game.dto.response.ApiResponse;
+import com.xiuxian.game.dto.response.OfflineRewardResponse;
+import com.xiuxian.game.entity.CultivationDailyPlayerStat;
 import com.xiuxian.game.entity.PlayerProfile;
+import com.xiuxian.game.service.CultivationStatsService;
+import com.xiuxian.game.service.OfflineRewardService;
+import com.xiuxian.game.service.PlayerEventHub;
 import com.xiuxian.game.service.PlayerService;
+import com.xiuxian.game.util.GameConstants;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.time.LocalDate;
+import java.util.List;
 
 @RestController
 @RequestMapping("/api/player")
@@ -14,12 +26,26 @@ import org.springframework.web.bind.annotation.*;
 public class PlayerController {
 
     private final PlayerService playerService;
+    private final PlayerEventHub playerEventHub;
+    private final CultivationStatsService cultivationStatsService;
+    // 离线收益功能按app.features.offline.enabled开启，关闭时没有该服务
+    private final ObjectProvider<OfflineRewardService> offlineRewardService;
+
+    /**
+     * 玩家状态推送（Server-Sent Events）：档案、任务、背包发生变化时推送增量，替代客户端轮询
+     */
+    @GetMapping(value = "/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @PreAuthorize("isAuthenticated()")
+    public SseEmitter events() {
+        return playerEventHub.subscribe(playerService.getCurrentPlayerId());
+    }
 
     @GetMapping("/profile")
     @PreAuthorize("isAuthenticated()")
     public ResponseEntity<ApiResponse<PlayerProfile>> getProfile() {
         try {
-            PlayerProfile profile = playerService.getCurrentPlayerProfile();
+            // 修炼中的收益在内存中推算，不写库
+            PlayerProfile profile = playerService.getCurrentPlayerProfileWithProgress();
             // 确保isCultivating字段不为null
             if (profile.getIsCultivating() == null) {
                 profile.setIsCultivating(false);
@@ -30,6 +56,24 @@ public class PlayerController {
         }
     }
 
+    /**
+     * 最近若干天的每日修炼汇总，直接读取汇总表
+     */
+    @GetMapping("/cultivation-stats")
+    @PreAuthorize("isAuthenticated()")
+    public ResponseEntity<ApiResponse<List<CultivationDailyPlayerStat>>> getCultivationStats(
+            @RequestParam(defaultValue = "7") Integer days) {
+        try {
+            int range = Math.max(1, Math.min(days, GameConstants.MAX_CULTIVATION_STATS_DAYS));
+            LocalDate today = LocalDate.now();
+            List<CultivationDailyPlayerStat> stats = cultivationStatsService.getPlayerDailyStats(
+                    playerService.getCurrentPlayerId(), today.minusDays(range - 1), today);
+            return ResponseEntity.ok(ApiResponse.success("获取成功", stats));
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body(ApiResponse.error(e.getMessage()));
+        }
+    }
+
     @PostMapping("/cultivate")
     @PreAuthorize("isAuthenticated()")
     public ResponseEntity<ApiResponse<Void>> cultivate() {
@@ -54,10 +98,23 @@ public class PlayerController {
 
     @PostMapping("/claim-offline-rewards")
     @PreAuthorize("isAuthenticated()")
-    public ResponseEntity<ApiResponse<?>> claimOfflineRewards() {
+    public ResponseEntity<ApiResponse<OfflineRewardResponse>> claimOfflineRewards() {
         try {
-            // 实现领取离线奖励逻辑
-            return ResponseEntity.ok(ApiResponse.success("领取离线奖励成功", null));
+            OfflineRewardResponse rewards = requireOfflineRewardService().calculateAndClaimOfflineRewards();
+            return ResponseEntity.ok(ApiResponse.success("领取离线奖励成功", rewards));
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body(ApiResponse.error(e.getMessage()));
+        }
+    }
+
+    /**
+     * 预览可领取的离线收益，只读不领取
+     */
+    @GetMapping("/offline-rewards/preview")
+    @PreAuthorize("isAuthenticated()")
+    public ResponseEntity<ApiResponse<OfflineRewardResponse>> previewOfflineRewards() {
+        try {
+            return ResponseEntity.ok(ApiResponse.success("获取成功", requireOfflineRewardService().previewOfflineRewards()));
         } catch (Exception e) {
             return ResponseEntity.badRequest().body(ApiResponse.error(e.getMessage()));
         }
@@ -67,12 +124,18 @@ public class PlayerController {
     @PreAuthorize("isAuthenticated()")
     public ResponseEntity<ApiResponse<Void>> resetCultivation() {
         try {
-            PlayerProfile profile = playerService.getCurrentPlayerProfile();
-            profile.setIsCultivating(false);
-            playerService.savePlayerProfile(profile);
+            playerService.resetCultivation();
             return ResponseEntity.ok(ApiResponse.success("修炼状态已重置", null));
         } catch (Exception e) {
             return ResponseEntity.badRequest().body(ApiResponse.error(e.getMessage()));
         }
     }
-}
\ No newline at end of file
+
+    private OfflineRewardService requireOfflineRewardService() {
+        OfflineRewardService service = offlineRewardService.getIfAvailable();
+        if (service == null) {
+            throw new IllegalStateException("离线收益功能未开启");
+        }
+        return service;
+    }
+}
@@ -1,7 +1,6 @@
 package com.xiuxian.game.controller;
 
 import com.xiuxian.game.dto.response.ApiResponse;
-import com.xiuxian.game.entity.PlayerProfile;
 import com.xiuxian.game.entity.PlayerSkill;
 import com.xiuxian.game.entity.Skill;
 import com.xiuxian.game.service.PlayerService;
@@ -25,10 +24,10 @@ public class SkillController {
     private final PlayerService playerService;
 
     /**
-     * 获取当前登录用户的PlayerProfile
+     * 获取当前登录玩家的ID（从认证主体读取，无需查询）
      */
-    private PlayerProfile getCurrentPlayerProfile() {
-        return playerService.getCurrentPlayerProfile();
+    private Integer getCurrentPlayerId() {
+        return playerService.getCurrentPlayerId();
     }
 
     @GetMapping
@@ -44,8 +43,8 @@ public class SkillController {
     @GetMapping("/available")
     public ResponseEntity<ApiResponse<List<Skill>>> getAvailableSkills() {
         try {
-            PlayerProfile player = getCurrentPlayerProfile();
-            List<Skill> skills = skillService.getAvailableSkills(player.getId());
+            Integer playerId = getCurrentPlayerId();
+            List<Skill> skills = skillService.getAvailableSkills(playerId);
             return ResponseEntity.ok(ApiResponse.success("获取成功", skills));
         } catch (Exception e) {
             return ResponseEntity.badRequest().body(ApiResponse.error(e.getMessage()));
@@ -55,8 +54,8 @@ public class SkillController {
     @GetMapping("/player")
     public ResponseEntity<ApiResponse<List<PlayerSkill>>> getPlayerSkills() {
         try {
-            PlayerProfile player = getCurrentPlayerProfile();
-            List<PlayerSkill> skills = skillService.getPlayerSkills(player.getId());
+            Integer playerId = getCurrentPlayerId();
+            List<PlayerSkill> skills = skillService.getPlayerSkills(playerId);
             return ResponseEntity.ok(ApiResponse.success("获取成功", skills));
         } catch (Exception e) {
             return ResponseEntity.badRequest().body(ApiResponse.error(e.getMessage()));
@@ -66,8 +65,8 @@ public class SkillController {
     @GetMapping("/equipped")
     public ResponseEntity<ApiResponse<List<PlayerSkill>>> getEquippedSkills() {
         try {
-            PlayerProfile player = getCurrentPlayerProfile();
-            List<PlayerSkill> skills = skillService.getEquippedSkills(player.getId());
+            Integer playerId = getCurrentPlayerId();
+            List<PlayerSkill> skills = skillService.getEquippedSkills(playerId);
             return ResponseEntity.ok(ApiResponse.success("获取成功", skills));
         } catch (Exception e) {
             return ResponseEntity.badRequest().body(ApiResponse.error(e.getMessage()));
@@ -77,8 +76,8 @@ public class SkillController {
     @PostMapping("/learn/{skillId}")
     public ResponseEntity<ApiResponse<PlayerSkill>> learnSkill(@PathVariable Integer skillId) {
         try {
-            PlayerProfile player = getCurrentPlayerProfile();
-            PlayerSkill playerSkill = skillService.learnSkill(skillId, player.getId());
+            Integer playerId = getCurrentPlayerId();
+            PlayerSkill playerSkill = skillService.learnSkill(skillId, playerId);
             return ResponseEntity.ok(ApiResponse.success("学习成功", playerSkill));
         } catch (Exception e) {
             return ResponseEntity.badRequest().body(ApiResponse.error(e.getMessage()));
@@ -88,8 +87,8 @@ public class SkillController {
     @PostMapping("/{playerSkillId}/upgrade")
     public ResponseEntity<ApiResponse<PlayerSkill>> upgradeSkill(@PathVariable Integer playerSkillId) {
         try {
-            PlayerProfile player = getCurrentPlayerProfile();
-            PlayerSkill playerSkill = skillService.upgradeSkill(playerSkillId, player.getId());
+            Integer playerId = getCurrentPlayerId();
+            PlayerSkill playerSkill = skillService.upgradeSkill(playerSkillId, playerId);
             return ResponseEntity.ok(ApiResponse.success("升级成功", playerSkill));
         } catch (Exception e) {
             return ResponseEntity.badRequest().body(ApiResponse.error(e.getMessage()));
@@ -101,8 +100,8 @@ public class SkillController {
             @PathVariable Integer playerSkillId,
             @PathVariable Integer slotNumber) {
         try {
-            PlayerProfile player = getCurrentPlayerProfile();
-            PlayerSkill playerSkill = skillService.equipSkill(playerSkillId, slotNumber, player.getId());
+            Integer playerId = getCurrentPlayerId();
+            PlayerSkill playerSkill = skillService.equipSkill(playerSkillId, slotNumber, playerId);
             return ResponseEntity.ok(ApiResponse.success("装备成功", playerSkill));
         } catch (Exception e) {
             return ResponseEntity.badRequest().body(ApiResponse.error(e.getMessage()));
@@ -112,8 +111,8 @@ public class SkillController {
     @PostMapping("/unequip/{playerSkillId}")
     public ResponseEntity<ApiResponse<PlayerSkill>> unequipSkill(@PathVariable Integer playerSkillId) {
         try {
-            PlayerProfile player = getCurrentPlayerProfile();
-            PlayerSkill playerSkill = skillService.unequipSkill(playerSkillId, player.getId());
+            Integer playerId = getCurrentPlayerId();
+            PlayerSkill playerSkill = skillService.unequipSkill(playerSkillId, playerId);
             return ResponseEntity.ok(ApiResponse.success("卸下成功", playerSkill));
         } catch (Exception e) {
             return ResponseEntity.badRequest().body(ApiResponse.error(e.getMessage()));
@@ -135,8 +134,8 @@ public class SkillController {
     public ResponseEntity<ApiResponse<Double>> calculateSkillDamage(@PathVariable Integer playerSkillId) {
         try {
             // 获取玩家技能实例
-            PlayerProfile player = getCurrentPlayerProfile();
-            List<PlayerSkill> playerSkills = skillService.getPlayerSkills(player.getId());
+            Integer playerId = getCurrentPlayerId();
+            List<PlayerSkill> playerSkills = skillService.getPlayerSkills(playerId);
             PlayerSkill targetSkill = playerSkills.stream()
                     .filter(ps -> ps.getId().equals(playerSkillId))
                     .findFirst()
@@ -153,8 +152,8 @@ public class SkillController {
     public ResponseEntity<ApiResponse<Integer>> getSkillCooldown(@PathVariable Integer playerSkillId) {
         try {
             // 获取玩家技能实例
-            PlayerProfile player = getCurrentPlayerProfile();
-            List<PlayerSkill> playerSkills = skillService.getPlayerSkills(player.getId());
+            Integer playerId = getCurrentPlayerId();
+            List<PlayerSkill> playerSkills = skillService.getPlayerSkills(playerId);
             PlayerSkill targetSkill = playerSkills.stream()
                     .filter(ps -> ps.getId().equals(playerSkillId))
                     .findFirst()
@@ -171,8 +170,8 @@ public class SkillController {
     public ResponseEntity<ApiResponse<Integer>> getSkillManaCost(@PathVariable Integer playerSkillId) {
         try {
             // 获取玩家技能实例
-            PlayerProfile player = getCurrentPlayerProfile();
-            List<PlayerSkill> playerSkills = skillService.getPlayerSkills(player.getId());
+            Integer playerId = getCurrentPlayerId();
+            List<PlayerSkill> playerSkills = skillService.getPlayerSkills(playerId);
             PlayerSkill targetSkill = playerSkills.stream()
                     .filter(ps -> ps.getId().equals(playerSkillId))
                     .findFirst()
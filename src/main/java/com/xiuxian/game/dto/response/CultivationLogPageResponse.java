@@ -0,0 +1,19 @@
+package com.xiuxian.game.dto.response;
+
+import com.xiuxian.game.entity.CultivationLog;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class CultivationLogPageResponse {
+    private List<CultivationLog> logs;
+    // 下一页游标，为null表示没有更多日志
+    private String nextCursor;
+}
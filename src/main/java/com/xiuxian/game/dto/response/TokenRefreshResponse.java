@@ -0,0 +1,15 @@
+package com.xiuxian.game.dto.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class TokenRefreshResponse {
+    private String token;
+    private String refreshToken;
+}
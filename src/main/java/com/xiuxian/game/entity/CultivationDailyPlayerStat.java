@@ -0,0 +1,46 @@
+package com.xiuxian.game.entity;
+
+import com.baomidou.mybatisplus.annotation.TableField;
+import com.baomidou.mybatisplus.annotation.TableName;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * 玩家每日修炼汇总，主键(stat_date, player_id)
+ */
+@TableName("cultivation_daily_player_stats")
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class CultivationDailyPlayerStat {
+
+    @TableField(value = "stat_date")
+    private LocalDate statDate;
+
+    @TableField(value = "player_id")
+    private Integer playerId;
+
+    @TableField(value = "log_count")
+    private Integer logCount;
+
+    @TableField(value = "offline_count")
+    private Integer offlineCount;
+
+    @TableField(value = "cultivation_seconds")
+    private Long cultivationSeconds;
+
+    @TableField(value = "exp_gained")
+    private Long expGained;
+
+    @TableField(value = "spirit_stones_gained")
+    private Long spiritStonesGained;
+
+    @TableField(value = "updated_at")
+    private LocalDateTime updatedAt;
+}
@@ -0,0 +1,44 @@
+package com.xiuxian.game.entity;
+
+import com.baomidou.mybatisplus.annotation.TableField;
+import com.baomidou.mybatisplus.annotation.TableName;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * 全服每日修炼汇总，主键stat_date
+ * 当日活跃玩家数即cultivation_daily_player_stats中该日的行数
+ */
+@TableName("cultivation_daily_stats")
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class CultivationDailyStat {
+
+    @TableField(value = "stat_date")
+    private LocalDate statDate;
+
+    @TableField(value = "log_count")
+    private Integer logCount;
+
+    @TableField(value = "offline_count")
+    private Integer offlineCount;
+
+    @TableField(value = "cultivation_seconds")
+    private Long cultivationSeconds;
+
+    @TableField(value = "exp_gained")
+    private Long expGained;
+
+    @TableField(value = "spirit_stones_gained")
+    private Long spiritStonesGained;
+
+    @TableField(value = "updated_at")
+    private LocalDateTime updatedAt;
+}
@@ -0,0 +1,45 @@
+package com.xiuxian.game.entity;
+
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableField;
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@TableName("cultivation_levels")
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class CultivationLevel {
+
+    @TableId(type = IdType.AUTO)
+    private Integer id;
+
+    @TableField(value = "level")
+    private Integer level;
+
+    @TableField(value = "name")
+    private String name;
+
+    @TableField(value = "min_exp")
+    private Long minExp;
+
+    @TableField(value = "max_exp")
+    private Long maxExp;
+
+    @TableField(value = "health_bonus")
+    private Integer healthBonus;
+
+    @TableField(value = "mana_bonus")
+    private Integer manaBonus;
+
+    @TableField(value = "attack_bonus")
+    private Integer attackBonus;
+
+    @TableField(value = "defense_bonus")
+    private Integer defenseBonus;
+}
@@ -24,12 +24,21 @@ public class CultivationLog {
     @TableField(value = "player_id")
     private Integer playerId;
 
+    /**
+     * 修炼时长（秒），与cultivationDuration相同，表中为非空列
+     */
+    @TableField(value = "cultivation_time")
+    private Integer cultivationTime;
+
     @TableField(value = "exp_gained")
     private Long expGained;
 
     @TableField(value = "spirit_stones_gained")
     private Integer spiritStonesGained;
 
+    @TableField(value = "cultivation_points_gained")
+    private Integer cultivationPointsGained;
+
     @TableField(value = "cultivation_duration")
     private Long cultivationDuration;
 
@@ -4,6 +4,7 @@ import com.baomidou.mybatisplus.annotation.IdType;
 import com.baomidou.mybatisplus.annotation.TableField;
 import com.baomidou.mybatisplus.annotation.TableId;
 import com.baomidou.mybatisplus.annotation.TableName;
+import com.baomidou.mybatisplus.annotation.Version;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -46,4 +47,11 @@ public class PlayerEquipment {
 
     @TableField(value = "updated_at")
     private LocalDateTime updatedAt;
+
+    /**
+     * 乐观锁版本号
+     */
+    @Version
+    @Builder.Default
+    private Integer version = 0;
 }
\ No newline at end of file
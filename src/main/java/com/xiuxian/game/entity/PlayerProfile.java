@@ -4,6 +4,8 @@ import com.baomidou.mybatisplus.annotation.IdType;
 import com.baomidou.mybatisplus.annotation.TableField;
 import com.baomidou.mybatisplus.annotation.TableId;
 import com.baomidou.mybatisplus.annotation.TableName;
+import com.baomidou.mybatisplus.annotation.Version;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
@@ -15,7 +17,7 @@ import java.time.LocalDateTime;
 
 @TableName("player_profiles")
 @Data
-@Builder
+@Builder(toBuilder = true)
 @NoArgsConstructor
 @AllArgsConstructor
 public class PlayerProfile {
@@ -120,6 +122,20 @@ public class PlayerProfile {
     @TableField(value = "updated_at")
     private LocalDateTime updatedAt;
 
+    /**
+     * 乐观锁版本号
+     */
+    @Version
+    @Builder.Default
+    private Integer version = 0;
+
+    /**
+     * 修炼中尚未结算的经验（仅用于展示，已计入返回的等级和经验，不对应数据库列）
+     */
+    @TableField(exist = false)
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Long pendingCultivationExp;
+
     // 装备加成计算方法
     public Integer getTotalHealth() {
         return this.health + getEquipmentHealthBonus();
@@ -0,0 +1,17 @@
+package com.xiuxian.game.exception;
+
+import lombok.Getter;
+
+/**
+ * 服务繁忙（资源池已满），由全局异常处理器转换为503并附带Retry-After
+ */
+@Getter
+public class ServiceBusyException extends RuntimeException {
+
+    private final long retryAfterSeconds;
+
+    public ServiceBusyException(String message, long retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+}
@@ -0,0 +1,17 @@
+package com.xiuxian.game.exception;
+
+import lombok.Getter;
+
+/**
+ * 请求过于频繁，由全局异常处理器转换为429并附带Retry-After
+ */
+@Getter
+public class TooManyRequestsException extends RuntimeException {
+
+    private final long retryAfterSeconds;
+
+    public TooManyRequestsException(String message, long retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+}
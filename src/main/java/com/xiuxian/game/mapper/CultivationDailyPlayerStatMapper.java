@@ -0,0 +1,51 @@
+package com.xiuxian.game.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.xiuxian.game.entity.CultivationDailyPlayerStat;
+import org.apache.ibatis.annotations.Delete;
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Mapper
+public interface CultivationDailyPlayerStatMapper extends BaseMapper<CultivationDailyPlayerStat> {
+
+    /**
+     * 把一组增量累加到玩家每日汇总，不存在的行直接插入
+     */
+    @Insert("<script>INSERT INTO cultivation_daily_player_stats (stat_date, player_id, log_count, offline_count, "
+            + "cultivation_seconds, exp_gained, spirit_stones_gained, updated_at) VALUES "
+            + "<foreach collection='deltas' item='d' separator=','>"
+            + "(#{d.statDate}, #{d.playerId}, #{d.logCount}, #{d.offlineCount}, #{d.cultivationSeconds}, #{d.expGained}, #{d.spiritStonesGained}, NOW())"
+            + "</foreach>"
+            + " ON DUPLICATE KEY UPDATE log_count = log_count + VALUES(log_count), offline_count = offline_count + VALUES(offline_count), "
+            + "cultivation_seconds = cultivation_seconds + VALUES(cultivation_seconds), exp_gained = exp_gained + VALUES(exp_gained), "
+            + "spirit_stones_gained = spirit_stones_gained + VALUES(spirit_stones_gained), updated_at = NOW()</script>")
+    int accumulate(@Param("deltas") List<CultivationDailyPlayerStat> deltas);
+
+    @Delete("DELETE FROM cultivation_daily_player_stats WHERE stat_date = #{statDate}")
+    int deleteByDate(@Param("statDate") LocalDate statDate);
+
+    /**
+     * 从cultivation_logs重新汇总一天的数据（走idx_created_at范围扫描）
+     */
+    @Insert("INSERT INTO cultivation_daily_player_stats (stat_date, player_id, log_count, offline_count, "
+            + "cultivation_seconds, exp_gained, spirit_stones_gained, updated_at) "
+            + "SELECT #{statDate}, player_id, COUNT(*), SUM(is_offline = 1), SUM(cultivation_duration), SUM(exp_gained), "
+            + "SUM(spirit_stones_gained), NOW() FROM cultivation_logs "
+            + "WHERE created_at >= #{from} AND created_at < #{to} GROUP BY player_id")
+    int insertAggregatedFromLogs(@Param("statDate") LocalDate statDate,
+                                 @Param("from") LocalDateTime from,
+                                 @Param("to") LocalDateTime to);
+
+    @Select("SELECT * FROM cultivation_daily_player_stats WHERE player_id = #{playerId} "
+            + "AND stat_date >= #{from} AND stat_date <= #{to} ORDER BY stat_date DESC")
+    List<CultivationDailyPlayerStat> selectByPlayerBetween(@Param("playerId") Integer playerId,
+                                                           @Param("from") LocalDate from,
+                                                           @Param("to") LocalDate to);
+}
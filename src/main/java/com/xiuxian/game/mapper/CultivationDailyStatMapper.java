@@ -0,0 +1,45 @@
+package com.xiuxian.game.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.xiuxian.game.entity.CultivationDailyStat;
+import org.apache.ibatis.annotations.Delete;
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+
+import java.time.LocalDate;
+import java.util.List;
+
+@Mapper
+public interface CultivationDailyStatMapper extends BaseMapper<CultivationDailyStat> {
+
+    /**
+     * 把一组增量累加到全服每日汇总，不存在的行直接插入
+     */
+    @Insert("<script>INSERT INTO cultivation_daily_stats (stat_date, log_count, offline_count, "
+            + "cultivation_seconds, exp_gained, spirit_stones_gained, updated_at) VALUES "
+            + "<foreach collection='deltas' item='d' separator=','>"
+            + "(#{d.statDate}, #{d.logCount}, #{d.offlineCount}, #{d.cultivationSeconds}, #{d.expGained}, #{d.spiritStonesGained}, NOW())"
+            + "</foreach>"
+            + " ON DUPLICATE KEY UPDATE log_count = log_count + VALUES(log_count), offline_count = offline_count + VALUES(offline_count), "
+            + "cultivation_seconds = cultivation_seconds + VALUES(cultivation_seconds), exp_gained = exp_gained + VALUES(exp_gained), "
+            + "spirit_stones_gained = spirit_stones_gained + VALUES(spirit_stones_gained), updated_at = NOW()</script>")
+    int accumulate(@Param("deltas") List<CultivationDailyStat> deltas);
+
+    @Delete("DELETE FROM cultivation_daily_stats WHERE stat_date = #{statDate}")
+    int deleteByDate(@Param("statDate") LocalDate statDate);
+
+    /**
+     * 由玩家每日汇总重新计算一天的全服汇总
+     */
+    @Insert("INSERT INTO cultivation_daily_stats (stat_date, log_count, offline_count, "
+            + "cultivation_seconds, exp_gained, spirit_stones_gained, updated_at) "
+            + "SELECT stat_date, SUM(log_count), SUM(offline_count), SUM(cultivation_seconds), SUM(exp_gained), "
+            + "SUM(spirit_stones_gained), NOW() FROM cultivation_daily_player_stats "
+            + "WHERE stat_date = #{statDate} GROUP BY stat_date")
+    int insertAggregatedFromPlayerStats(@Param("statDate") LocalDate statDate);
+
+    @Select("SELECT * FROM cultivation_daily_stats WHERE stat_date >= #{from} AND stat_date <= #{to} ORDER BY stat_date DESC")
+    List<CultivationDailyStat> selectBetween(@Param("from") LocalDate from, @Param("to") LocalDate to);
+}
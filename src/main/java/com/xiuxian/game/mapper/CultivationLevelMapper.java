@@ -0,0 +1,18 @@
+package com.xiuxian.game.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.xiuxian.game.entity.CultivationLevel;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Select;
+
+import java.util.List;
+
+@Mapper
+public interface CultivationLevelMapper extends BaseMapper<CultivationLevel> {
+
+    /**
+     * 按等级升序查询全部修炼等级配置
+     */
+    @Select("SELECT * FROM cultivation_levels ORDER BY level")
+    List<CultivationLevel> selectAllOrderByLevel();
+}
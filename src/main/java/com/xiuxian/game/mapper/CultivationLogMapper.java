@@ -2,18 +2,63 @@ package com.xiuxian.game.mapper;
 
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.xiuxian.game.entity.CultivationLog;
+import org.apache.ibatis.annotations.Delete;
+import org.apache.ibatis.annotations.Insert;
 import org.apache.ibatis.annotations.Mapper;
 import org.apache.ibatis.annotations.Param;
 import org.apache.ibatis.annotations.Select;
 
+import java.time.LocalDateTime;
 import java.util.List;
 
 @Mapper
 public interface CultivationLogMapper extends BaseMapper<CultivationLog> {
     
     /**
-     * 查询玩家的修炼日志
+     * 按(created_at, id)倒序游标分页查询玩家的修炼日志
+     * 只查询idx_player_created_id覆盖的列，从游标位置直接定位，耗时与历史日志总量无关；
+     * 游标为空时从最新一条开始
      */
-    @Select("SELECT * FROM cultivation_logs WHERE player_id = #{playerId} ORDER BY created_at DESC LIMIT #{limit}")
-    List<CultivationLog> selectByPlayerId(@Param("playerId") Integer playerId, @Param("limit") int limit);
+    @Select("<script>SELECT id, player_id, exp_gained, spirit_stones_gained, cultivation_duration, is_offline, created_at "
+            + "FROM cultivation_logs WHERE player_id = #{playerId}"
+            + "<if test='cursorCreatedAt != null'>"
+            + " AND (created_at &lt; #{cursorCreatedAt} OR (created_at = #{cursorCreatedAt} AND id &lt; #{cursorId}))"
+            + "</if>"
+            + " ORDER BY created_at DESC, id DESC LIMIT #{limit}</script>")
+    List<CultivationLog> selectPageByPlayerId(@Param("playerId") Integer playerId,
+                                              @Param("cursorCreatedAt") LocalDateTime cursorCreatedAt,
+                                              @Param("cursorId") Integer cursorId,
+                                              @Param("limit") int limit);
+
+    /**
+     * 多行INSERT，一条语句写入一组日志
+     */
+    @Insert("<script>INSERT INTO cultivation_logs (player_id, cultivation_time, exp_gained, spirit_stones_gained, cultivation_points_gained, "
+            + "cultivation_duration, is_offline, created_at) VALUES "
+            + "<foreach collection='logs' item='log' separator=','>"
+            + "(#{log.playerId}, #{log.cultivationTime}, #{log.expGained}, #{log.spiritStonesGained}, #{log.cultivationPointsGained}, "
+            + "#{log.cultivationDuration}, #{log.isOffline}, #{log.createdAt})"
+            + "</foreach></script>")
+    int insertBatch(@Param("logs") List<CultivationLog> logs);
+
+    /**
+     * 早于截止时间的最早一条日志时间，用于确定下一个待归档的日期
+     */
+    @Select("SELECT MIN(created_at) FROM cultivation_logs WHERE created_at < #{cutoff}")
+    LocalDateTime selectOldestBefore(@Param("cutoff") LocalDateTime cutoff);
+
+    /**
+     * 按主键顺序分块读取时间区间[from, to)内的日志，用于归档
+     */
+    @Select("SELECT id, player_id, exp_gained, spirit_stones_gained, cultivation_duration, is_offline, created_at "
+            + "FROM cultivation_logs WHERE created_at >= #{from} AND created_at < #{to} AND id > #{afterId} "
+            + "ORDER BY id LIMIT #{limit}")
+    List<CultivationLog> selectCreatedBetweenAfterId(@Param("from") LocalDateTime from,
+                                                     @Param("to") LocalDateTime to,
+                                                     @Param("afterId") int afterId,
+                                                     @Param("limit") int limit);
+
+    @Delete("<script>DELETE FROM cultivation_logs WHERE id IN "
+            + "<foreach collection='ids' item='id' open='(' separator=',' close=')'>#{id}</foreach></script>")
+    int deleteByIds(@Param("ids") List<Integer> ids);
 }
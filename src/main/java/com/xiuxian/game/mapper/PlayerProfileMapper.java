@@ -5,6 +5,11 @@ import com.xiuxian.game.entity.PlayerProfile;
 import org.apache.ibatis.annotations.Mapper;
 import org.apache.ibatis.annotations.Param;
 import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.annotations.Update;
+import org.apache.ibatis.annotations.UpdateProvider;
+
+import java.time.LocalDateTime;
+import java.util.List;
 
 @Mapper
 public interface PlayerProfileMapper extends BaseMapper<PlayerProfile> {
@@ -14,4 +19,46 @@ public interface PlayerProfileMapper extends BaseMapper<PlayerProfile> {
      */
     @Select("SELECT * FROM player_profiles WHERE user_id = #{userId}")
     PlayerProfile selectByUserId(@Param("userId") Integer userId);
-}
\ No newline at end of file
+
+    /**
+     * 按主键顺序分块查询最后在线时间不晚于cutoff的玩家，用于批量离线结算
+     */
+    @Select("SELECT * FROM player_profiles WHERE id > #{afterId} AND last_online_time <= #{cutoff} ORDER BY id LIMIT #{limit}")
+    List<PlayerProfile> selectOfflineAfterId(@Param("afterId") int afterId, @Param("cutoff") LocalDateTime cutoff,
+                                             @Param("limit") int limit);
+
+    /**
+     * 仅当数据库中的最后在线时间仍为from时改为to，用于离线收益结算抢占这段离线时间
+     * 单个玩家领取与批量结算并发时只有一方返回1，另一方返回0且不应发放收益
+     */
+    @Update("UPDATE player_profiles SET last_online_time = #{to} WHERE id = #{id} AND last_online_time = #{from}")
+    int claimOfflineTime(@Param("id") Integer id, @Param("from") LocalDateTime from, @Param("to") LocalDateTime to);
+
+    /**
+     * 余额充足时扣除灵石，条件判断和扣除在同一条语句中完成
+     *
+     * @return 1表示扣除成功，0表示余额不足或玩家不存在
+     */
+    @Update("UPDATE player_profiles SET spirit_stones = spirit_stones - #{amount}, updated_at = #{updatedAt}, version = version + 1 "
+            + "WHERE id = #{id} AND spirit_stones >= #{amount}")
+    int debitSpiritStones(@Param("id") Integer id, @Param("amount") long amount, @Param("updatedAt") LocalDateTime updatedAt);
+
+    /**
+     * 增加经验、灵石和贡献点
+     *
+     * @return 1表示成功，0表示玩家不存在
+     */
+    @Update("UPDATE player_profiles SET exp = exp + #{exp}, spirit_stones = spirit_stones + #{spiritStones}, "
+            + "contribution_points = contribution_points + #{contributionPoints}, updated_at = #{updatedAt}, version = version + 1 "
+            + "WHERE id = #{id}")
+    int credit(@Param("id") Integer id, @Param("exp") long exp, @Param("spiritStones") long spiritStones,
+               @Param("contributionPoints") long contributionPoints, @Param("updatedAt") LocalDateTime updatedAt);
+
+    /**
+     * 只更新指定的列（位掩码见PlayerProfileSqlProvider.Column），updated_at总是一起更新；
+     * 仅当行版本号等于version时更新并将版本号加1，返回0表示版本冲突
+     */
+    @UpdateProvider(type = PlayerProfileSqlProvider.class, method = "updateColumns")
+    int updateColumns(@Param("profile") PlayerProfile profile, @Param("columns") long columns,
+                      @Param("version") int version);
+}
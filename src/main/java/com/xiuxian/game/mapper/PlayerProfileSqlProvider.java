@@ -0,0 +1,203 @@
+package com.xiuxian.game.mapper;
+
+import com.xiuxian.game.entity.PlayerProfile;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * player_profiles的列定义及部分列UPDATE语句的生成器
+ * 以变更列的位掩码为键缓存SQL文本，同一列组合只拼接一次；
+ * 相同SQL的语句在BATCH执行器中合并为一个JDBC批次。
+ */
+public class PlayerProfileSqlProvider {
+
+    /**
+     * 可更新的列（不含id、user_id、created_at；updated_at与version随任意变更一起写入）
+     */
+    public enum Column {
+        NICKNAME("nickname", "nickname",
+                PlayerProfile::getNickname, (p, v) -> p.setNickname((String) v)),
+        LEVEL("level", "level",
+                PlayerProfile::getLevel, (p, v) -> p.setLevel((Integer) v)),
+        EXP("exp", "exp",
+                PlayerProfile::getExp, (p, v) -> p.setExp((Long) v)),
+        EXP_TO_NEXT("exp_to_next", "expToNext",
+                PlayerProfile::getExpToNext, (p, v) -> p.setExpToNext((Long) v)),
+        REALM("realm", "realm",
+                PlayerProfile::getRealm, (p, v) -> p.setRealm((String) v)),
+        CULTIVATION_SPEED("cultivation_speed", "cultivationSpeed",
+                PlayerProfile::getCultivationSpeed, (p, v) -> p.setCultivationSpeed((BigDecimal) v)),
+        SPIRIT_STONES("spirit_stones", "spiritStones",
+                PlayerProfile::getSpiritStones, (p, v) -> p.setSpiritStones((Long) v)),
+        CULTIVATION_POINTS("cultivation_points", "cultivationPoints",
+                PlayerProfile::getCultivationPoints, (p, v) -> p.setCultivationPoints((Long) v)),
+        CONTRIBUTION_POINTS("contribution_points", "contributionPoints",
+                PlayerProfile::getContributionPoints, (p, v) -> p.setContributionPoints((Long) v)),
+        LAST_ONLINE_TIME("last_online_time", "lastOnlineTime",
+                PlayerProfile::getLastOnlineTime, (p, v) -> p.setLastOnlineTime((LocalDateTime) v)),
+        TOTAL_CULTIVATION_TIME("total_cultivation_time", "totalCultivationTime",
+                PlayerProfile::getTotalCultivationTime, (p, v) -> p.setTotalCultivationTime((Long) v)),
+        IS_CULTIVATING("is_cultivating", "isCultivating",
+                PlayerProfile::getIsCultivating, (p, v) -> p.setIsCultivating((Boolean) v)),
+        LAST_CULTIVATION_START("last_cultivation_start", "lastCultivationStart",
+                PlayerProfile::getLastCultivationStart, (p, v) -> p.setLastCultivationStart((LocalDateTime) v)),
+        LAST_CULTIVATION_END("last_cultivation_end", "lastCultivationEnd",
+                PlayerProfile::getLastCultivationEnd, (p, v) -> p.setLastCultivationEnd((LocalDateTime) v)),
+        ATTACK("attack", "attack",
+                PlayerProfile::getAttack, (p, v) -> p.setAttack((Integer) v)),
+        DEFENSE("defense", "defense",
+                PlayerProfile::getDefense, (p, v) -> p.setDefense((Integer) v)),
+        HEALTH("health", "health",
+                PlayerProfile::getHealth, (p, v) -> p.setHealth((Integer) v)),
+        MANA("mana", "mana",
+                PlayerProfile::getMana, (p, v) -> p.setMana((Integer) v)),
+        SPEED("speed", "speed",
+                PlayerProfile::getSpeed, (p, v) -> p.setSpeed((Integer) v)),
+        EQUIPMENT_ATTACK_BONUS("equipment_attack_bonus", "equipmentAttackBonus",
+                PlayerProfile::getEquipmentAttackBonus, (p, v) -> p.setEquipmentAttackBonus((Integer) v)),
+        EQUIPMENT_DEFENSE_BONUS("equipment_defense_bonus", "equipmentDefenseBonus",
+                PlayerProfile::getEquipmentDefenseBonus, (p, v) -> p.setEquipmentDefenseBonus((Integer) v)),
+        EQUIPMENT_HEALTH_BONUS("equipment_health_bonus", "equipmentHealthBonus",
+                PlayerProfile::getEquipmentHealthBonus, (p, v) -> p.setEquipmentHealthBonus((Integer) v)),
+        EQUIPMENT_MANA_BONUS("equipment_mana_bonus", "equipmentManaBonus",
+                PlayerProfile::getEquipmentManaBonus, (p, v) -> p.setEquipmentManaBonus((Integer) v)),
+        EQUIPMENT_SPEED_BONUS("equipment_speed_bonus", "equipmentSpeedBonus",
+                PlayerProfile::getEquipmentSpeedBonus, (p, v) -> p.setEquipmentSpeedBonus((Integer) v));
+
+        private final String column;
+        private final String property;
+        private final Function<PlayerProfile, Object> getter;
+        private final BiConsumer<PlayerProfile, Object> setter;
+
+        Column(String column, String property,
+               Function<PlayerProfile, Object> getter, BiConsumer<PlayerProfile, Object> setter) {
+            this.column = column;
+            this.property = property;
+            this.getter = getter;
+            this.setter = setter;
+        }
+
+        public long mask() {
+            return 1L << ordinal();
+        }
+    }
+
+    private static final Column[] COLUMNS = Column.values();
+    public static final long ALL_COLUMNS = (1L << COLUMNS.length) - 1;
+    /**
+     * 只做增减的计数列，并发修改可以按增量合并
+     */
+    public static final long COUNTER_COLUMNS = Column.EXP.mask() | Column.SPIRIT_STONES.mask()
+            | Column.CULTIVATION_POINTS.mask() | Column.CONTRIBUTION_POINTS.mask()
+            | Column.TOTAL_CULTIVATION_TIME.mask();
+    private static final Map<Long, String> SQL_CACHE = new ConcurrentHashMap<>();
+
+    /**
+     * 计算两个快照之间发生变化的列，base为null时返回全部列
+     *
+     * @return 变更列的位掩码，0表示没有变化
+     */
+    public static long diff(PlayerProfile base, PlayerProfile current) {
+        if (base == null) {
+            return ALL_COLUMNS;
+        }
+        long mask = 0L;
+        for (Column column : COLUMNS) {
+            if (!sameValue(column.getter.apply(base), column.getter.apply(current))) {
+                mask |= column.mask();
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * 把掩码中的列从source复制到target
+     */
+    public static void copyColumns(long columns, PlayerProfile source, PlayerProfile target) {
+        for (Column column : COLUMNS) {
+            if ((columns & column.mask()) != 0) {
+                column.setter.accept(target, column.getter.apply(source));
+            }
+        }
+    }
+
+    /**
+     * 把本地相对base的修改叠加到target（数据库最新行的副本）上：
+     * 计数列叠加增量（target + (local - base)）；其他列只在数据库一方未修改时采用本地值
+     *
+     * @return 双方都修改过的非计数列，这些列保留数据库的值，本地修改被丢弃
+     */
+    public static long rebase(PlayerProfile base, PlayerProfile local, PlayerProfile target) {
+        long conflicts = 0L;
+        for (Column column : COLUMNS) {
+            Object localValue = column.getter.apply(local);
+            Object baseValue = column.getter.apply(base);
+            if (sameValue(baseValue, localValue)) {
+                continue;
+            }
+            Object targetValue = column.getter.apply(target);
+            if ((COUNTER_COLUMNS & column.mask()) != 0) {
+                column.setter.accept(target, valueOf(targetValue) + valueOf(localValue) - valueOf(baseValue));
+            } else if (sameValue(baseValue, targetValue)) {
+                column.setter.accept(target, localValue);
+            } else if (!sameValue(localValue, targetValue)) {
+                conflicts |= column.mask();
+            }
+        }
+        return conflicts;
+    }
+
+    private static long valueOf(Object value) {
+        return value != null ? (Long) value : 0L;
+    }
+
+    /**
+     * 把掩码中的列按属性名导出，用于向客户端推送变更
+     */
+    public static Map<String, Object> toPropertyMap(long columns, PlayerProfile profile) {
+        Map<String, Object> values = new LinkedHashMap<>();
+        for (Column column : COLUMNS) {
+            if ((columns & column.mask()) != 0) {
+                values.put(column.property, column.getter.apply(profile));
+            }
+        }
+        return values;
+    }
+
+    /**
+     * PlayerProfileMapper.updateColumns的SQL提供方法
+     */
+    public String updateColumns(Map<String, Object> params) {
+        long columns = (Long) params.get("columns");
+        return SQL_CACHE.computeIfAbsent(columns, PlayerProfileSqlProvider::buildUpdateSql);
+    }
+
+    private static String buildUpdateSql(long columns) {
+        StringBuilder sql = new StringBuilder("UPDATE player_profiles SET ");
+        for (Column column : COLUMNS) {
+            if ((columns & column.mask()) != 0) {
+                sql.append(column.column).append(" = #{profile.").append(column.property).append("}, ");
+            }
+        }
+        sql.append("updated_at = #{profile.updatedAt}, version = version + 1")
+                .append(" WHERE id = #{profile.id} AND version = #{version}");
+        return sql.toString();
+    }
+
+    /**
+     * BigDecimal按数值比较，避免数据库返回的精度（如1.00）与内存中的1被当作变化
+     */
+    private static boolean sameValue(Object a, Object b) {
+        if (a instanceof BigDecimal && b instanceof BigDecimal) {
+            return ((BigDecimal) a).compareTo((BigDecimal) b) == 0;
+        }
+        return Objects.equals(a, b);
+    }
+}
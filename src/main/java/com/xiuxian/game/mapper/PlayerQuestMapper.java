@@ -3,8 +3,11 @@ package com.xiuxian.game.mapper;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.xiuxian.game.entity.PlayerQuest;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
 import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.annotations.Update;
 
+import java.time.LocalDateTime;
 import java.util.List;
 
 @Mapper
@@ -21,4 +24,11 @@ public interface PlayerQuestMapper extends BaseMapper<PlayerQuest> {
 
     @Select("SELECT * FROM player_quests WHERE player_id = #{playerId} AND quest_id = #{questId} LIMIT 1")
     PlayerQuest selectByPlayerIdAndQuestId(Integer playerId, Integer questId);
+
+    /**
+     * 仅当任务已完成且奖励未领取时标记为已领取，返回受影响行数；并发领取时只有一个请求能返回1
+     */
+    @Update("UPDATE player_quests SET reward_claimed = 1, updated_at = #{updatedAt} " +
+            "WHERE id = #{id} AND completed = 1 AND reward_claimed = 0")
+    int markRewardClaimed(@Param("id") Integer id, @Param("updatedAt") LocalDateTime updatedAt);
 }
@@ -2,6 +2,7 @@ package com.xiuxian.game.mapper;
 
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.xiuxian.game.entity.PlayerSkill;
+import org.apache.ibatis.annotations.Insert;
 import org.apache.ibatis.annotations.Mapper;
 import org.apache.ibatis.annotations.Param;
 import org.apache.ibatis.annotations.Select;
@@ -37,6 +38,15 @@ public interface PlayerSkillMapper extends BaseMapper<PlayerSkill> {
      */
     @Select("SELECT * FROM player_skills WHERE player_id = #{playerId} AND equipped = true")
     List<PlayerSkill> findEquippedSkills(@Param("playerId") Integer playerId);
+
+    /**
+     * 一条语句为玩家批量发放指定等级及以下解锁的技能，已拥有的技能命中唯一键 uk_player_skill 时保持原样
+     * 只吞掉重复键冲突，外键、非空等其他错误照常抛出
+     */
+    @Insert("INSERT INTO player_skills (player_id, skill_id, level, current_level, experience, equipped, is_equipped, slot_number, created_at, updated_at) " +
+            "SELECT #{playerId}, id, 1, 1, 0, 0, 0, 0, NOW(), NOW() FROM skills WHERE unlock_level <= #{unlockLevel} " +
+            "ON DUPLICATE KEY UPDATE player_id = player_id")
+    int insertSkillsUnlockedAt(@Param("playerId") Integer playerId, @Param("unlockLevel") Integer unlockLevel);
 }
 
 
@@ -0,0 +1,107 @@
+package com.xiuxian.game.security;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 使用全集群统一目标强度的BCrypt编码器
+ * 新哈希以 {bcrypt} 前缀存储；旧的无前缀哈希仍可验证。
+ * 前缀缺失或强度偏离目标超过容差时 upgradeEncoding 返回true，登录成功后由调用方用目标强度重新哈希；
+ * 容差内的哈希保持不变，避免不同机器或校准抖动导致哈希在相邻强度之间来回重算。
+ */
+@Slf4j
+public class AdaptiveBCryptPasswordEncoder implements PasswordEncoder {
+
+    public static final String PREFIX = "{bcrypt}";
+
+    private static final Pattern BCRYPT_COST = Pattern.compile("^\\$2[abxy]?\\$(\\d{2})\\$");
+    private static final int REFERENCE_COST = 10;
+    private static final int CALIBRATION_ROUNDS = 3;
+
+    private final int cost;
+    private final int tolerance;
+    private final BCryptPasswordEncoder delegate;
+
+    public AdaptiveBCryptPasswordEncoder(int cost, int tolerance) {
+        this.cost = cost;
+        this.tolerance = Math.max(0, tolerance);
+        this.delegate = new BCryptPasswordEncoder(cost);
+    }
+
+    /**
+     * 测量本机参考强度的耗时，给出不超过延迟预算的最大强度
+     * 仅用于未配置统一强度时的单机部署，以及检查统一强度在本机是否超出预算
+     *
+     * @param budgetMillis 单次哈希的目标耗时上限
+     * @param minCost      强度下限
+     * @param maxCost      强度上限
+     */
+    public static int calibrate(long budgetMillis, int minCost, int maxCost) {
+        BCryptPasswordEncoder reference = new BCryptPasswordEncoder(REFERENCE_COST);
+        // 预热一次，避免把JIT编译时间计入
+        reference.encode("calibration");
+
+        long bestNanos = Long.MAX_VALUE;
+        for (int i = 0; i < CALIBRATION_ROUNDS; i++) {
+            long start = System.nanoTime();
+            reference.encode("calibration");
+            bestNanos = Math.min(bestNanos, System.nanoTime() - start);
+        }
+
+        // 强度每加1耗时翻倍
+        long budgetNanos = budgetMillis * 1_000_000L;
+        int cost = REFERENCE_COST;
+        long estimated = bestNanos;
+        while (cost < maxCost && estimated * 2 <= budgetNanos) {
+            estimated *= 2;
+            cost++;
+        }
+        while (cost > minCost && estimated > budgetNanos) {
+            estimated /= 2;
+            cost--;
+        }
+        cost = Math.max(minCost, Math.min(maxCost, cost));
+
+        log.info("BCrypt强度校准完成: 参考强度{}耗时{}ms, 预算{}ms, 本机建议强度{}",
+                REFERENCE_COST, bestNanos / 1_000_000L, budgetMillis, cost);
+        return cost;
+    }
+
+    public int getCost() {
+        return cost;
+    }
+
+    @Override
+    public String encode(CharSequence rawPassword) {
+        return PREFIX + delegate.encode(rawPassword);
+    }
+
+    @Override
+    public boolean matches(CharSequence rawPassword, String encodedPassword) {
+        if (encodedPassword == null) {
+            return false;
+        }
+        // BCrypt验证使用哈希中记录的强度，与当前校准值无关
+        return delegate.matches(rawPassword, stripPrefix(encodedPassword));
+    }
+
+    @Override
+    public boolean upgradeEncoding(String encodedPassword) {
+        if (encodedPassword == null || !encodedPassword.startsWith(PREFIX)) {
+            return true;
+        }
+        Matcher matcher = BCRYPT_COST.matcher(stripPrefix(encodedPassword));
+        if (!matcher.find()) {
+            return true;
+        }
+        return Math.abs(Integer.parseInt(matcher.group(1)) - cost) > tolerance;
+    }
+
+    private static String stripPrefix(String encodedPassword) {
+        return encodedPassword.startsWith(PREFIX) ? encodedPassword.substring(PREFIX.length()) : encodedPassword;
+    }
+}
@@ -0,0 +1,192 @@
+package com.xiuxian.game.security;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 登录/注册接口的令牌桶限流器（按IP和按用户名）
+ * IP桶和用户名桶分别存放在有上限的LRU表中，查找和淘汰都是O(1)；桶数量达到上限时淘汰最久未访问的桶，
+ * 新键总能拿到桶，不会因为表满而拒绝请求。被淘汰的桶重建后是满的（对该键放行），
+ * 大量随机用户名只会挤掉用户名桶，不影响按IP限流。空闲桶由定时任务清理，不在请求线程上扫描。
+ */
+@Slf4j
+@Component
+public class AuthRateLimiter {
+
+    private final int ipCapacity;
+    private final double ipRefillPerNano;
+    private final int usernameCapacity;
+    private final double usernameRefillPerNano;
+    private final long idleEvictNanos;
+
+    private final BucketTable ipBuckets;
+    private final BucketTable usernameBuckets;
+
+    private final Counter ipRejected;
+    private final Counter usernameRejected;
+
+    public AuthRateLimiter(@Value("${app.security.rate-limit.ip.capacity:20}") int ipCapacity,
+                           @Value("${app.security.rate-limit.ip.refill-per-minute:20}") int ipRefillPerMinute,
+                           @Value("${app.security.rate-limit.username.capacity:5}") int usernameCapacity,
+                           @Value("${app.security.rate-limit.username.refill-per-minute:5}") int usernameRefillPerMinute,
+                           @Value("${app.security.rate-limit.max-buckets:100000}") int maxBuckets,
+                           @Value("${app.security.rate-limit.idle-evict-ms:600000}") long idleEvictMillis,
+                           MeterRegistry meterRegistry) {
+        this.ipCapacity = ipCapacity;
+        this.ipRefillPerNano = ipRefillPerMinute / (double) TimeUnit.MINUTES.toNanos(1);
+        this.usernameCapacity = usernameCapacity;
+        this.usernameRefillPerNano = usernameRefillPerMinute / (double) TimeUnit.MINUTES.toNanos(1);
+        this.idleEvictNanos = TimeUnit.MILLISECONDS.toNanos(idleEvictMillis);
+
+        this.ipRejected = Counter.builder("xiuxian.auth.rate-limit.rejected")
+                .description("登录/注册被限流拒绝的次数")
+                .tag("key", "ip")
+                .register(meterRegistry);
+        this.usernameRejected = Counter.builder("xiuxian.auth.rate-limit.rejected")
+                .description("登录/注册被限流拒绝的次数")
+                .tag("key", "username")
+                .register(meterRegistry);
+        this.ipBuckets = new BucketTable(maxBuckets);
+        this.usernameBuckets = new BucketTable(maxBuckets);
+        meterRegistry.gauge("xiuxian.auth.rate-limit.buckets", Tags.of("key", "ip"), ipBuckets, BucketTable::size);
+        meterRegistry.gauge("xiuxian.auth.rate-limit.buckets", Tags.of("key", "username"), usernameBuckets, BucketTable::size);
+    }
+
+    /**
+     * 尝试为一次登录/注册请求获取令牌
+     *
+     * @return 被拒绝时返回建议的重试等待秒数，允许时返回0
+     */
+    public long tryAcquire(String endpoint, String clientIp, String username) {
+        long now = System.nanoTime();
+
+        if (clientIp != null) {
+            long wait = ipBuckets.get(endpoint + ":" + clientIp, ipCapacity, ipRefillPerNano, now).tryConsume(now);
+            if (wait > 0) {
+                ipRejected.increment();
+                return wait;
+            }
+        }
+
+        if (username != null && !username.isEmpty()) {
+            long wait = usernameBuckets.get(endpoint + ":" + username.toLowerCase(), usernameCapacity, usernameRefillPerNano, now)
+                    .tryConsume(now);
+            if (wait > 0) {
+                usernameRejected.increment();
+                return wait;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * 淘汰长时间未使用的桶（空闲桶已回满，删除后重建等价）
+     */
+    @Scheduled(fixedDelayString = "${app.security.rate-limit.evict-interval-ms:60000}")
+    public void evictIdle() {
+        long now = System.nanoTime();
+        int evicted = ipBuckets.evictIdle(now, idleEvictNanos) + usernameBuckets.evictIdle(now, idleEvictNanos);
+        if (evicted > 0) {
+            log.debug("已淘汰空闲限流桶: {}", evicted);
+        }
+    }
+
+    /**
+     * 按访问顺序排列、有容量上限的桶表
+     * 临界区内只有一次哈希查找和链表调整，令牌计算在桶自己的锁内完成，不占用表锁。
+     */
+    private static final class BucketTable {
+
+        private final LinkedHashMap<String, TokenBucket> buckets;
+
+        BucketTable(int maxBuckets) {
+            this.buckets = new LinkedHashMap<String, TokenBucket>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, TokenBucket> eldest) {
+                    return size() > maxBuckets;
+                }
+            };
+        }
+
+        synchronized TokenBucket get(String key, int capacity, double refillPerNano, long now) {
+            TokenBucket bucket = buckets.get(key);
+            if (bucket == null) {
+                bucket = new TokenBucket(capacity, refillPerNano, now);
+                buckets.put(key, bucket);
+            }
+            return bucket;
+        }
+
+        /**
+         * 从最久未访问的一端开始删除空闲桶，遇到第一个非空闲桶即停止
+         */
+        synchronized int evictIdle(long now, long idleNanos) {
+            int evicted = 0;
+            Iterator<TokenBucket> iterator = buckets.values().iterator();
+            while (iterator.hasNext()) {
+                if (!iterator.next().isIdle(now, idleNanos)) {
+                    break;
+                }
+                iterator.remove();
+                evicted++;
+            }
+            return evicted;
+        }
+
+        synchronized int size() {
+            return buckets.size();
+        }
+    }
+
+    private static final class TokenBucket {
+
+        private final int capacity;
+        private final double refillPerNano;
+        private double tokens;
+        private long lastRefill;
+        private volatile long lastAccess;
+
+        TokenBucket(int capacity, double refillPerNano, long now) {
+            this.capacity = capacity;
+            this.refillPerNano = refillPerNano;
+            this.tokens = capacity;
+            this.lastRefill = now;
+            this.lastAccess = now;
+        }
+
+        /**
+         * @return 0表示成功获取；否则为下一个令牌可用前需等待的秒数
+         */
+        synchronized long tryConsume(long now) {
+            lastAccess = now;
+            // 并发线程取到的时间戳可能早于上次补充时间，只在时间前进时补充
+            if (now > lastRefill) {
+                tokens = Math.min(capacity, tokens + (now - lastRefill) * refillPerNano);
+                lastRefill = now;
+            }
+            if (tokens >= 1) {
+                tokens -= 1;
+                return 0;
+            }
+            if (refillPerNano <= 0) {
+                return 60;
+            }
+            long waitNanos = (long) Math.ceil((1 - tokens) / refillPerNano);
+            return Math.max(1, TimeUnit.NANOSECONDS.toSeconds(waitNanos) + 1);
+        }
+
+        boolean isIdle(long now, long idleNanos) {
+            return now - lastAccess > idleNanos;
+        }
+    }
+}
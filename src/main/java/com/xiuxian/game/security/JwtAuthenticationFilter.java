@@ -1,5 +1,6 @@
 package com.xiuxian.game.security;
 
+import io.jsonwebtoken.Claims;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
@@ -23,6 +24,7 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
     private final JwtTokenProvider tokenProvider;
     private final CustomUserDetailsService userDetailsService;
+    private final TokenDenylist tokenDenylist;
 
     @Override
     protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
@@ -30,16 +32,22 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
         try {
             String jwt = getJwtFromRequest(request);
 
-            if (StringUtils.hasText(jwt) && tokenProvider.validateToken(jwt)) {
-                log.debug("=== DEBUG: JwtAuthenticationFilter ===");
-                log.debug("提取的JWT token: {}", jwt);
-
-                String username = tokenProvider.getUsernameFromToken(jwt);
-                log.debug("从token中提取的用户名: {}", username);
+            // 签名只验证一次，直接使用返回的声明
+            Claims claims = StringUtils.hasText(jwt) ? tokenProvider.verifyAndGetClaims(jwt) : null;
+            if (claims != null && tokenDenylist.isRevoked(claims.getId())) {
+                log.debug("令牌已注销: jti={}", claims.getId());
+                claims = null;
+            }
+            if (claims != null) {
+                String username = claims.getSubject();
 
                 if (username != null && SecurityContextHolder.getContext().getAuthentication() == null) {
-                    UserDetails userDetails = userDetailsService.loadUserByUsername(username);
-                    log.debug("成功加载用户: {}", username);
+                    // 新令牌直接从声明构建主体，旧令牌（不含userId/playerId）回退到数据库加载
+                    UserDetails userDetails = tokenProvider.toPrincipal(claims);
+                    if (userDetails == null) {
+                        userDetails = userDetailsService.loadUserByUsername(username);
+                        log.debug("成功加载用户: {}", username);
+                    }
 
                     UsernamePasswordAuthenticationToken authentication =
                             new UsernamePasswordAuthenticationToken(userDetails, null, userDetails.getAuthorities());
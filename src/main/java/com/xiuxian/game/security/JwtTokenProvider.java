@@ -1,79 +1,123 @@
 package com.xiuxian.game.security;
 
+import com.xiuxian.game.entity.PlayerProfile;
+import com.xiuxian.game.entity.User;
 import io.jsonwebtoken.*;
 import io.jsonwebtoken.security.Keys;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PostConstruct;
 import javax.crypto.SecretKey;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.List;
+import java.util.UUID;
 
+@Slf4j
 @Component
 public class JwtTokenProvider {
 
+    public static final String CLAIM_USER_ID = "uid";
+    public static final String CLAIM_PLAYER_ID = "pid";
+    public static final String CLAIM_ROLES = "roles";
+    public static final String DEFAULT_ROLE = "ROLE_PLAYER";
+
     @Value("${jwt.secret}")
     private String jwtSecret;
 
     @Value("${jwt.expiration}")
     private long jwtExpiration;
 
-    private SecretKey getSigningKey() {
-        byte[] keyBytes = jwtSecret.getBytes(StandardCharsets.UTF_8);
-        return Keys.hmacShaKeyFor(keyBytes);
+    /**
+     * 签名密钥与解析器在启动时构建一次，JwtParser 是线程安全的，可在所有请求间复用
+     */
+    private SecretKey signingKey;
+    private JwtParser jwtParser;
+
+    @PostConstruct
+    public void init() {
+        this.signingKey = Keys.hmacShaKeyFor(jwtSecret.getBytes(StandardCharsets.UTF_8));
+        this.jwtParser = Jwts.parserBuilder()
+                .setSigningKey(signingKey)
+                .build();
     }
 
-    public String generateToken(String username) {
-        System.out.println("=== DEBUG: JwtTokenProvider.generateToken ===");
-        System.out.println("接收到的username参数: " + username);
+    /**
+     * 生成携带userId、playerId和角色的访问令牌，认证过滤器可直接从声明构建主体
+     */
+    public String generateToken(User user, PlayerProfile playerProfile) {
+        return generateToken(user.getId(), playerProfile.getId(), user.getUsername());
+    }
 
+    public String generateToken(Integer userId, Integer playerId, String username) {
         Date now = new Date();
         Date expiryDate = new Date(now.getTime() + jwtExpiration);
 
         try {
             return Jwts.builder()
+                    .setId(UUID.randomUUID().toString())
                     .setSubject(username)
+                    .claim(CLAIM_USER_ID, userId)
+                    .claim(CLAIM_PLAYER_ID, playerId)
+                    .claim(CLAIM_ROLES, Collections.singletonList(DEFAULT_ROLE))
                     .setIssuedAt(now)
                     .setExpiration(expiryDate)
-                    .signWith(getSigningKey(), SignatureAlgorithm.HS256)
+                    .signWith(signingKey, SignatureAlgorithm.HS256)
                     .compact();
         } catch (Exception e) {
-            System.err.println("JWT Token生成失败: " + e.getMessage());
+            log.error("JWT Token生成失败: {}", e.getMessage());
             throw new RuntimeException("JWT Token生成失败", e);
         }
     }
 
-    public String getUsernameFromToken(String token) {
-        System.out.println("=== DEBUG: getUsernameFromToken ===");
-        System.out.println("解析的token: " + token);
-
+    /**
+     * 一次性验证签名与有效期并返回声明，验证失败返回null
+     */
+    public Claims verifyAndGetClaims(String token) {
         try {
-            Claims claims = Jwts.parserBuilder()
-                    .setSigningKey(getSigningKey())
-                    .build()
-                    .parseClaimsJws(token)
-                    .getBody();
+            return jwtParser.parseClaimsJws(token).getBody();
+        } catch (JwtException | IllegalArgumentException e) {
+            log.debug("JWT Token验证失败: {}", e.getMessage());
+            return null;
+        }
+    }
 
-            String subject = claims.getSubject();
-            System.out.println("从token中提取的subject: " + subject);
+    /**
+     * 从已验证的声明构建认证主体，旧令牌缺少userId/playerId时返回null
+     */
+    public PlayerPrincipal toPrincipal(Claims claims) {
+        Integer userId = claims.get(CLAIM_USER_ID, Integer.class);
+        Integer playerId = claims.get(CLAIM_PLAYER_ID, Integer.class);
+        if (userId == null || playerId == null) {
+            return null;
+        }
 
-            return subject;
-        } catch (Exception e) {
-            System.err.println("JWT Token解析失败: " + e.getMessage());
-            throw new RuntimeException("JWT Token解析失败", e);
+        List<GrantedAuthority> authorities = new ArrayList<>();
+        Object roles = claims.get(CLAIM_ROLES);
+        if (roles instanceof List) {
+            for (Object role : (List<?>) roles) {
+                authorities.add(new SimpleGrantedAuthority(String.valueOf(role)));
+            }
         }
+        long expiresAt = claims.getExpiration() != null ? claims.getExpiration().getTime() : 0L;
+        return new PlayerPrincipal(userId, playerId, claims.getSubject(), authorities, claims.getId(), expiresAt);
     }
 
-    public boolean validateToken(String authToken) {
-        try {
-            Jwts.parserBuilder()
-                    .setSigningKey(getSigningKey())
-                    .build()
-                    .parseClaimsJws(authToken);
-            return true;
-        } catch (JwtException | IllegalArgumentException e) {
-            System.err.println("JWT Token验证失败: " + e.getMessage());
-            return false;
+    public String getUsernameFromToken(String token) {
+        Claims claims = verifyAndGetClaims(token);
+        if (claims == null) {
+            throw new RuntimeException("JWT Token解析失败");
         }
+        return claims.getSubject();
+    }
+
+    public boolean validateToken(String authToken) {
+        return verifyAndGetClaims(authToken) != null;
     }
-}
\ No newline at end of file
+}
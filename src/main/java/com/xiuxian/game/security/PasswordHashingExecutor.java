@@ -0,0 +1,126 @@
+package com.xiuxian.game.security;
+
+import com.xiuxian.game.exception.ServiceBusyException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 密码哈希专用线程池
+ * BCrypt计算在独立的有界线程池中执行，登录/注册高峰时队列满则立即拒绝，
+ * 避免占满Tomcat工作线程导致游戏接口超时。
+ */
+@Slf4j
+@Component
+public class PasswordHashingExecutor {
+
+    private final ThreadPoolExecutor executor;
+    private final long timeoutMillis;
+    private final long retryAfterSeconds;
+    private final MeterRegistry meterRegistry;
+    private final Counter rejectedCounter;
+
+    public PasswordHashingExecutor(
+            @Value("${app.security.hashing.pool-size:4}") int poolSize,
+            @Value("${app.security.hashing.queue-capacity:64}") int queueCapacity,
+            @Value("${app.security.hashing.timeout-ms:5000}") long timeoutMillis,
+            @Value("${app.security.hashing.retry-after-seconds:3}") long retryAfterSeconds,
+            MeterRegistry meterRegistry) {
+        this.timeoutMillis = timeoutMillis;
+        this.retryAfterSeconds = retryAfterSeconds;
+        this.meterRegistry = meterRegistry;
+        this.executor = new ThreadPoolExecutor(
+                poolSize, poolSize,
+                0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                new HashingThreadFactory(),
+                new ThreadPoolExecutor.AbortPolicy());
+        this.rejectedCounter = Counter.builder("xiuxian.password.hashing.rejected")
+                .description("哈希线程池队列已满被拒绝的次数")
+                .register(meterRegistry);
+        meterRegistry.gauge("xiuxian.password.hashing.queue.size", executor, e -> e.getQueue().size());
+        meterRegistry.gauge("xiuxian.password.hashing.active", executor, ThreadPoolExecutor::getActiveCount);
+    }
+
+    /**
+     * 在哈希线程池中执行任务并等待结果，分别记录排队时间与执行时间
+     *
+     * @param operation 操作名称（encode / matches），用作指标标签
+     */
+    public <T> T execute(String operation, Callable<T> task) {
+        Timer waitTimer = Timer.builder("xiuxian.password.hashing.queue.wait")
+                .description("哈希任务排队等待时间")
+                .tag("operation", operation)
+                .register(meterRegistry);
+        Timer hashTimer = Timer.builder("xiuxian.password.hashing.time")
+                .description("哈希计算耗时")
+                .tag("operation", operation)
+                .register(meterRegistry);
+
+        long submittedAt = System.nanoTime();
+        Future<T> future;
+        try {
+            future = executor.submit(() -> {
+                long startedAt = System.nanoTime();
+                waitTimer.record(startedAt - submittedAt, TimeUnit.NANOSECONDS);
+                try {
+                    return task.call();
+                } finally {
+                    hashTimer.record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rejectedCounter.increment();
+            log.warn("密码哈希线程池已满，拒绝请求: operation={}", operation);
+            throw new ServiceBusyException("服务器繁忙，请稍后重试", retryAfterSeconds);
+        }
+
+        try {
+            return future.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            throw new ServiceBusyException("服务器繁忙，请稍后重试", retryAfterSeconds);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("密码哈希被中断", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException("密码哈希失败", cause);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    private static class HashingThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "password-hashing-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.xiuxian.game.security;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.userdetails.UserDetails;
+
+import java.util.Collection;
+
+/**
+ * 由JWT声明直接构建的认证主体，携带userId和playerId，避免每个请求查询users表
+ */
+@Getter
+@AllArgsConstructor
+public class PlayerPrincipal implements UserDetails {
+
+    private final Integer userId;
+    private final Integer playerId;
+    private final String username;
+    private final Collection<? extends GrantedAuthority> authorities;
+
+    /**
+     * 令牌ID（jti）及过期时间，用于登出时加入黑名单
+     */
+    private final String tokenId;
+    private final long tokenExpiresAt;
+
+    @Override
+    public String getPassword() {
+        return null;
+    }
+
+    @Override
+    public boolean isAccountNonExpired() {
+        return true;
+    }
+
+    @Override
+    public boolean isAccountNonLocked() {
+        return true;
+    }
+
+    @Override
+    public boolean isCredentialsNonExpired() {
+        return true;
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return true;
+    }
+}
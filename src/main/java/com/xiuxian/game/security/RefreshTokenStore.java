@@ -0,0 +1,232 @@
+package com.xiuxian.game.security;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 刷新令牌会话存储
+ * 只保存令牌的SHA-256摘要作为索引，明文令牌仅返回给客户端。
+ * 每次刷新都会轮换令牌，旧令牌立即失效。
+ * 签发、轮换和注销在返回前追加写入本地日志文件，重启时重放，已轮换掉的令牌不会复活；日志定期按存活会话压缩。
+ */
+@Slf4j
+@Component
+public class RefreshTokenStore {
+
+    private static final int TOKEN_BYTES = 32;
+    private static final byte RECORD_ISSUE = 1;
+    private static final byte RECORD_REMOVE = 2;
+
+    private final long ttlMillis;
+    private final Path file;
+    private final SecureRandom secureRandom = new SecureRandom();
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+
+    public RefreshTokenStore(@Value("${app.security.refresh.ttl-ms:2592000000}") long ttlMillis,
+                             @Value("${app.security.refresh.file:data/refresh-sessions.log}") String file) {
+        this.ttlMillis = ttlMillis;
+        this.file = Paths.get(file);
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class Session {
+        private final Integer userId;
+        private final Integer playerId;
+        private final String username;
+        private final long expiresAt;
+    }
+
+    /**
+     * 为用户签发新的刷新令牌
+     */
+    public String issue(Integer userId, Integer playerId, String username) {
+        String token = newToken();
+        String key = digest(token);
+        Session session = new Session(userId, playerId, username, System.currentTimeMillis() + ttlMillis);
+        sessions.put(key, session);
+        append(null, key, session);
+        return token;
+    }
+
+    /**
+     * 消费刷新令牌并签发新令牌（轮换），令牌无效或已过期时返回null
+     */
+    public Rotation rotate(String refreshToken) {
+        if (refreshToken == null || refreshToken.isEmpty()) {
+            return null;
+        }
+        String oldKey = digest(refreshToken);
+        Session session = sessions.remove(oldKey);
+        if (session == null) {
+            return null;
+        }
+        if (session.getExpiresAt() <= System.currentTimeMillis()) {
+            append(oldKey, null, null);
+            return null;
+        }
+        // 旧令牌作废和新令牌签发写入同一条日志
+        String newToken = newToken();
+        String newKey = digest(newToken);
+        Session renewed = new Session(session.getUserId(), session.getPlayerId(), session.getUsername(),
+                System.currentTimeMillis() + ttlMillis);
+        sessions.put(newKey, renewed);
+        append(oldKey, newKey, renewed);
+        return new Rotation(session, newToken);
+    }
+
+    /**
+     * 注销刷新令牌
+     */
+    public void revoke(String refreshToken) {
+        if (refreshToken == null) {
+            return;
+        }
+        String key = digest(refreshToken);
+        if (sessions.remove(key) != null) {
+            append(key, null, null);
+        }
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class Rotation {
+        private final Session session;
+        private final String refreshToken;
+    }
+
+    @PostConstruct
+    public void load() {
+        if (!Files.exists(file)) {
+            return;
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            while (true) {
+                try {
+                    byte type = in.readByte();
+                    if (type == RECORD_REMOVE) {
+                        sessions.remove(in.readUTF());
+                    } else if (type == RECORD_ISSUE) {
+                        sessions.put(in.readUTF(), new Session(in.readInt(), in.readInt(), in.readUTF(), in.readLong()));
+                    } else {
+                        log.warn("刷新令牌日志存在无法识别的记录，忽略其后的内容: {}", file);
+                        break;
+                    }
+                } catch (EOFException e) {
+                    // 末尾不完整的记录来自写入中途退出，丢弃
+                    break;
+                }
+            }
+            long now = System.currentTimeMillis();
+            sessions.values().removeIf(session -> session.getExpiresAt() <= now);
+            log.info("已加载刷新令牌会话: {}个", sessions.size());
+        } catch (IOException e) {
+            log.error("加载刷新令牌会话失败: {}", file, e);
+        }
+        compact();
+    }
+
+    /**
+     * 定期清除过期会话，并把日志压缩为只包含存活会话
+     */
+    @Scheduled(fixedDelayString = "${app.security.refresh.compact-interval-ms:600000}")
+    public void purgeExpired() {
+        long now = System.currentTimeMillis();
+        sessions.values().removeIf(session -> session.getExpiresAt() <= now);
+        compact();
+    }
+
+    /**
+     * 追加一条变更：removedKey不为空时作废该会话，addedKey不为空时登记新会话
+     * 调用方先修改内存再追加，压缩与追加互斥，因此压缩结果总包含已追加之前的全部变更
+     */
+    private synchronized void append(String removedKey, String addedKey, Session added) {
+        try {
+            createParentDirectories();
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND)))) {
+                if (removedKey != null) {
+                    out.writeByte(RECORD_REMOVE);
+                    out.writeUTF(removedKey);
+                }
+                if (addedKey != null) {
+                    writeIssue(out, addedKey, added);
+                }
+            }
+        } catch (IOException e) {
+            log.error("写入刷新令牌日志失败: {}", file, e);
+        }
+    }
+
+    private synchronized void compact() {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            createParentDirectories();
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                for (Map.Entry<String, Session> entry : sessions.entrySet()) {
+                    writeIssue(out, entry.getKey(), entry.getValue());
+                }
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.error("压缩刷新令牌日志失败: {}", file, e);
+        }
+    }
+
+    private void createParentDirectories() throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+    }
+
+    private static void writeIssue(DataOutputStream out, String key, Session session) throws IOException {
+        out.writeByte(RECORD_ISSUE);
+        out.writeUTF(key);
+        out.writeInt(session.getUserId());
+        out.writeInt(session.getPlayerId());
+        out.writeUTF(session.getUsername());
+        out.writeLong(session.getExpiresAt());
+    }
+
+    private String newToken() {
+        byte[] bytes = new byte[TOKEN_BYTES];
+        secureRandom.nextBytes(bytes);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+
+    private static String digest(String token) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            byte[] hash = md.digest(token.getBytes(StandardCharsets.UTF_8));
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(hash);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256不可用", e);
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package com.xiuxian.game.security;
+
+import com.xiuxian.game.util.BloomFilter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 已注销令牌黑名单（按jti）
+ * 布隆过滤器提供无锁的快速否定判断，命中后再查精确集合；条目随令牌过期自动清除。
+ * 注销记录追加写入本地文件，重启后重新加载，避免已注销的令牌复活。
+ */
+@Slf4j
+@Component
+public class TokenDenylist {
+
+    private final Path file;
+    private final int expectedInsertions;
+    private final double falsePositiveRate;
+
+    private final Map<String, Long> revoked = new ConcurrentHashMap<>();
+    private volatile BloomFilter bloomFilter;
+
+    public TokenDenylist(@Value("${app.security.denylist.file:data/token-denylist.bin}") String file,
+                         @Value("${app.security.denylist.expected-insertions:100000}") int expectedInsertions,
+                         @Value("${app.security.denylist.false-positive-rate:0.01}") double falsePositiveRate) {
+        this.file = Paths.get(file);
+        this.expectedInsertions = expectedInsertions;
+        this.falsePositiveRate = falsePositiveRate;
+        this.bloomFilter = new BloomFilter(expectedInsertions, falsePositiveRate);
+    }
+
+    @PostConstruct
+    public void load() {
+        if (!Files.exists(file)) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            while (true) {
+                long expiresAt;
+                String jti;
+                try {
+                    expiresAt = in.readLong();
+                    jti = in.readUTF();
+                } catch (EOFException e) {
+                    break;
+                }
+                if (expiresAt > now) {
+                    revoked.put(jti, expiresAt);
+                    bloomFilter.put(jti);
+                }
+            }
+            log.info("已加载令牌黑名单: {}条", revoked.size());
+        } catch (IOException e) {
+            log.error("加载令牌黑名单失败: {}", file, e);
+        }
+    }
+
+    /**
+     * 注销令牌，记录保留到令牌过期为止
+     */
+    public void revoke(String jti, long expiresAtMillis) {
+        if (jti == null || expiresAtMillis <= System.currentTimeMillis()) {
+            return;
+        }
+        if (revoked.putIfAbsent(jti, expiresAtMillis) == null) {
+            bloomFilter.put(jti);
+            append(jti, expiresAtMillis);
+        }
+    }
+
+    public boolean isRevoked(String jti) {
+        if (jti == null || !bloomFilter.mightContain(jti)) {
+            return false;
+        }
+        Long expiresAt = revoked.get(jti);
+        return expiresAt != null && expiresAt > System.currentTimeMillis();
+    }
+
+    public int size() {
+        return revoked.size();
+    }
+
+    /**
+     * 定期清除过期条目：重建布隆过滤器并压缩本地文件
+     */
+    @Scheduled(fixedDelayString = "${app.security.denylist.cleanup-interval-ms:600000}")
+    public void purgeExpired() {
+        long now = System.currentTimeMillis();
+        int before = revoked.size();
+        revoked.entrySet().removeIf(entry -> entry.getValue() <= now);
+        if (revoked.size() == before) {
+            return;
+        }
+
+        BloomFilter rebuilt = new BloomFilter(expectedInsertions, falsePositiveRate);
+        revoked.keySet().forEach(rebuilt::put);
+        bloomFilter = rebuilt;
+        // 重建期间新注销的jti可能只进入了旧过滤器，补录一次
+        revoked.keySet().forEach(rebuilt::put);
+
+        compact();
+        log.info("令牌黑名单清理完成: {} -> {}条", before, revoked.size());
+    }
+
+    private synchronized void append(String jti, long expiresAtMillis) {
+        try {
+            createParentDirectories();
+            try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(file,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND))) {
+                writeRecord(out, jti, expiresAtMillis);
+            }
+        } catch (IOException e) {
+            log.error("写入令牌黑名单失败: {}", file, e);
+        }
+    }
+
+    private synchronized void compact() {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            createParentDirectories();
+            try (OutputStream os = Files.newOutputStream(tmp);
+                 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(os))) {
+                for (Map.Entry<String, Long> entry : revoked.entrySet()) {
+                    writeRecord(out, entry.getKey(), entry.getValue());
+                }
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.error("压缩令牌黑名单文件失败: {}", file, e);
+        }
+    }
+
+    private void createParentDirectories() throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+    }
+
+    private static void writeRecord(DataOutputStream out, String jti, long expiresAtMillis) throws IOException {
+        out.writeLong(expiresAtMillis);
+        out.writeUTF(jti);
+    }
+}
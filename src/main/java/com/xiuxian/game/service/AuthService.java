@@ -3,79 +3,123 @@ package com.xiuxian.game.service;
 import com.xiuxian.game.dto.request.LoginRequest;
 import com.xiuxian.game.dto.request.RegisterRequest;
 import com.xiuxian.game.dto.response.LoginResponse;
+import com.xiuxian.game.dto.response.TokenRefreshResponse;
 import com.xiuxian.game.entity.PlayerProfile;
 import com.xiuxian.game.entity.User;
-import com.xiuxian.game.mapper.PlayerProfileMapper;
+import com.xiuxian.game.exception.ServiceBusyException;
 import com.xiuxian.game.mapper.UserMapper;
 import com.xiuxian.game.security.JwtTokenProvider;
+import com.xiuxian.game.security.PlayerPrincipal;
+import com.xiuxian.game.security.RefreshTokenStore;
+import com.xiuxian.game.security.TokenDenylist;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.sql.SQLException;
 import java.time.LocalDateTime;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class AuthService {
 
+    // MySQL 8.0.19起索引名带表名前缀（'users.email'），更早的版本只有索引名（'email'）
+    private static final Pattern DUPLICATE_KEY_PATTERN = Pattern.compile("for key '(?:[^'.]*\\.)?([^']*)'");
+
     private final UserMapper userMapper;
-    private final PlayerProfileMapper playerProfileMapper;
+    private final PlayerProfileCache playerProfileCache;
     private final PasswordEncoder passwordEncoder;
     private final JwtTokenProvider tokenProvider;
     private final AuthenticationManager authenticationManager;
     private final PlayerService playerService;
+    private final TokenDenylist tokenDenylist;
+    private final RefreshTokenStore refreshTokenStore;
+    private final TransactionTemplate transactionTemplate;
 
-    @Transactional
+    /**
+     * 注册：密码哈希在事务外完成（可能在哈希线程池中排队），只有插入用户和档案时才占用数据库连接
+     */
     public LoginResponse register(RegisterRequest request) {
         try {
             log.info("开始注册用户: {}", request.getUsername());
 
-            // 检查用户名是否已存在
-            User existingUserByUsername = userMapper.selectByUsername(request.getUsername());
-            if (existingUserByUsername != null) {
-                throw new RuntimeException("用户名已存在");
-            }
-
-            // 检查邮箱是否已存在
-            User existingUserByEmail = userMapper.selectByEmail(request.getEmail());
-            if (existingUserByEmail != null) {
-                throw new RuntimeException("邮箱已被使用");
-            }
-
-            // 创建用户
+            // 创建用户，用户名/邮箱重复由唯一键约束判定，无需预先查询
+            LocalDateTime now = LocalDateTime.now();
             User user = User.builder()
                     .username(request.getUsername())
                     .password(passwordEncoder.encode(request.getPassword()))
                     .email(request.getEmail())
+                    .createdAt(now)
+                    .updatedAt(now)
                     .build();
 
-            userMapper.insert(user);
-            log.info("用户创建成功: ID={}", user.getId());
+            PlayerProfile playerProfile = transactionTemplate.execute(status -> {
+                try {
+                    userMapper.insert(user);
+                } catch (DuplicateKeyException e) {
+                    throw new RuntimeException(isEmailKey(violatedKey(e)) ? "邮箱已被使用" : "用户名已存在");
+                }
+                log.info("用户创建成功: ID={}", user.getId());
 
-            // 创建玩家档案
-            PlayerProfile playerProfile = playerService.createNewPlayer(user, request.getNickname());
+                // 创建玩家档案
+                return playerService.createNewPlayer(user, request.getNickname());
+            });
             log.info("玩家档案创建成功: ID={}", playerProfile.getId());
 
             // 生成JWT令牌
-            String token = tokenProvider.generateToken(user.getUsername());
+            String token = tokenProvider.generateToken(user, playerProfile);
             log.info("JWT令牌生成成功");
 
-            return buildLoginResponse(user, playerProfile, token);
+            // 注册后客户端会跳转到登录，刷新会话只在登录时签发，避免留下无人使用的会话
+            return buildLoginResponse(user, playerProfile, token, null);
 
+        } catch (ServiceBusyException e) {
+            throw e;
         } catch (Exception e) {
             log.error("注册失败: {}", request.getUsername(), e);
             throw new RuntimeException("注册失败: " + e.getMessage());
         }
     }
 
-    @Transactional
+    /**
+     * 从唯一键冲突的数据库异常中读取冲突的索引名，如 "Duplicate entry 'x' for key 'users.email'" 中的email
+     * 不能直接匹配异常消息：转换后的消息包含整条INSERT语句，其中总有email列
+     */
+    private static String violatedKey(DuplicateKeyException e) {
+        for (Throwable cause = e.getCause(); cause != null; cause = cause.getCause()) {
+            if (cause instanceof SQLException && cause.getMessage() != null) {
+                // 取最后一处匹配，重复的值本身可能包含类似的文字
+                Matcher matcher = DUPLICATE_KEY_PATTERN.matcher(cause.getMessage());
+                String key = null;
+                while (matcher.find()) {
+                    key = matcher.group(1);
+                }
+                if (key != null) {
+                    return key;
+                }
+            }
+        }
+        return "";
+    }
+
+    private static boolean isEmailKey(String key) {
+        return key.contains("email");
+    }
+
+    /**
+     * 登录不开启事务：密码校验和重新哈希可能在哈希线程池中排队，期间不能占用数据库连接
+     * 各次查询和最后的更新都是单条语句，自动提交即可
+     */
     public LoginResponse login(LoginRequest request) {
         try {
             log.info("开始用户登录: {}", request.getUsername());
@@ -95,27 +139,60 @@ public class AuthService {
             }
 
             // 获取玩家档案
-            PlayerProfile playerProfile = playerProfileMapper.selectByUserId(user.getId());
+            PlayerProfile playerProfile = playerProfileCache.getByUserId(user.getId());
             if (playerProfile == null) {
                 throw new RuntimeException("玩家档案不存在");
             }
 
             // 生成JWT令牌
-            String token = tokenProvider.generateToken(user.getUsername());
+            String token = tokenProvider.generateToken(user, playerProfile);
             log.info("JWT令牌生成成功");
 
+            // 密码哈希格式或强度偏离目标时，借登录成功的机会重新哈希；尽力而为，哈希池繁忙时下次再更新
+            if (passwordEncoder.upgradeEncoding(user.getPassword())) {
+                try {
+                    user.setPassword(passwordEncoder.encode(request.getPassword()));
+                    log.info("用户密码哈希已按目标强度更新: {}", user.getUsername());
+                } catch (ServiceBusyException e) {
+                    log.info("哈希线程池繁忙，跳过本次密码重新哈希: {}", user.getUsername());
+                }
+            }
+
             // 更新最后登录时间
             user.setUpdatedAt(LocalDateTime.now());
             userMapper.updateById(user);
 
-            return buildLoginResponse(user, playerProfile, token);
+            String refreshToken = refreshTokenStore.issue(user.getId(), playerProfile.getId(), user.getUsername());
+            return buildLoginResponse(user, playerProfile, token, refreshToken);
 
+        } catch (ServiceBusyException e) {
+            throw e;
         } catch (Exception e) {
             log.error("登录失败: {}", request.getUsername(), e);
             throw new RuntimeException("登录失败: " + e.getMessage());
         }
     }
 
+    /**
+     * 使用刷新令牌换取新的访问令牌，刷新令牌同时轮换
+     * 不校验密码、不查询数据库
+     */
+    public TokenRefreshResponse refresh(String refreshToken) {
+        RefreshTokenStore.Rotation rotation = refreshTokenStore.rotate(refreshToken);
+        if (rotation == null) {
+            throw new IllegalArgumentException("刷新令牌无效或已过期");
+        }
+
+        RefreshTokenStore.Session session = rotation.getSession();
+        String token = tokenProvider.generateToken(session.getUserId(), session.getPlayerId(), session.getUsername());
+        log.info("刷新访问令牌成功: {}", session.getUsername());
+
+        return TokenRefreshResponse.builder()
+                .token(token)
+                .refreshToken(rotation.getRefreshToken())
+                .build();
+    }
+
     public User getUserByUsername(String username) {
         try {
             log.info("根据用户名查询用户: {}", username);
@@ -133,9 +210,10 @@ public class AuthService {
     /**
      * 构建登录响应
      */
-    private LoginResponse buildLoginResponse(User user, PlayerProfile playerProfile, String token) {
+    private LoginResponse buildLoginResponse(User user, PlayerProfile playerProfile, String token, String refreshToken) {
         return LoginResponse.builder()
                 .token(token)
+                .refreshToken(refreshToken)
                 .user(LoginResponse.UserDto.builder()
                         .id(user.getId().longValue())
                         .username(user.getUsername())
@@ -171,8 +249,12 @@ public class AuthService {
 
             String username = authentication.getName();
             log.info("获取当前用户: {}", username);
-            
-            User user = userMapper.selectByUsername(username);
+
+            // 令牌已携带userId时按主键查询
+            Object principal = authentication.getPrincipal();
+            User user = principal instanceof PlayerPrincipal
+                    ? userMapper.selectById(((PlayerPrincipal) principal).getUserId())
+                    : userMapper.selectByUsername(username);
             if (user == null) {
                 throw new RuntimeException("用户不存在");
             }
@@ -186,12 +268,18 @@ public class AuthService {
     /**
      * 用户登出
      */
-    public void logout() {
+    public void logout(String refreshToken) {
         try {
             org.springframework.security.core.Authentication authentication = 
                 org.springframework.security.core.context.SecurityContextHolder.getContext().getAuthentication();
             
             if (authentication != null) {
+                // 将当前令牌加入黑名单，直到其自然过期
+                if (authentication.getPrincipal() instanceof PlayerPrincipal) {
+                    PlayerPrincipal principal = (PlayerPrincipal) authentication.getPrincipal();
+                    tokenDenylist.revoke(principal.getTokenId(), principal.getTokenExpiresAt());
+                }
+                refreshTokenStore.revoke(refreshToken);
                 SecurityContextHolder.clearContext();
                 log.info("用户登出成功: {}", authentication.getName());
             }
@@ -0,0 +1,495 @@
+package com.xiuxian.game.service;
+
+import com.xiuxian.game.entity.CultivationLog;
+import com.xiuxian.game.mapper.CultivationLogMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.stream.Collectors;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * 修炼日志冷数据归档
+ * 超过保留期的日志按天移出cultivation_logs，写入本地按日期划分的只追加文件：
+ * yyyy-MM-dd.seg 每个玩家一个Deflate压缩的记录块；yyyy-MM-dd.idx 定长索引项（玩家ID、块偏移、块长度、条数、本批最大日志ID），
+ * 每批索引项之后写一条提交项（玩家ID为-1，块长度字段为本批索引项数），只有带提交项的批次才有效，中断留下的半批索引项在读取时忽略、下次追加前截掉。
+ * 先写段文件和索引并落盘，再删除数据库中的行；中途中断时，最后一个已提交批次中的日志ID视为已归档，重跑时只删除不重复写入。
+ * 每个玩家记录有归档的最早和最晚日期，分页只查看这个范围内的日期；最近读取的若干天的索引常驻内存，段文件以内存映射方式访问，
+ * 按玩家定位到压缩块后解压，历史日志不再占用数据库缓冲池。
+ */
+@Slf4j
+@Component
+public class CultivationLogArchive {
+
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final String INDEX_SUFFIX = ".idx";
+    private static final int INDEX_ENTRY_BYTES = 4 + 8 + 4 + 4 + 8;
+    private static final int COMMIT_PLAYER_ID = -1;
+
+    // 与数据库分页顺序一致：按创建时间倒序，相同时间按ID倒序
+    private static final Comparator<CultivationLog> NEWEST_FIRST = Comparator
+            .comparing(CultivationLog::getCreatedAt)
+            .thenComparing(CultivationLog::getId)
+            .reversed();
+
+    private final CultivationLogMapper cultivationLogMapper;
+    private final Path directory;
+    private final boolean enabled;
+    private final int retentionDays;
+    private final int batchSize;
+    private final int maxOpenSegments;
+
+    // 已有归档的日期和每个玩家有归档的日期范围
+    private final NavigableSet<LocalDate> days = new ConcurrentSkipListSet<>();
+    private final ConcurrentMap<Integer, DayRange> playerDays = new ConcurrentHashMap<>();
+    // 最近读取的日期段，按访问顺序淘汰；归档追加后移除对应的段，下次读取时重新加载
+    private final Map<LocalDate, Segment> segments;
+
+    public CultivationLogArchive(CultivationLogMapper cultivationLogMapper,
+                                 @Value("${app.game.cultivation-log.archive.dir:data/cultivation-log-archive}") String directory,
+                                 @Value("${app.game.cultivation-log.archive.enabled:true}") boolean enabled,
+                                 @Value("${app.game.cultivation-log.archive.retention-days:30}") int retentionDays,
+                                 @Value("${app.game.cultivation-log.archive.batch-size:5000}") int batchSize,
+                                 @Value("${app.game.cultivation-log.archive.max-open-segments:32}") int maxOpenSegments) {
+        this.cultivationLogMapper = cultivationLogMapper;
+        this.directory = Paths.get(directory);
+        this.enabled = enabled;
+        this.retentionDays = Math.max(1, retentionDays);
+        this.batchSize = Math.max(1, batchSize);
+        this.maxOpenSegments = Math.max(1, maxOpenSegments);
+        this.segments = new LinkedHashMap<LocalDate, Segment>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<LocalDate, Segment> eldest) {
+                return size() > CultivationLogArchive.this.maxOpenSegments;
+            }
+        };
+    }
+
+    @PostConstruct
+    public void init() {
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + INDEX_SUFFIX)) {
+            for (Path file : stream) {
+                String name = file.getFileName().toString();
+                LocalDate day;
+                try {
+                    day = LocalDate.parse(name.substring(0, name.length() - INDEX_SUFFIX.length()));
+                } catch (DateTimeParseException e) {
+                    log.warn("忽略无法识别的归档索引文件: {}", file);
+                    continue;
+                }
+                // 启动时只读索引建立玩家的日期范围，不映射段文件
+                for (Integer playerId : loadIndex(day).blocks.keySet()) {
+                    addPlayerDay(playerId, day);
+                }
+                days.add(day);
+            }
+        } catch (IOException e) {
+            log.warn("扫描修炼日志归档目录失败: {}", directory, e);
+        }
+        log.info("修炼日志归档已加载: {}天, {}名玩家", days.size(), playerDays.size());
+    }
+
+    /**
+     * 把保留期之前的日志按天移入归档，从最早的一天开始
+     */
+    @Scheduled(fixedDelayString = "${app.game.cultivation-log.archive.interval-ms:3600000}",
+            initialDelayString = "${app.game.cultivation-log.archive.interval-ms:3600000}")
+    public void archive() {
+        if (!enabled) {
+            return;
+        }
+        LocalDateTime cutoff = LocalDate.now().minusDays(retentionDays).atStartOfDay();
+        long start = System.currentTimeMillis();
+        int archived = 0;
+        try {
+            LocalDateTime oldest;
+            while ((oldest = cultivationLogMapper.selectOldestBefore(cutoff)) != null) {
+                archived += archiveDay(oldest.toLocalDate());
+            }
+        } catch (Exception e) {
+            log.error("归档修炼日志失败，下次继续", e);
+        }
+        if (archived > 0) {
+            log.info("已归档修炼日志: {}条, 耗时{}ms", archived, System.currentTimeMillis() - start);
+        }
+    }
+
+    private int archiveDay(LocalDate day) throws IOException {
+        LocalDateTime from = day.atStartOfDay();
+        LocalDateTime to = from.plusDays(1);
+        // 每批写入归档后立即删除对应的行，中断时最多只有最后一个已提交批次的行仍留在数据库中
+        Index index = loadIndex(day);
+        Set<Integer> archivedIds = index.lastBatchIds(segmentPath(day));
+        long indexLength = index.committedLength;
+
+        int archived = 0;
+        int afterId = 0;
+        while (true) {
+            List<CultivationLog> batch = cultivationLogMapper.selectCreatedBetweenAfterId(from, to, afterId, batchSize);
+            if (batch.isEmpty()) {
+                return archived;
+            }
+            afterId = batch.get(batch.size() - 1).getId();
+
+            List<Integer> ids = new ArrayList<>(batch.size());
+            List<CultivationLog> pending = new ArrayList<>(batch.size());
+            for (CultivationLog cultivationLog : batch) {
+                ids.add(cultivationLog.getId());
+                // 上次写入归档后未来得及删除的行不再重复写入
+                if (!archivedIds.contains(cultivationLog.getId())) {
+                    pending.add(cultivationLog);
+                }
+            }
+            if (!pending.isEmpty()) {
+                indexLength = append(day, pending, indexLength);
+                archived += pending.size();
+            }
+            cultivationLogMapper.deleteByIds(ids);
+        }
+    }
+
+    /**
+     * 追加一批同一天的日志：每个玩家写一个压缩块，段文件落盘后再追加这批的索引项和提交项
+     *
+     * @param indexLength 索引文件中已提交部分的长度，之后的内容是中断留下的半批索引项
+     * @return 追加后索引文件的长度
+     */
+    private long append(LocalDate day, List<CultivationLog> logs, long indexLength) throws IOException {
+        Files.createDirectories(directory);
+        Map<Integer, List<CultivationLog>> byPlayer = logs.stream()
+                .collect(Collectors.groupingBy(CultivationLog::getPlayerId, TreeMap::new, Collectors.toList()));
+        long maxLogId = logs.get(logs.size() - 1).getId();
+
+        ByteArrayOutputStream indexBytes = new ByteArrayOutputStream((byPlayer.size() + 1) * INDEX_ENTRY_BYTES);
+        DataOutputStream index = new DataOutputStream(indexBytes);
+        try (FileChannel channel = FileChannel.open(segmentPath(day),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            long offset = channel.size();
+            for (Map.Entry<Integer, List<CultivationLog>> entry : byPlayer.entrySet()) {
+                byte[] block = compress(entry.getValue());
+                writeFully(channel, ByteBuffer.wrap(block));
+                index.writeInt(entry.getKey());
+                index.writeLong(offset);
+                index.writeInt(block.length);
+                index.writeInt(entry.getValue().size());
+                index.writeLong(maxLogId);
+                offset += block.length;
+            }
+            channel.force(true);
+        }
+        index.writeInt(COMMIT_PLAYER_ID);
+        index.writeLong(0L);
+        index.writeInt(byPlayer.size());
+        index.writeInt(logs.size());
+        index.writeLong(maxLogId);
+
+        try (FileChannel channel = FileChannel.open(indexPath(day), StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            // 截掉上次中断留下的未提交索引项，它们指向的段数据成为无人引用的空洞
+            channel.truncate(indexLength);
+            channel.position(indexLength);
+            writeFully(channel, ByteBuffer.wrap(indexBytes.toByteArray()));
+            channel.force(true);
+        }
+
+        for (Integer playerId : byPlayer.keySet()) {
+            addPlayerDay(playerId, day);
+        }
+        days.add(day);
+        synchronized (segments) {
+            segments.remove(day);
+        }
+        return indexLength + indexBytes.size();
+    }
+
+    /**
+     * 从归档中读取玩家早于游标的日志，顺序与数据库分页一致
+     *
+     * @param cursorCreatedAt 游标时间，为null时从最新的归档开始
+     */
+    public List<CultivationLog> readPage(Integer playerId, LocalDateTime cursorCreatedAt, Integer cursorId, int limit) {
+        DayRange range = playerDays.get(playerId);
+        if (limit <= 0 || range == null) {
+            return Collections.emptyList();
+        }
+        LocalDate last = range.last;
+        if (cursorCreatedAt != null && cursorCreatedAt.toLocalDate().isBefore(last)) {
+            last = cursorCreatedAt.toLocalDate();
+        }
+        if (last.isBefore(range.first)) {
+            return Collections.emptyList();
+        }
+        NavigableSet<LocalDate> candidates = days.subSet(range.first, true, last, true).descendingSet();
+
+        List<CultivationLog> result = new ArrayList<>();
+        try {
+            for (LocalDate day : candidates) {
+                Segment segment = segment(day);
+                List<Block> blocks = segment.blocks.get(playerId);
+                if (blocks == null) {
+                    continue;
+                }
+                List<CultivationLog> dayLogs = new ArrayList<>();
+                for (Block block : blocks) {
+                    segment.read(block, playerId, dayLogs);
+                }
+                if (cursorCreatedAt != null) {
+                    dayLogs.removeIf(cultivationLog -> !isBefore(cultivationLog, cursorCreatedAt, cursorId));
+                }
+                dayLogs.sort(NEWEST_FIRST);
+                result.addAll(dayLogs.subList(0, Math.min(dayLogs.size(), limit - result.size())));
+                if (result.size() >= limit) {
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            log.error("读取修炼日志归档失败: 玩家ID={}", playerId, e);
+            throw new RuntimeException("读取历史修炼日志失败");
+        }
+        return result;
+    }
+
+    /**
+     * 该日期是否已有日志移入归档
+     */
+    public boolean isArchived(LocalDate day) {
+        return days.contains(day);
+    }
+
+    private static boolean isBefore(CultivationLog cultivationLog, LocalDateTime cursorCreatedAt, Integer cursorId) {
+        int compare = cultivationLog.getCreatedAt().compareTo(cursorCreatedAt);
+        return compare < 0 || (compare == 0 && cultivationLog.getId() < cursorId);
+    }
+
+    private void addPlayerDay(Integer playerId, LocalDate day) {
+        playerDays.merge(playerId, new DayRange(day, day), DayRange::union);
+    }
+
+    private Segment segment(LocalDate day) throws IOException {
+        synchronized (segments) {
+            Segment segment = segments.get(day);
+            if (segment != null) {
+                return segment;
+            }
+        }
+        // 在锁外加载，并发读取同一天时可能重复加载，结果相同
+        Segment segment = new Segment(map(segmentPath(day)), loadIndex(day).blocks);
+        synchronized (segments) {
+            segments.put(day, segment);
+        }
+        return segment;
+    }
+
+    private static MappedByteBuffer map(Path segmentFile) throws IOException {
+        if (!Files.exists(segmentFile)) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(segmentFile, StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    /**
+     * 读取一天的索引，只保留带提交项的批次
+     */
+    private Index loadIndex(LocalDate day) throws IOException {
+        Index result = new Index();
+        Path indexFile = indexPath(day);
+        if (!Files.exists(indexFile)) {
+            return result;
+        }
+        ByteBuffer index = ByteBuffer.wrap(Files.readAllBytes(indexFile));
+        int entries = index.remaining() / INDEX_ENTRY_BYTES;
+        Map<Integer, Block> batch = new TreeMap<>();
+        for (int i = 0; i < entries; i++) {
+            int playerId = index.getInt();
+            Block block = new Block(index.getLong(), index.getInt(), index.getInt());
+            index.getLong();
+            if (playerId != COMMIT_PLAYER_ID) {
+                batch.put(playerId, block);
+                continue;
+            }
+            if (block.length != batch.size()) {
+                // 提交项与前面的索引项数不符，说明文件已损坏，之后的内容都不可信
+                log.warn("归档索引提交项不匹配，忽略之后的内容: {}, 位置={}", indexFile, (long) i * INDEX_ENTRY_BYTES);
+                break;
+            }
+            for (Map.Entry<Integer, Block> entry : batch.entrySet()) {
+                result.blocks.computeIfAbsent(entry.getKey(), id -> new ArrayList<>(1)).add(entry.getValue());
+            }
+            result.lastBatch = batch;
+            result.committedLength = (long) (i + 1) * INDEX_ENTRY_BYTES;
+            batch = new TreeMap<>();
+        }
+        return result;
+    }
+
+    private static byte[] compress(List<CultivationLog> logs) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(bytes))) {
+            for (CultivationLog cultivationLog : logs) {
+                out.writeInt(cultivationLog.getId());
+                out.writeLong(cultivationLog.getCreatedAt().toEpochSecond(ZoneOffset.UTC));
+                out.writeLong(cultivationLog.getExpGained() != null ? cultivationLog.getExpGained() : 0L);
+                out.writeInt(cultivationLog.getSpiritStonesGained() != null ? cultivationLog.getSpiritStonesGained() : 0);
+                out.writeLong(cultivationLog.getCultivationDuration() != null ? cultivationLog.getCultivationDuration() : 0L);
+                out.writeBoolean(Boolean.TRUE.equals(cultivationLog.getIsOffline()));
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private Path segmentPath(LocalDate day) {
+        return directory.resolve(day + SEGMENT_SUFFIX);
+    }
+
+    private Path indexPath(LocalDate day) {
+        return directory.resolve(day + INDEX_SUFFIX);
+    }
+
+    private static void decompress(ByteBuffer data, Block block, Integer playerId, List<CultivationLog> into) throws IOException {
+        byte[] compressed = new byte[block.length];
+        // 复制视图后读取，多个线程共享同一映射互不影响
+        ByteBuffer view = data.duplicate();
+        view.position((int) block.offset);
+        view.get(compressed);
+        try (DataInputStream in = new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(compressed)))) {
+            for (int i = 0; i < block.count; i++) {
+                into.add(CultivationLog.builder()
+                        .id(in.readInt())
+                        .playerId(playerId)
+                        .createdAt(LocalDateTime.ofEpochSecond(in.readLong(), 0, ZoneOffset.UTC))
+                        .expGained(in.readLong())
+                        .spiritStonesGained(in.readInt())
+                        .cultivationDuration(in.readLong())
+                        .isOffline(in.readBoolean())
+                        .build());
+            }
+        }
+    }
+
+    /**
+     * 一天的归档：内存中的玩家索引和只读映射的段文件
+     */
+    private static final class Segment {
+        private final MappedByteBuffer data;
+        private final Map<Integer, List<Block>> blocks;
+
+        Segment(MappedByteBuffer data, Map<Integer, List<Block>> blocks) {
+            this.data = data;
+            this.blocks = blocks;
+        }
+
+        void read(Block block, Integer playerId, List<CultivationLog> into) throws IOException {
+            if (data == null) {
+                throw new IOException("归档段文件缺失");
+            }
+            decompress(data, block, playerId, into);
+        }
+    }
+
+    /**
+     * 一天索引中已提交的部分
+     */
+    private static final class Index {
+        private final Map<Integer, List<Block>> blocks = new HashMap<>();
+        private Map<Integer, Block> lastBatch = Collections.emptyMap();
+        private long committedLength;
+
+        /**
+         * 最后一个已提交批次写入的日志ID，这些行可能在写入归档后、删除前被中断而仍留在数据库中
+         */
+        Set<Integer> lastBatchIds(Path segmentFile) throws IOException {
+            if (lastBatch.isEmpty()) {
+                return Collections.emptySet();
+            }
+            MappedByteBuffer data = map(segmentFile);
+            if (data == null) {
+                throw new IOException("归档段文件缺失: " + segmentFile);
+            }
+            List<CultivationLog> logs = new ArrayList<>();
+            for (Map.Entry<Integer, Block> entry : lastBatch.entrySet()) {
+                decompress(data, entry.getValue(), entry.getKey(), logs);
+            }
+            Set<Integer> ids = new HashSet<>(logs.size() * 2);
+            for (CultivationLog cultivationLog : logs) {
+                ids.add(cultivationLog.getId());
+            }
+            return ids;
+        }
+    }
+
+    /**
+     * 玩家有归档的最早和最晚日期
+     */
+    private static final class DayRange {
+        private final LocalDate first;
+        private final LocalDate last;
+
+        DayRange(LocalDate first, LocalDate last) {
+            this.first = first;
+            this.last = last;
+        }
+
+        DayRange union(DayRange other) {
+            LocalDate unionFirst = first.isBefore(other.first) ? first : other.first;
+            LocalDate unionLast = last.isAfter(other.last) ? last : other.last;
+            return unionFirst == first && unionLast == last ? this : new DayRange(unionFirst, unionLast);
+        }
+    }
+
+    private static final class Block {
+        private final long offset;
+        private final int length;
+        private final int count;
+
+        Block(long offset, int length, int count) {
+            this.offset = offset;
+            this.length = length;
+            this.count = count;
+        }
+    }
+}
@@ -0,0 +1,420 @@
+package com.xiuxian.game.service;
+
+import com.xiuxian.game.entity.CultivationLog;
+import com.xiuxian.game.mapper.CultivationLogMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PreDestroy;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 修炼日志异步写入器（组提交）
+ * 业务事务提交后只把日志放入有界队列，由单个后台线程批量取出并以一条多行INSERT写入，
+ * 游戏事务不再为审计性质的插入付出延迟。
+ * 队列满时按配置的策略处理：block（阻塞等待，超时后溢出到文件）、drop（丢弃并计数）、spill（追加到本地溢出文件）。
+ * 溢出文件和写库失败的批次会在队列空闲时重新写入数据库，连续失败时按指数退避重试；进程崩溃时队列中尚未写入的日志会丢失。
+ * 违反约束（非空、外键等）的批次二分定位出写不进去的日志，单独转存到隔离文件，不影响同批其他日志，也不会反复重试。
+ */
+@Slf4j
+@Component
+public class CultivationLogWriter {
+
+    public enum OverflowPolicy {
+        BLOCK, DROP, SPILL
+    }
+
+    private final CultivationLogMapper cultivationLogMapper;
+    private final CultivationStatsService cultivationStatsService;
+    private final TransactionTemplate transactionTemplate;
+    private final BlockingQueue<CultivationLog> queue;
+    private final OverflowPolicy overflowPolicy;
+    private final long blockTimeoutMillis;
+    private final int batchSize;
+    private final long flushIntervalMillis;
+    private final Path spillFile;
+    private final Path quarantineFile;
+    private final long replayMaxBackoffMillis;
+    private final Object spillLock = new Object();
+
+    /**
+     * 补写连续失败时的退避，只在写入线程中访问
+     */
+    private long replayBackoffMillis;
+    private long nextReplayAt;
+
+    private final Thread writerThread;
+    private volatile boolean running = true;
+
+    private final Counter writtenCounter;
+    private final Counter droppedCounter;
+    private final Counter spilledCounter;
+    private final Counter failedCounter;
+    private final Counter quarantinedCounter;
+    private final Timer flushTimer;
+
+    public CultivationLogWriter(CultivationLogMapper cultivationLogMapper,
+                                CultivationStatsService cultivationStatsService,
+                                TransactionTemplate transactionTemplate,
+                                @Value("${app.game.cultivation-log.queue-capacity:10000}") int queueCapacity,
+                                @Value("${app.game.cultivation-log.overflow:spill}") String overflowPolicy,
+                                @Value("${app.game.cultivation-log.block-timeout-ms:100}") long blockTimeoutMillis,
+                                @Value("${app.game.cultivation-log.batch-size:500}") int batchSize,
+                                @Value("${app.game.cultivation-log.flush-interval-ms:200}") long flushIntervalMillis,
+                                @Value("${app.game.cultivation-log.spill-file:data/cultivation-log.spill}") String spillFile,
+                                @Value("${app.game.cultivation-log.replay-max-backoff-ms:300000}") long replayMaxBackoffMillis,
+                                MeterRegistry meterRegistry) {
+        this.cultivationLogMapper = cultivationLogMapper;
+        this.cultivationStatsService = cultivationStatsService;
+        this.transactionTemplate = transactionTemplate;
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, queueCapacity));
+        this.overflowPolicy = OverflowPolicy.valueOf(overflowPolicy.trim().toUpperCase(Locale.ROOT));
+        this.blockTimeoutMillis = blockTimeoutMillis;
+        this.batchSize = Math.max(1, batchSize);
+        this.flushIntervalMillis = Math.max(1, flushIntervalMillis);
+        this.spillFile = Paths.get(spillFile);
+        this.quarantineFile = this.spillFile.resolveSibling(this.spillFile.getFileName() + ".quarantine");
+        this.replayMaxBackoffMillis = Math.max(this.flushIntervalMillis, replayMaxBackoffMillis);
+
+        this.writtenCounter = Counter.builder("xiuxian.cultivation-log.written")
+                .description("已写入数据库的修炼日志数")
+                .register(meterRegistry);
+        this.droppedCounter = Counter.builder("xiuxian.cultivation-log.dropped")
+                .description("队列已满被丢弃的修炼日志数")
+                .register(meterRegistry);
+        this.spilledCounter = Counter.builder("xiuxian.cultivation-log.spilled")
+                .description("写入溢出文件的修炼日志数")
+                .register(meterRegistry);
+        this.failedCounter = Counter.builder("xiuxian.cultivation-log.flush.failed")
+                .description("批量写入失败次数")
+                .register(meterRegistry);
+        this.quarantinedCounter = Counter.builder("xiuxian.cultivation-log.quarantined")
+                .description("违反约束无法写入、转存到隔离文件的修炼日志数")
+                .register(meterRegistry);
+        this.flushTimer = Timer.builder("xiuxian.cultivation-log.flush")
+                .description("单次批量写入耗时")
+                .register(meterRegistry);
+        meterRegistry.gaugeCollectionSize("xiuxian.cultivation-log.queue", Tags.empty(), queue);
+
+        this.writerThread = new Thread(this::run, "cultivation-log-writer");
+        this.writerThread.setDaemon(true);
+        this.writerThread.start();
+    }
+
+    /**
+     * 提交一条修炼日志：有事务时在提交后入队，回滚的业务不会留下日志
+     */
+    public void submit(CultivationLog cultivationLog) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    enqueue(cultivationLog);
+                }
+            });
+        } else {
+            enqueue(cultivationLog);
+        }
+    }
+
+    private void enqueue(CultivationLog cultivationLog) {
+        if (queue.offer(cultivationLog)) {
+            return;
+        }
+        switch (overflowPolicy) {
+            case BLOCK:
+                try {
+                    if (queue.offer(cultivationLog, blockTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                        return;
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                // 超时后不再阻塞业务线程，溢出到文件
+                spill(Collections.singletonList(cultivationLog));
+                break;
+            case DROP:
+                droppedCounter.increment();
+                log.warn("修炼日志队列已满，丢弃日志: 玩家ID={}", cultivationLog.getPlayerId());
+                break;
+            default:
+                spill(Collections.singletonList(cultivationLog));
+                break;
+        }
+    }
+
+    private void run() {
+        List<CultivationLog> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                CultivationLog first = queue.poll(flushIntervalMillis, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    // 队列空闲时补写溢出文件中的日志
+                    replaySpill();
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                write(batch);
+                batch.clear();
+            } catch (InterruptedException e) {
+                // 关闭时被中断，继续把队列写完
+            } catch (Exception e) {
+                log.error("修炼日志写入线程异常", e);
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * 一条多行INSERT写入一批日志，因数据库不可用等原因未写入的部分写入溢出文件等待补写
+     */
+    private void write(List<CultivationLog> batch) {
+        List<CultivationLog> remaining = insertIsolating(batch);
+        if (!remaining.isEmpty()) {
+            log.error("批量写入修炼日志失败，转存到溢出文件: {}条", remaining.size());
+            spill(remaining);
+        }
+    }
+
+    /**
+     * 写入一批日志；违反约束时把批次对半拆分重试，直到定位出单条写不进去的日志并隔离，其余日志照常写入
+     *
+     * @return 因非约束错误（数据库不可用等）未写入的日志，保持原顺序；全部写入或隔离时返回空列表
+     */
+    private List<CultivationLog> insertIsolating(List<CultivationLog> batch) {
+        Deque<List<CultivationLog>> pending = new ArrayDeque<>();
+        pending.push(batch);
+        while (!pending.isEmpty()) {
+            List<CultivationLog> part = pending.pop();
+            long start = System.nanoTime();
+            try {
+                insert(part);
+                writtenCounter.increment(part.size());
+            } catch (DataIntegrityViolationException e) {
+                if (part.size() == 1) {
+                    quarantine(part.get(0), e);
+                } else {
+                    int middle = part.size() / 2;
+                    pending.push(part.subList(middle, part.size()));
+                    pending.push(part.subList(0, middle));
+                }
+            } catch (Exception e) {
+                failedCounter.increment();
+                log.warn("写入修炼日志失败: {}", e.getMessage());
+                List<CultivationLog> remaining = new ArrayList<>(part);
+                for (List<CultivationLog> rest : pending) {
+                    remaining.addAll(rest);
+                }
+                return remaining;
+            } finally {
+                flushTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+        }
+        return Collections.emptyList();
+    }
+
+    /**
+     * 违反约束的日志追加到隔离文件（格式与溢出文件相同），不再自动重试，需人工处理
+     */
+    private void quarantine(CultivationLog cultivationLog, Exception cause) {
+        quarantinedCounter.increment();
+        log.error("修炼日志违反约束无法写入，已隔离: 玩家ID={}, 时间={}, 原因={}", cultivationLog.getPlayerId(),
+                cultivationLog.getCreatedAt(), cause.getMessage());
+        append(quarantineFile, Collections.singletonList(cultivationLog));
+    }
+
+    private void spill(List<CultivationLog> logs) {
+        if (append(spillFile, logs)) {
+            spilledCounter.increment(logs.size());
+        }
+    }
+
+    private boolean append(Path file, List<CultivationLog> logs) {
+        synchronized (spillLock) {
+            try {
+                Path parent = file.toAbsolutePath().getParent();
+                if (parent != null) {
+                    Files.createDirectories(parent);
+                }
+                try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file,
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND)))) {
+                    writeRecords(out, logs);
+                }
+                return true;
+            } catch (IOException e) {
+                droppedCounter.increment(logs.size());
+                log.error("写入修炼日志文件失败，丢弃{}条日志: {}", logs.size(), file, e);
+                return false;
+            }
+        }
+    }
+
+    /**
+     * 把溢出文件中的日志重新写入数据库：先改名，避免与新的溢出追加互相干扰
+     * 数据库不可用时保留未写入的部分，按指数退避稍后重试；违反约束的日志被隔离，不会卡住补写
+     */
+    private void replaySpill() {
+        long now = System.currentTimeMillis();
+        if (now < nextReplayAt) {
+            return;
+        }
+        Path replayFile = spillFile.resolveSibling(spillFile.getFileName() + ".replay");
+        try {
+            if (!Files.exists(replayFile)) {
+                synchronized (spillLock) {
+                    if (!Files.exists(spillFile)) {
+                        return;
+                    }
+                    Files.move(spillFile, replayFile);
+                }
+            }
+
+            List<CultivationLog> logs;
+            try {
+                logs = readRecords(replayFile);
+            } catch (IOException | RuntimeException e) {
+                // 文件损坏无法解析时移到一边，不让它挡住之后的溢出文件
+                Path corrupt = replayFile.resolveSibling(replayFile.getFileName() + ".corrupt." + now);
+                Files.move(replayFile, corrupt);
+                log.error("修炼日志补写文件无法解析，已移至: {}", corrupt, e);
+                return;
+            }
+
+            for (int from = 0; from < logs.size(); from += batchSize) {
+                int to = Math.min(from + batchSize, logs.size());
+                List<CultivationLog> remaining = insertIsolating(logs.subList(from, to));
+                if (!remaining.isEmpty()) {
+                    // 未写完的部分写回补写文件，退避后从这里继续
+                    remaining.addAll(logs.subList(to, logs.size()));
+                    rewriteReplayFile(replayFile, remaining);
+                    backOffReplay(now);
+                    return;
+                }
+                if (to < logs.size()) {
+                    rewriteReplayFile(replayFile, logs.subList(to, logs.size()));
+                }
+            }
+            Files.deleteIfExists(replayFile);
+            replayBackoffMillis = 0;
+            if (!logs.isEmpty()) {
+                log.info("已补写溢出的修炼日志: {}条", logs.size());
+            }
+        } catch (Exception e) {
+            failedCounter.increment();
+            log.warn("补写修炼日志溢出文件失败，稍后重试: {}", e.getMessage());
+            backOffReplay(now);
+        }
+    }
+
+    private void backOffReplay(long now) {
+        replayBackoffMillis = replayBackoffMillis == 0
+                ? flushIntervalMillis : Math.min(replayBackoffMillis * 2, replayMaxBackoffMillis);
+        nextReplayAt = now + replayBackoffMillis;
+        log.warn("修炼日志补写失败，{}ms后重试", replayBackoffMillis);
+    }
+
+    /**
+     * 日志和每日汇总的增量在同一事务中写入，汇总不会多算或漏算
+     */
+    private void insert(List<CultivationLog> batch) {
+        transactionTemplate.executeWithoutResult(status -> {
+            cultivationLogMapper.insertBatch(batch);
+            cultivationStatsService.record(batch);
+        });
+    }
+
+    private void rewriteReplayFile(Path replayFile, List<CultivationLog> remaining) throws IOException {
+        Path tmp = replayFile.resolveSibling(replayFile.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            writeRecords(out, remaining);
+        }
+        Files.move(tmp, replayFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void writeRecords(DataOutputStream out, List<CultivationLog> logs) throws IOException {
+        for (CultivationLog cultivationLog : logs) {
+            out.writeInt(cultivationLog.getPlayerId());
+            out.writeInt(cultivationLog.getCultivationTime() != null ? cultivationLog.getCultivationTime() : 0);
+            out.writeLong(cultivationLog.getExpGained() != null ? cultivationLog.getExpGained() : 0L);
+            out.writeInt(cultivationLog.getSpiritStonesGained() != null ? cultivationLog.getSpiritStonesGained() : 0);
+            out.writeInt(cultivationLog.getCultivationPointsGained() != null ? cultivationLog.getCultivationPointsGained() : 0);
+            out.writeLong(cultivationLog.getCultivationDuration() != null ? cultivationLog.getCultivationDuration() : 0L);
+            out.writeBoolean(Boolean.TRUE.equals(cultivationLog.getIsOffline()));
+            out.writeUTF(String.valueOf(cultivationLog.getCreatedAt() != null
+                    ? cultivationLog.getCreatedAt() : LocalDateTime.now()));
+        }
+    }
+
+    private static List<CultivationLog> readRecords(Path file) throws IOException {
+        List<CultivationLog> logs = new ArrayList<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            while (true) {
+                try {
+                    logs.add(CultivationLog.builder()
+                            .playerId(in.readInt())
+                            .cultivationTime(in.readInt())
+                            .expGained(in.readLong())
+                            .spiritStonesGained(in.readInt())
+                            .cultivationPointsGained(in.readInt())
+                            .cultivationDuration(in.readLong())
+                            .isOffline(in.readBoolean())
+                            .createdAt(LocalDateTime.parse(in.readUTF()))
+                            .build());
+                } catch (EOFException e) {
+                    break;
+                }
+            }
+        }
+        return logs;
+    }
+
+    /**
+     * 关闭时停止接收等待，把队列中剩余的日志全部写入
+     */
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        writerThread.interrupt();
+        try {
+            writerThread.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (!queue.isEmpty()) {
+            List<CultivationLog> remaining = new ArrayList<>();
+            queue.drainTo(remaining);
+            log.warn("关闭时修炼日志未写完，转存到溢出文件: {}条", remaining.size());
+            spill(remaining);
+        }
+    }
+}
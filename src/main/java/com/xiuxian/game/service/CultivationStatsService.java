@@ -0,0 +1,144 @@
+package com.xiuxian.game.service;
+
+import com.xiuxian.game.entity.CultivationDailyPlayerStat;
+import com.xiuxian.game.entity.CultivationDailyStat;
+import com.xiuxian.game.entity.CultivationLog;
+import com.xiuxian.game.mapper.CultivationDailyPlayerStatMapper;
+import com.xiuxian.game.mapper.CultivationDailyStatMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 修炼每日汇总（玩家维度和全服维度）
+ * 修炼日志写入时在同一事务中把这批日志的增量累加到汇总表，统计和反作弊查询只读汇总表，不再扫描cultivation_logs。
+ * 汇总可按天从日志重新计算：先删后插，重复执行结果相同，用于修正中断或人工改数造成的偏差。
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class CultivationStatsService {
+
+    private final CultivationDailyPlayerStatMapper playerStatMapper;
+    private final CultivationDailyStatMapper dailyStatMapper;
+    private final CultivationLogArchive cultivationLogArchive;
+    private final TransactionTemplate transactionTemplate;
+
+    /**
+     * 累加一批日志的增量，需在写入这批日志的事务中调用
+     */
+    public void record(List<CultivationLog> logs) {
+        record(logs, playerStatMapper, dailyStatMapper);
+    }
+
+    /**
+     * 使用指定会话的Mapper累加增量，供JDBC批量写入日志的调用方在同一会话中使用
+     */
+    public static void record(List<CultivationLog> logs,
+                              CultivationDailyPlayerStatMapper playerStatMapper,
+                              CultivationDailyStatMapper dailyStatMapper) {
+        if (logs.isEmpty()) {
+            return;
+        }
+        // 按(日期, 玩家)排序后写入，多个事务并发累加时加锁顺序一致，避免死锁
+        Map<LocalDate, Map<Integer, CultivationDailyPlayerStat>> byDate = new TreeMap<>();
+        for (CultivationLog cultivationLog : logs) {
+            LocalDate statDate = cultivationLog.getCreatedAt().toLocalDate();
+            CultivationDailyPlayerStat stat = byDate.computeIfAbsent(statDate, date -> new TreeMap<>())
+                    .computeIfAbsent(cultivationLog.getPlayerId(), playerId -> CultivationDailyPlayerStat.builder()
+                            .statDate(statDate)
+                            .playerId(playerId)
+                            .logCount(0)
+                            .offlineCount(0)
+                            .cultivationSeconds(0L)
+                            .expGained(0L)
+                            .spiritStonesGained(0L)
+                            .build());
+            stat.setLogCount(stat.getLogCount() + 1);
+            if (Boolean.TRUE.equals(cultivationLog.getIsOffline())) {
+                stat.setOfflineCount(stat.getOfflineCount() + 1);
+            }
+            stat.setCultivationSeconds(stat.getCultivationSeconds() + valueOf(cultivationLog.getCultivationDuration()));
+            stat.setExpGained(stat.getExpGained() + valueOf(cultivationLog.getExpGained()));
+            stat.setSpiritStonesGained(stat.getSpiritStonesGained() + valueOf(cultivationLog.getSpiritStonesGained()));
+        }
+
+        List<CultivationDailyPlayerStat> playerDeltas = new ArrayList<>();
+        List<CultivationDailyStat> dailyDeltas = new ArrayList<>(byDate.size());
+        for (Map.Entry<LocalDate, Map<Integer, CultivationDailyPlayerStat>> entry : byDate.entrySet()) {
+            CultivationDailyStat daily = CultivationDailyStat.builder()
+                    .statDate(entry.getKey())
+                    .logCount(0)
+                    .offlineCount(0)
+                    .cultivationSeconds(0L)
+                    .expGained(0L)
+                    .spiritStonesGained(0L)
+                    .build();
+            for (CultivationDailyPlayerStat stat : entry.getValue().values()) {
+                playerDeltas.add(stat);
+                daily.setLogCount(daily.getLogCount() + stat.getLogCount());
+                daily.setOfflineCount(daily.getOfflineCount() + stat.getOfflineCount());
+                daily.setCultivationSeconds(daily.getCultivationSeconds() + stat.getCultivationSeconds());
+                daily.setExpGained(daily.getExpGained() + stat.getExpGained());
+                daily.setSpiritStonesGained(daily.getSpiritStonesGained() + stat.getSpiritStonesGained());
+            }
+            dailyDeltas.add(daily);
+        }
+
+        playerStatMapper.accumulate(playerDeltas);
+        dailyStatMapper.accumulate(dailyDeltas);
+    }
+
+    /**
+     * 从cultivation_logs重新计算某一天的汇总，可重复执行
+     * 已归档的日期日志不在数据库中，不允许重算
+     */
+    public void reaggregate(LocalDate statDate) {
+        if (cultivationLogArchive.isArchived(statDate)) {
+            throw new IllegalArgumentException("该日期的修炼日志已归档，不能重新汇总: " + statDate);
+        }
+        LocalDateTime from = statDate.atStartOfDay();
+        // 删除和重算在同一事务中，失败时保留原有汇总
+        Integer players = transactionTemplate.execute(status -> {
+            playerStatMapper.deleteByDate(statDate);
+            int count = playerStatMapper.insertAggregatedFromLogs(statDate, from, from.plusDays(1));
+            dailyStatMapper.deleteByDate(statDate);
+            dailyStatMapper.insertAggregatedFromPlayerStats(statDate);
+            return count;
+        });
+        log.info("已重新汇总修炼数据: 日期={}, 玩家数={}", statDate, players);
+    }
+
+    /**
+     * 每天凌晨重算前一天的汇总，修正增量累加可能出现的偏差
+     */
+    @Scheduled(cron = "${app.game.cultivation-stats.reaggregate-cron:0 10 0 * * *}")
+    public void reaggregateYesterday() {
+        try {
+            reaggregate(LocalDate.now().minusDays(1));
+        } catch (Exception e) {
+            log.error("重新汇总前一天的修炼数据失败", e);
+        }
+    }
+
+    public List<CultivationDailyPlayerStat> getPlayerDailyStats(Integer playerId, LocalDate from, LocalDate to) {
+        return playerStatMapper.selectByPlayerBetween(playerId, from, to);
+    }
+
+    public List<CultivationDailyStat> getDailyStats(LocalDate from, LocalDate to) {
+        return dailyStatMapper.selectBetween(from, to);
+    }
+
+    private static long valueOf(Number value) {
+        return value != null ? value.longValue() : 0L;
+    }
+}
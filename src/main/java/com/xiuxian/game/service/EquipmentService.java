@@ -1,13 +1,14 @@
 package com.xiuxian.game.service;
 
+import com.xiuxian.game.aop.RetryOnConflict;
 import com.xiuxian.game.entity.Equipment;
 import com.xiuxian.game.entity.PlayerEquipment;
 import com.xiuxian.game.entity.PlayerProfile;
 import com.xiuxian.game.mapper.EquipmentMapper;
 import com.xiuxian.game.mapper.PlayerEquipmentMapper;
-import com.xiuxian.game.mapper.PlayerProfileMapper;
 import com.xiuxian.game.util.GameConstants;
 import lombok.RequiredArgsConstructor;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.stereotype.Service;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.transaction.annotation.Transactional;
@@ -22,14 +23,14 @@ public class EquipmentService {
 
     private final EquipmentMapper equipmentMapper;
     private final PlayerEquipmentMapper playerEquipmentMapper;
-    private final PlayerProfileMapper playerProfileMapper;
+    private final PlayerProfileCache playerProfileCache;
 
     public List<Equipment> getAllEquipments() {
         return equipmentMapper.selectList(null);
     }
 
     public List<Equipment> getAvailableEquipments(Integer playerId) {
-        PlayerProfile player = playerProfileMapper.selectById(playerId);
+        PlayerProfile player = playerProfileCache.get(playerId);
         if (player == null) {
             throw new IllegalArgumentException("玩家不存在");
         }
@@ -37,7 +38,7 @@ public class EquipmentService {
     }
 
     public List<PlayerEquipment> getPlayerEquipments(Integer playerId) {
-        PlayerProfile player = playerProfileMapper.selectById(playerId);
+        PlayerProfile player = playerProfileCache.get(playerId);
         if (player == null) {
             throw new IllegalArgumentException("玩家不存在");
         }
@@ -45,7 +46,7 @@ public class EquipmentService {
     }
 
     public List<PlayerEquipment> getEquippedItems(Integer playerId) {
-        PlayerProfile player = playerProfileMapper.selectById(playerId);
+        PlayerProfile player = playerProfileCache.get(playerId);
         if (player == null) {
             throw new IllegalArgumentException("玩家不存在");
         }
@@ -54,7 +55,7 @@ public class EquipmentService {
 
     @Transactional
     public PlayerEquipment acquireEquipment(Integer equipmentId, Integer playerId) {
-        PlayerProfile player = playerProfileMapper.selectById(playerId);
+        PlayerProfile player = playerProfileCache.get(playerId);
         if (player == null) {
             throw new IllegalArgumentException("玩家不存在");
         }
@@ -94,8 +95,9 @@ public class EquipmentService {
     }
 
     @Transactional
+    @RetryOnConflict
     public PlayerEquipment equipItem(Integer playerEquipmentId, String slot, Integer playerId) {
-        PlayerProfile player = playerProfileMapper.selectById(playerId);
+        PlayerProfile player = playerProfileCache.get(playerId);
         if (player == null) {
             throw new IllegalArgumentException("玩家不存在");
         }
@@ -122,7 +124,7 @@ public class EquipmentService {
             if (existingInSlot.getEquipped()) {
                 existingInSlot.setEquipped(false);
                 existingInSlot.setUpdatedAt(LocalDateTime.now());
-                playerEquipmentMapper.updateById(existingInSlot);
+                updatePlayerEquipment(existingInSlot);
                 // 移除旧装备的属性加成
                 Equipment oldEquipment = equipmentMapper.selectById(existingInSlot.getEquipmentId());
                 removeEquipmentBonuses(player, oldEquipment);
@@ -133,20 +135,21 @@ public class EquipmentService {
         playerEquipment.setEquipped(true);
         playerEquipment.setSlot(slot);
         playerEquipment.setUpdatedAt(LocalDateTime.now());
-        playerEquipmentMapper.updateById(playerEquipment);
+        updatePlayerEquipment(playerEquipment);
 
         // 添加新装备的属性加成
         addEquipmentBonuses(player, equipment);
 
         // 更新玩家属性
-        playerProfileMapper.updateById(player);
+        playerProfileCache.save(player);
 
         return playerEquipmentMapper.selectById(playerEquipmentId);
     }
 
     @Transactional
+    @RetryOnConflict
     public PlayerEquipment unequipItem(Integer playerEquipmentId, Integer playerId) {
-        PlayerProfile player = playerProfileMapper.selectById(playerId);
+        PlayerProfile player = playerProfileCache.get(playerId);
         if (player == null) {
             throw new IllegalArgumentException("玩家不存在");
         }
@@ -169,17 +172,18 @@ public class EquipmentService {
         playerEquipment.setEquipped(false);
         playerEquipment.setSlot("");
         playerEquipment.setUpdatedAt(LocalDateTime.now());
-        playerEquipmentMapper.updateById(playerEquipment);
+        updatePlayerEquipment(playerEquipment);
 
         // 更新玩家属性
-        playerProfileMapper.updateById(player);
+        playerProfileCache.save(player);
 
         return playerEquipmentMapper.selectById(playerEquipmentId);
     }
 
     @Transactional
+    @RetryOnConflict
     public PlayerEquipment repairEquipment(Integer playerEquipmentId, Integer playerId) {
-        PlayerProfile player = playerProfileMapper.selectById(playerId);
+        PlayerProfile player = playerProfileCache.get(playerId);
         if (player == null) {
             throw new IllegalArgumentException("玩家不存在");
         }
@@ -195,7 +199,7 @@ public class EquipmentService {
 
         playerEquipment.setDurability(playerEquipment.getMaxDurability());
         playerEquipment.setUpdatedAt(LocalDateTime.now());
-        playerEquipmentMapper.updateById(playerEquipment);
+        updatePlayerEquipment(playerEquipment);
         return playerEquipmentMapper.selectById(playerEquipmentId);
     }
 
@@ -221,6 +225,15 @@ public class EquipmentService {
         player.setEquipmentSpeedBonus(player.getEquipmentSpeedBonus() - equipment.getSpeedBonus());
     }
 
+    /**
+     * 带版本号更新玩家装备，版本冲突时抛出异常由@RetryOnConflict重试
+     */
+    private void updatePlayerEquipment(PlayerEquipment playerEquipment) {
+        if (playerEquipmentMapper.updateById(playerEquipment) == 0) {
+            throw new OptimisticLockingFailureException("玩家装备已被修改: ID=" + playerEquipment.getId());
+        }
+    }
+
     /**
      * 初始化默认装备
      */
@@ -1,13 +1,15 @@
 package com.xiuxian.game.service;
 
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.xiuxian.game.aop.RetryOnConflict;
 import com.xiuxian.game.entity.Item;
 import com.xiuxian.game.entity.PlayerItem;
 import com.xiuxian.game.entity.PlayerProfile;
 import com.xiuxian.game.dto.response.PlayerItemResponse;
 import com.xiuxian.game.mapper.ItemMapper;
 import com.xiuxian.game.mapper.PlayerItemMapper;
-import com.xiuxian.game.mapper.PlayerProfileMapper;
 import lombok.RequiredArgsConstructor;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.stereotype.Service;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.transaction.annotation.Transactional;
@@ -23,10 +25,11 @@ public class InventoryService {
 
     private final ItemMapper itemMapper;
     private final PlayerItemMapper playerItemMapper;
-    private final PlayerProfileMapper playerProfileMapper;
+    private final PlayerProfileCache playerProfileCache;
+    private final PlayerStatePublisher playerStatePublisher;
 
     public List<PlayerItemResponse> getPlayerInventory(Integer playerId, String type, String search, String sortBy, String order) {
-        PlayerProfile player = playerProfileMapper.selectById(playerId);
+        PlayerProfile player = playerProfileCache.get(playerId);
         if (player == null) {
             throw new IllegalArgumentException("玩家不存在");
         }
@@ -76,8 +79,9 @@ public class InventoryService {
     }
 
     @Transactional
+    @RetryOnConflict
     public PlayerItemResponse addItemToInventory(Integer playerId, Integer itemId, Integer quantity) {
-        PlayerProfile player = playerProfileMapper.selectById(playerId);
+        PlayerProfile player = playerProfileCache.get(playerId);
         if (player == null) {
             throw new IllegalArgumentException("玩家不存在");
         }
@@ -95,7 +99,7 @@ public class InventoryService {
             if (item.getStackable()) {
                 existingItem.setQuantity(existingItem.getQuantity() + quantity);
                 existingItem.setUpdatedAt(LocalDateTime.now());
-                playerItemMapper.updateById(existingItem);
+                updatePlayerItem(existingItem);
                 return convertToResponse(existingItem);
             }
         }
@@ -110,13 +114,15 @@ public class InventoryService {
                 .build();
 
         playerItemMapper.insert(newPlayerItem);
+        playerStatePublisher.inventoryChanged(newPlayerItem);
         PlayerItem savedItem = playerItemMapper.selectById(newPlayerItem.getId());
         return convertToResponse(savedItem);
     }
 
     @Transactional
+    @RetryOnConflict
     public PlayerItemResponse removeItemFromInventory(Integer playerId, Integer itemId, Integer quantity) {
-        PlayerProfile player = playerProfileMapper.selectById(playerId);
+        PlayerProfile player = playerProfileCache.get(playerId);
         if (player == null) {
             throw new IllegalArgumentException("玩家不存在");
         }
@@ -134,17 +140,18 @@ public class InventoryService {
         playerItem.setUpdatedAt(LocalDateTime.now());
 
         if (playerItem.getQuantity() <= 0) {
-            playerItemMapper.deleteById(playerItem.getId());
+            deletePlayerItem(playerItem);
             return null;
         } else {
-            playerItemMapper.updateById(playerItem);
+            updatePlayerItem(playerItem);
             return convertToResponse(playerItem);
         }
     }
 
     @Transactional
+    @RetryOnConflict
     public PlayerItemResponse useItem(Integer playerId, Integer itemId) {
-        PlayerProfile player = playerProfileMapper.selectById(playerId);
+        PlayerProfile player = playerProfileCache.get(playerId);
         if (player == null) {
             throw new IllegalArgumentException("玩家不存在");
         }
@@ -172,6 +179,7 @@ public class InventoryService {
 
     // Controller调用的重载方法
     @Transactional
+    @RetryOnConflict
     public Map<String, Object> useItem(Integer playerItemId, Integer quantity, Integer playerId) {
         // 根据playerItemId获取itemId
         PlayerItem playerItem = playerItemMapper.selectById(playerItemId);
@@ -188,7 +196,7 @@ public class InventoryService {
             throw new IllegalArgumentException("该物品不可使用");
         }
 
-        PlayerProfile player = playerProfileMapper.selectById(playerId);
+        PlayerProfile player = playerProfileCache.get(playerId);
         
         // 使用指定数量的物品
         for (int i = 0; i < quantity; i++) {
@@ -198,10 +206,10 @@ public class InventoryService {
         // 减少物品数量
         playerItem.setQuantity(playerItem.getQuantity() - quantity);
         if (playerItem.getQuantity() <= 0) {
-            playerItemMapper.deleteById(playerItem.getId());
+            deletePlayerItem(playerItem);
         } else {
             playerItem.setUpdatedAt(LocalDateTime.now());
-            playerItemMapper.updateById(playerItem);
+            updatePlayerItem(playerItem);
         }
 
         Map<String, Object> result = new HashMap<>();
@@ -212,12 +220,8 @@ public class InventoryService {
 
     // 出售物品
     @Transactional
+    @RetryOnConflict
     public void sellItem(Integer playerId, Integer playerItemId, Integer quantity) {
-        PlayerProfile player = playerProfileMapper.selectById(playerId);
-        if (player == null) {
-            throw new IllegalArgumentException("玩家不存在");
-        }
-
         PlayerItem playerItem = playerItemMapper.selectById(playerItemId);
         if (playerItem == null) {
             throw new IllegalArgumentException("物品不存在");
@@ -239,24 +243,43 @@ public class InventoryService {
         // 计算出售价格（通常是购买价格的50%）
         long sellPrice = (item.getPrice() * quantity) / 2;
         
-        // 增加玩家灵石
-        player.setSpiritStones(player.getSpiritStones() + sellPrice);
-        playerProfileMapper.updateById(player);
+        // 原子增加玩家灵石
+        playerProfileCache.credit(playerId, 0L, sellPrice, 0L);
 
         // 减少物品数量
         playerItem.setQuantity(playerItem.getQuantity() - quantity);
         if (playerItem.getQuantity() <= 0) {
-            playerItemMapper.deleteById(playerItem.getId());
+            deletePlayerItem(playerItem);
         } else {
             playerItem.setUpdatedAt(LocalDateTime.now());
-            playerItemMapper.updateById(playerItem);
+            updatePlayerItem(playerItem);
+        }
+    }
+
+    /**
+     * 带版本号更新背包物品，版本冲突时抛出异常由@RetryOnConflict重试
+     */
+    private void updatePlayerItem(PlayerItem playerItem) {
+        if (playerItemMapper.updateById(playerItem) == 0) {
+            throw new OptimisticLockingFailureException("背包物品已被修改: ID=" + playerItem.getId());
+        }
+        playerStatePublisher.inventoryChanged(playerItem);
+    }
+
+    private void deletePlayerItem(PlayerItem playerItem) {
+        int deleted = playerItemMapper.delete(new QueryWrapper<PlayerItem>()
+                .eq("id", playerItem.getId())
+                .eq("version", playerItem.getVersion()));
+        if (deleted == 0) {
+            throw new OptimisticLockingFailureException("背包物品已被修改: ID=" + playerItem.getId());
         }
+        playerStatePublisher.inventoryChanged(playerItem);
     }
 
     private void applyItemEffect(PlayerProfile player, Item item) {
         // 简化的物品效果应用
         // 实际应该根据item.effect来处理
-        playerProfileMapper.updateById(player);
+        playerProfileCache.save(player);
     }
 
     private Comparator<PlayerItem> getSortComparator(String sortBy) {
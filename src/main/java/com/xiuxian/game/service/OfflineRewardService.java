@@ -1,5 +1,6 @@
 package com.xiuxian.game.service;
 
+import com.xiuxian.game.dto.response.CultivationLogPageResponse;
 import com.xiuxian.game.dto.response.OfflineRewardResponse;
 import com.xiuxian.game.entity.CultivationLog;
 import com.xiuxian.game.entity.PlayerProfile;
@@ -7,14 +8,27 @@ import com.xiuxian.game.mapper.CultivationLogMapper;
 import com.xiuxian.game.mapper.PlayerProfileMapper;
 import com.xiuxian.game.util.GameCalculator;
 import com.xiuxian.game.util.GameConstants;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
 import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Base64;
 import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 @Service
 @ConditionalOnProperty(value = "app.features.offline.enabled", havingValue = "true")
@@ -22,24 +36,90 @@ import java.util.List;
 public class OfflineRewardService {
 
     private final PlayerService playerService;
+    private final PlayerProfileCache playerProfileCache;
     private final PlayerProfileMapper playerProfileMapper;
     private final CultivationLogMapper cultivationLogMapper;
+    private final CultivationLogWriter cultivationLogWriter;
+    private final CultivationLogArchive cultivationLogArchive;
     private final GameCalculator gameCalculator;
 
+    @Value("${app.game.offline-reward.preview-ttl-ms:5000}")
+    private long previewTtlMillis;
+
+    // 离线收益预览按玩家缓存，只在档案的最后在线时间与计算时相同的情况下有效，过期或领取后清除
+    private final ConcurrentMap<Integer, MemoizedPreview> previews = new ConcurrentHashMap<>();
+
     @Transactional
     public OfflineRewardResponse calculateAndClaimOfflineRewards() {
         PlayerProfile player = playerService.getCurrentPlayerProfile();
-        LocalDateTime now = LocalDateTime.now();
         LocalDateTime lastOnlineTime = player.getLastOnlineTime();
-        
-        // 计算离线时间（秒）
-        long offlineSeconds = Duration.between(lastOnlineTime, now).getSeconds();
-        
-        // 限制最大离线时间为24小时
-        offlineSeconds = Math.min(offlineSeconds, GameConstants.MAX_OFFLINE_TIME_SECONDS);
-        
-        // 检查是否满足最小离线时间要求
-        if (offlineSeconds < GameConstants.MIN_OFFLINE_TIME_FOR_REWARD) {
+        // 与数据库的DATETIME精度一致，下次按最后在线时间做条件更新时才能匹配
+        LocalDateTime now = LocalDateTime.now().truncatedTo(ChronoUnit.SECONDS);
+
+        OfflineGain gain = applyOfflineGain(player, now);
+        if (gain == null) {
+            return toResponse(null);
+        }
+
+        // 日志先于写库生成，收益超出日志列范围时整次领取被拒绝
+        CultivationLog cultivationLog = buildLog(player.getId(), gain, LocalDateTime.now());
+
+        // 先在数据库中抢占这段离线时间（行锁持有到事务结束），批量结算已先结算时不再发放
+        if (playerProfileMapper.claimOfflineTime(player.getId(), lastOnlineTime, now) != 1) {
+            throw new IllegalArgumentException("离线收益已结算，请刷新后重试");
+        }
+        playerProfileCache.save(player);
+
+        // 修炼日志在事务提交后异步批量写入
+        cultivationLogWriter.submit(cultivationLog);
+
+        // 提交后清除预览释放内存；提交前后并发写入的预览因最后在线时间已变化不会再被使用
+        Integer playerId = player.getId();
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                previews.remove(playerId);
+            }
+        });
+
+        // 返回离线收益信息
+        return toResponse(gain);
+    }
+
+    /**
+     * 预览当前可领取的离线收益：在档案副本上计算，不修改档案、不写库
+     * 结果按玩家和最后在线时间缓存一小段时间，页面重复渲染时不再重复计算；领取或结算后最后在线时间变化，旧结果随之失效
+     */
+    public OfflineRewardResponse previewOfflineRewards() {
+        Integer playerId = playerService.getCurrentPlayerId();
+        PlayerProfile player = playerProfileCache.get(playerId);
+        if (player == null) {
+            throw new IllegalArgumentException("玩家不存在");
+        }
+        LocalDateTime lastOnlineTime = player.getLastOnlineTime();
+        long now = System.currentTimeMillis();
+        MemoizedPreview memoized = previews.get(playerId);
+        if (memoized != null && memoized.expiresAt > now && Objects.equals(memoized.lastOnlineTime, lastOnlineTime)) {
+            return memoized.response;
+        }
+
+        OfflineGain gain = applyOfflineGain(player.toBuilder().build(), LocalDateTime.now());
+        OfflineRewardResponse response = toResponse(gain);
+        previews.put(playerId, new MemoizedPreview(response, lastOnlineTime, now + previewTtlMillis));
+        return response;
+    }
+
+    /**
+     * 定期清理过期的预览，玩家离开后不再占用内存
+     */
+    @Scheduled(fixedDelayString = "${app.game.offline-reward.preview-ttl-ms:5000}")
+    public void evictExpiredPreviews() {
+        long now = System.currentTimeMillis();
+        previews.values().removeIf(memoized -> memoized.expiresAt <= now);
+    }
+
+    private static OfflineRewardResponse toResponse(OfflineGain gain) {
+        if (gain == null) {
             return OfflineRewardResponse.builder()
                     .offlineMinutes(0)
                     .expGained(0L)
@@ -47,6 +127,34 @@ public class OfflineRewardService {
                     .cultivationPointsGained(0L)
                     .build();
         }
+        return OfflineRewardResponse.builder()
+                .offlineMinutes(gain.getOfflineSeconds() / 60)
+                .expGained(gain.getExpGained())
+                .spiritStonesGained(gain.getSpiritStonesGained())
+                .cultivationPointsGained(gain.getCultivationPointsGained())
+                .build();
+    }
+
+    /**
+     * 按离线时长计算收益并应用到传入的档案（经验、灵石、修炼点、修炼时长、在线时间和升级），不写库
+     * 单个玩家领取和批量结算共用
+     *
+     * @return 本次收益；离线时间不足时返回null，档案保持不变
+     */
+    public OfflineGain applyOfflineGain(PlayerProfile player, LocalDateTime now) {
+        LocalDateTime lastOnlineTime = player.getLastOnlineTime();
+        if (lastOnlineTime == null) {
+            return null;
+        }
+
+        // 计算离线时间（秒），限制最大离线时间为24小时
+        long offlineSeconds = Duration.between(lastOnlineTime, now).getSeconds();
+        offlineSeconds = Math.min(offlineSeconds, GameConstants.MAX_OFFLINE_TIME_SECONDS);
+        
+        // 检查是否满足最小离线时间要求
+        if (offlineSeconds < GameConstants.MIN_OFFLINE_TIME_FOR_REWARD) {
+            return null;
+        }
         
         // 使用GameCalculator计算离线收益
         long expGained = gameCalculator.calculateOfflineRewards(player, offlineSeconds);
@@ -62,31 +170,107 @@ public class OfflineRewardService {
         
         // 检查升级
         gameCalculator.checkLevelUp(player);
-        
-        playerProfileMapper.updateById(player);
-        
-        // 记录修炼日志
-        CultivationLog log = CultivationLog.builder()
-                .playerId(player.getId())
-                .expGained(expGained)
-                .spiritStonesGained((int)spiritStonesGained)
-                .cultivationDuration(offlineSeconds)
+
+        return new OfflineGain(offlineSeconds, expGained, spiritStonesGained, cultivationPointsGained);
+    }
+
+    /**
+     * 生成离线收益的修炼日志
+     *
+     * @throws IllegalArgumentException 时长或收益超出日志表int列的范围；整条拒绝，不截断后再计入每日汇总
+     */
+    public CultivationLog buildLog(Integer playerId, OfflineGain gain, LocalDateTime createdAt) {
+        return CultivationLog.builder()
+                .playerId(playerId)
+                .cultivationTime(toLogColumn(gain.getOfflineSeconds(), "修炼时长"))
+                .expGained(gain.getExpGained())
+                .spiritStonesGained(toLogColumn(gain.getSpiritStonesGained(), "灵石收益"))
+                .cultivationPointsGained(toLogColumn(gain.getCultivationPointsGained(), "修炼点收益"))
+                .cultivationDuration(gain.getOfflineSeconds())
                 .isOffline(true)
-                .createdAt(LocalDateTime.now())
+                .createdAt(createdAt)
                 .build();
-        cultivationLogMapper.insert(log);
-        
-        // 返回离线收益信息
-        return OfflineRewardResponse.builder()
-                .offlineMinutes(offlineSeconds / 60)
-                .expGained(expGained)
-                .spiritStonesGained(spiritStonesGained)
-                .cultivationPointsGained(cultivationPointsGained)
+    }
+
+    private static int toLogColumn(long value, String name) {
+        try {
+            return Math.toIntExact(value);
+        } catch (ArithmeticException e) {
+            throw new IllegalArgumentException("修炼日志" + name + "超出范围: " + value, e);
+        }
+    }
+
+    /**
+     * 游标分页查询当前玩家的修炼日志，从新到旧
+     *
+     * @param cursor 上一页返回的游标，为空时查询第一页
+     * @param limit  每页条数，超出范围时截断到[1, MAX_CULTIVATION_LOG_PAGE_SIZE]
+     */
+    public CultivationLogPageResponse getCultivationLogs(String cursor, int limit) {
+        Integer playerId = playerService.getCurrentPlayerId();
+        int pageSize = Math.max(1, Math.min(limit, GameConstants.MAX_CULTIVATION_LOG_PAGE_SIZE));
+
+        LocalDateTime cursorCreatedAt = null;
+        Integer cursorId = null;
+        if (cursor != null && !cursor.isEmpty()) {
+            // 游标格式: base64url("created_at|id")
+            try {
+                String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+                int separator = raw.indexOf('|');
+                cursorCreatedAt = LocalDateTime.parse(raw.substring(0, separator));
+                cursorId = Integer.valueOf(raw.substring(separator + 1));
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("无效的分页游标");
+            }
+        }
+
+        // 多取一条判断是否还有下一页
+        List<CultivationLog> logs = new ArrayList<>(
+                cultivationLogMapper.selectPageByPlayerId(playerId, cursorCreatedAt, cursorId, pageSize + 1));
+        if (logs.size() <= pageSize) {
+            // 数据库中已没有更早的日志，从冷数据归档继续读取
+            CultivationLog last = logs.isEmpty() ? null : logs.get(logs.size() - 1);
+            logs.addAll(cultivationLogArchive.readPage(playerId,
+                    last != null ? last.getCreatedAt() : cursorCreatedAt,
+                    last != null ? last.getId() : cursorId,
+                    pageSize + 1 - logs.size()));
+        }
+        String nextCursor = null;
+        if (logs.size() > pageSize) {
+            logs = logs.subList(0, pageSize);
+            CultivationLog last = logs.get(pageSize - 1);
+            nextCursor = encodeCursor(last.getCreatedAt(), last.getId());
+        }
+        return CultivationLogPageResponse.builder()
+                .logs(logs)
+                .nextCursor(nextCursor)
                 .build();
     }
 
-    public List<CultivationLog> getCultivationLogs() {
-        PlayerProfile player = playerService.getCurrentPlayerProfile();
-        return cultivationLogMapper.selectByPlayerId(player.getId(), 100);
+    private static String encodeCursor(LocalDateTime createdAt, Integer id) {
+        String raw = createdAt + "|" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+
+    private static final class MemoizedPreview {
+        private final OfflineRewardResponse response;
+        private final LocalDateTime lastOnlineTime;
+        private final long expiresAt;
+
+        MemoizedPreview(OfflineRewardResponse response, LocalDateTime lastOnlineTime, long expiresAt) {
+            this.response = response;
+            this.lastOnlineTime = lastOnlineTime;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class OfflineGain {
+        private final long offlineSeconds;
+        private final long expGained;
+        private final long spiritStonesGained;
+        private final long cultivationPointsGained;
     }
 }
@@ -0,0 +1,316 @@
+package com.xiuxian.game.service;
+
+import com.xiuxian.game.entity.CultivationLog;
+import com.xiuxian.game.entity.PlayerProfile;
+import com.xiuxian.game.mapper.CultivationDailyPlayerStatMapper;
+import com.xiuxian.game.mapper.CultivationDailyStatMapper;
+import com.xiuxian.game.mapper.CultivationLogMapper;
+import com.xiuxian.game.mapper.PlayerProfileMapper;
+import com.xiuxian.game.mapper.PlayerProfileSqlProvider;
+import com.xiuxian.game.service.OfflineRewardService.OfflineGain;
+import com.xiuxian.game.util.GameConstants;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.ibatis.executor.BatchResult;
+import org.apache.ibatis.session.ExecutorType;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+/**
+ * 全服离线收益批量结算
+ * 按主键分块扫描离线玩家，多核并行计算收益，档案更新和修炼日志以JDBC批量写入，每块一个事务；
+ * 每块提交后把进度写入检查点文件，中断后重启会从检查点继续。
+ * 整轮结算使用同一个结算时间，已结算玩家的最后在线时间等于结算时间而不再满足筛选条件，因此重复执行同一块也不会重复发放。
+ * 正在缓存中的活跃玩家由其自身请求结算，这里跳过；筛选之后才加载并领取的玩家，由双方都以
+ * “最后在线时间仍为读取时的值”为条件更新数据库来裁决，先提交的一方生效，另一方不发放。
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(value = "app.features.offline.enabled", havingValue = "true")
+public class OfflineSettlementService {
+
+    private final PlayerProfileMapper playerProfileMapper;
+    private final SqlSessionFactory sqlSessionFactory;
+    private final PlayerProfileCache playerProfileCache;
+    private final OfflineRewardService offlineRewardService;
+
+    private final int chunkSize;
+    private final Path checkpointFile;
+    private final boolean runOnStartup;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    public OfflineSettlementService(PlayerProfileMapper playerProfileMapper,
+                                    SqlSessionFactory sqlSessionFactory,
+                                    PlayerProfileCache playerProfileCache,
+                                    OfflineRewardService offlineRewardService,
+                                    @Value("${app.game.offline-settlement.chunk-size:500}") int chunkSize,
+                                    @Value("${app.game.offline-settlement.checkpoint-file:data/offline-settlement.checkpoint}") String checkpointFile,
+                                    @Value("${app.game.offline-settlement.run-on-startup:false}") boolean runOnStartup) {
+        this.playerProfileMapper = playerProfileMapper;
+        this.sqlSessionFactory = sqlSessionFactory;
+        this.playerProfileCache = playerProfileCache;
+        this.offlineRewardService = offlineRewardService;
+        this.chunkSize = Math.max(1, chunkSize);
+        this.checkpointFile = Paths.get(checkpointFile);
+        this.runOnStartup = runOnStartup;
+    }
+
+    /**
+     * 启动完成后：存在未完成的检查点时继续上一轮结算，或按配置在维护重启后发起新一轮结算
+     * 在后台线程中执行，不阻塞启动
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        if (!runOnStartup && !Files.exists(checkpointFile)) {
+            return;
+        }
+        Thread thread = new Thread(() -> {
+            try {
+                settleAll();
+            } catch (Exception e) {
+                log.error("离线收益批量结算失败", e);
+            }
+        }, "offline-settlement");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * 结算所有满足条件的离线玩家，存在检查点时从检查点继续
+     *
+     * @return 本次结算的玩家数
+     */
+    public int settleAll() {
+        if (!running.compareAndSet(false, true)) {
+            throw new IllegalStateException("离线收益批量结算正在进行");
+        }
+        try {
+            Checkpoint checkpoint = readCheckpoint();
+            if (checkpoint == null) {
+                checkpoint = new Checkpoint(LocalDateTime.now().truncatedTo(ChronoUnit.SECONDS), 0);
+                writeCheckpoint(checkpoint);
+                log.info("开始离线收益批量结算: 结算时间={}", checkpoint.settledAt);
+            } else {
+                log.info("从检查点继续离线收益批量结算: 结算时间={}, 已处理至ID={}", checkpoint.settledAt, checkpoint.lastId);
+            }
+
+            LocalDateTime cutoff = checkpoint.settledAt.minusSeconds(GameConstants.MIN_OFFLINE_TIME_FOR_REWARD);
+            int lastId = checkpoint.lastId;
+            int settledPlayers = 0;
+            long start = System.currentTimeMillis();
+
+            while (true) {
+                List<PlayerProfile> chunk = playerProfileMapper.selectOfflineAfterId(lastId, cutoff, chunkSize);
+                if (chunk.isEmpty()) {
+                    break;
+                }
+                lastId = chunk.get(chunk.size() - 1).getId();
+
+                settledPlayers += settleChunk(chunk, checkpoint.settledAt);
+                writeCheckpoint(new Checkpoint(checkpoint.settledAt, lastId));
+            }
+
+            deleteCheckpoint();
+            log.info("离线收益批量结算完成: 结算玩家{}个, 耗时{}ms", settledPlayers, System.currentTimeMillis() - start);
+            return settledPlayers;
+        } finally {
+            running.set(false);
+        }
+    }
+
+    private int settleChunk(List<PlayerProfile> chunk, LocalDateTime settledAt) {
+        // 收益计算只涉及内存中的档案副本，按核数并行
+        List<Settlement> settlements = chunk.parallelStream()
+                .filter(profile -> !playerProfileCache.isCached(profile.getId()))
+                .map(profile -> settle(profile, settledAt))
+                .filter(Objects::nonNull)
+                .sorted(Comparator.comparingLong(settlement -> settlement.columns))
+                .collect(Collectors.toList());
+        if (settlements.isEmpty()) {
+            return 0;
+        }
+
+        Set<Integer> conflicts = new HashSet<>();
+        try (SqlSession session = sqlSessionFactory.openSession(ExecutorType.BATCH, false)) {
+            PlayerProfileMapper mapper = session.getMapper(PlayerProfileMapper.class);
+            // 先抢占离线时间：玩家自己已领取（最后在线时间已变）的跳过
+            for (Settlement settlement : settlements) {
+                mapper.claimOfflineTime(settlement.profile.getId(), settlement.lastOnlineTime, settledAt);
+            }
+            collectConflicts(session.flushStatements(), "id", conflicts);
+
+            // 相同列组合相邻排列，合并为同一个JDBC批次
+            for (Settlement settlement : settlements) {
+                if (!conflicts.contains(settlement.profile.getId())) {
+                    mapper.updateColumns(settlement.profile, settlement.columns, settlement.rowVersion);
+                }
+            }
+            Set<Integer> versionConflicts = new HashSet<>();
+            collectConflicts(session.flushStatements(), "profile", versionConflicts);
+            if (!versionConflicts.isEmpty()) {
+                // 读取后档案被其他写入方修改过，本次不结算，恢复已抢占的最后在线时间（行锁仍由本事务持有）
+                for (Settlement settlement : settlements) {
+                    if (versionConflicts.contains(settlement.profile.getId())) {
+                        mapper.claimOfflineTime(settlement.profile.getId(), settledAt, settlement.lastOnlineTime);
+                    }
+                }
+                session.flushStatements();
+                conflicts.addAll(versionConflicts);
+            }
+
+            // 只为实际更新成功的玩家记录修炼日志，并在同一事务中累加每日汇总
+            CultivationLogMapper logMapper = session.getMapper(CultivationLogMapper.class);
+            List<CultivationLog> logs = new ArrayList<>(settlements.size());
+            for (Settlement settlement : settlements) {
+                if (!conflicts.contains(settlement.profile.getId())) {
+                    logMapper.insert(settlement.cultivationLog);
+                    logs.add(settlement.cultivationLog);
+                }
+            }
+            CultivationStatsService.record(logs,
+                    session.getMapper(CultivationDailyPlayerStatMapper.class),
+                    session.getMapper(CultivationDailyStatMapper.class));
+            session.flushStatements();
+            session.commit();
+        }
+
+        // 结算期间被加载进缓存的玩家以数据库最新行为准
+        List<Integer> settledIds = new ArrayList<>(settlements.size());
+        for (Settlement settlement : settlements) {
+            settledIds.add(settlement.profile.getId());
+        }
+        playerProfileCache.refresh(settledIds);
+
+        if (!conflicts.isEmpty()) {
+            log.info("离线结算跳过{}个并发修改的玩家", conflicts.size());
+        }
+        return settlements.size() - conflicts.size();
+    }
+
+    /**
+     * 把批量结果中更新0行的玩家ID加入conflicts，参数为ID本身或档案对象
+     */
+    private static void collectConflicts(List<BatchResult> results, String parameter, Set<Integer> conflicts) {
+        for (BatchResult result : results) {
+            int[] counts = result.getUpdateCounts();
+            List<Object> parameters = result.getParameterObjects();
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] == 0) {
+                    Object value = ((Map<?, ?>) parameters.get(i)).get(parameter);
+                    conflicts.add(value instanceof PlayerProfile ? ((PlayerProfile) value).getId() : (Integer) value);
+                }
+            }
+        }
+    }
+
+    private Settlement settle(PlayerProfile original, LocalDateTime settledAt) {
+        PlayerProfile profile = original.toBuilder().build();
+        OfflineGain gain = offlineRewardService.applyOfflineGain(profile, settledAt);
+        if (gain == null) {
+            return null;
+        }
+        // 日志在写库前生成：收益超出日志列范围的玩家本次不结算，不影响同批其他玩家
+        CultivationLog cultivationLog;
+        try {
+            cultivationLog = offlineRewardService.buildLog(profile.getId(), gain, settledAt);
+        } catch (IllegalArgumentException e) {
+            log.warn("跳过离线收益结算: ID={}, {}", profile.getId(), e.getMessage());
+            return null;
+        }
+        profile.setUpdatedAt(settledAt);
+        int rowVersion = original.getVersion() != null ? original.getVersion() : 0;
+        return new Settlement(profile, cultivationLog, original.getLastOnlineTime(), rowVersion,
+                PlayerProfileSqlProvider.diff(original, profile));
+    }
+
+    private Checkpoint readCheckpoint() {
+        if (!Files.exists(checkpointFile)) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(checkpointFile)))) {
+            return new Checkpoint(LocalDateTime.parse(in.readUTF()), in.readInt());
+        } catch (IOException | RuntimeException e) {
+            log.warn("读取离线结算检查点失败，重新开始结算: {}", checkpointFile, e);
+            return null;
+        }
+    }
+
+    private void writeCheckpoint(Checkpoint checkpoint) {
+        Path tmp = checkpointFile.resolveSibling(checkpointFile.getFileName() + ".tmp");
+        try {
+            Path parent = checkpointFile.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeUTF(checkpoint.settledAt.toString());
+                out.writeInt(checkpoint.lastId);
+            }
+            Files.move(tmp, checkpointFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // 检查点只用于断点续跑，写入失败不影响结算的正确性
+            log.warn("写入离线结算检查点失败: {}", checkpointFile, e);
+        }
+    }
+
+    private void deleteCheckpoint() {
+        try {
+            Files.deleteIfExists(checkpointFile);
+        } catch (IOException e) {
+            log.warn("删除离线结算检查点失败: {}", checkpointFile, e);
+        }
+    }
+
+    private static final class Checkpoint {
+        private final LocalDateTime settledAt;
+        private final int lastId;
+
+        Checkpoint(LocalDateTime settledAt, int lastId) {
+            this.settledAt = settledAt;
+            this.lastId = lastId;
+        }
+    }
+
+    private static final class Settlement {
+        private final PlayerProfile profile;
+        private final CultivationLog cultivationLog;
+        private final LocalDateTime lastOnlineTime;
+        private final int rowVersion;
+        private final long columns;
+
+        Settlement(PlayerProfile profile, CultivationLog cultivationLog, LocalDateTime lastOnlineTime, int rowVersion,
+                   long columns) {
+            this.profile = profile;
+            this.cultivationLog = cultivationLog;
+            this.lastOnlineTime = lastOnlineTime;
+            this.rowVersion = rowVersion;
+            this.columns = columns;
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.xiuxian.game.service;
+
+import com.xiuxian.game.entity.PlayerProfile;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+
+import java.util.function.Supplier;
+
+/**
+ * 请求级玩家上下文（Identity Map）
+ * 同一请求内首次访问时加载当前玩家档案，后续服务调用共享同一实例。
+ * 共享范围同时限定在加载时所在的事务内：事务外读取的实例不会带入之后的事务，
+ * 一个事务读取的实例也不会在该事务结束后继续使用，跨出范围时重新通过加载函数获取（由档案缓存按事务共享副本）。
+ * 不在Web请求中（如定时任务）时直接调用加载函数，不做缓存。
+ */
+@Component
+public class PlayerContext {
+
+    private static final String ATTR_PLAYER_PROFILE = PlayerContext.class.getName() + ".PROFILE";
+    private static final Object NO_TRANSACTION = new Object();
+
+    private final Object txResourceKey = new Object();
+
+    private final Counter hitCounter;
+    private final Counter missCounter;
+
+    public PlayerContext(MeterRegistry meterRegistry) {
+        this.hitCounter = Counter.builder("xiuxian.player.context.lookups")
+                .description("当前玩家档案的请求级查找次数")
+                .tag("result", "hit")
+                .register(meterRegistry);
+        this.missCounter = Counter.builder("xiuxian.player.context.lookups")
+                .description("当前玩家档案的请求级查找次数")
+                .tag("result", "miss")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 获取当前请求的玩家档案，不存在时通过loader加载并缓存
+     */
+    public PlayerProfile getOrLoad(Supplier<PlayerProfile> loader) {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (attributes == null) {
+            return loader.get();
+        }
+
+        Object scope = currentScope();
+        PlayerProfile cached = lookup(attributes, scope);
+        if (cached != null) {
+            hitCounter.increment();
+            return cached;
+        }
+
+        missCounter.increment();
+        PlayerProfile profile = loader.get();
+        if (profile != null) {
+            attributes.setAttribute(ATTR_PLAYER_PROFILE, new Scoped(profile, scope), RequestAttributes.SCOPE_REQUEST);
+        }
+        return profile;
+    }
+
+    /**
+     * 若当前请求已加载的档案ID与给定ID相同则返回该实例，否则返回null
+     */
+    public PlayerProfile find(Integer playerId) {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (attributes == null || playerId == null) {
+            return null;
+        }
+
+        PlayerProfile cached = lookup(attributes, currentScope());
+        if (cached != null && playerId.equals(cached.getId())) {
+            hitCounter.increment();
+            return cached;
+        }
+        return null;
+    }
+
+    /**
+     * 清除当前请求缓存的档案，下次访问重新加载
+     */
+    public void invalidate() {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (attributes != null) {
+            attributes.removeAttribute(ATTR_PLAYER_PROFILE, RequestAttributes.SCOPE_REQUEST);
+        }
+    }
+
+    private static PlayerProfile lookup(RequestAttributes attributes, Object scope) {
+        Scoped scoped = (Scoped) attributes.getAttribute(ATTR_PLAYER_PROFILE, RequestAttributes.SCOPE_REQUEST);
+        return scoped != null && scoped.scope == scope ? scoped.profile : null;
+    }
+
+    /**
+     * 当前事务的标识对象，事务结束后解绑；不在事务中时返回NO_TRANSACTION
+     */
+    private Object currentScope() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return NO_TRANSACTION;
+        }
+        Object scope = TransactionSynchronizationManager.getResource(txResourceKey);
+        if (scope == null) {
+            scope = new Object();
+            TransactionSynchronizationManager.bindResource(txResourceKey, scope);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(txResourceKey);
+                }
+            });
+        }
+        return scope;
+    }
+
+    private static final class Scoped {
+
+        private final PlayerProfile profile;
+        private final Object scope;
+
+        Scoped(PlayerProfile profile, Object scope) {
+            this.profile = profile;
+            this.scope = scope;
+        }
+    }
+}
@@ -0,0 +1,348 @@
+package com.xiuxian.game.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 玩家状态推送通道（Server-Sent Events）
+ * 所有连接共享一个发送线程池：发布方只把事件放入各连接的有界队列并提交发送任务，从不阻塞；
+ * 每个连接同一时刻最多有一个发送任务在运行，保证事件顺序。
+ * 队列已满说明客户端消费跟不上，直接断开该连接，由客户端重连后重新拉取完整状态。
+ * 单次写入超过write-timeout-ms（客户端不读、TCP窗口已满）时看门狗断开该连接并中断发送线程，
+ * 同时为线程池补一个线程，被卡住的线程不会拖慢其他连接；关闭连接只交给发送任务执行，发布方不会等在emitter的锁上。
+ */
+@Slf4j
+@Component
+public class PlayerEventHub {
+
+    private static final Event HEARTBEAT = new Event(null, null);
+
+    private final ConcurrentMap<Integer, List<Subscriber>> subscribers = new ConcurrentHashMap<>();
+    private final AtomicInteger connectionCount = new AtomicInteger();
+    private final ScheduledExecutorService scheduler;
+    private final ThreadPoolExecutor senders;
+
+    private final long emitterTimeoutMillis;
+    private final int bufferSize;
+    private final int maxConnectionsPerPlayer;
+    private final long writeTimeoutNanos;
+    private final int maxSenderThreads;
+
+    private final Counter sentCounter;
+    private final Counter droppedCounter;
+
+    public PlayerEventHub(@Value("${app.push.emitter-timeout-ms:1800000}") long emitterTimeoutMillis,
+                          @Value("${app.push.buffer-size:64}") int bufferSize,
+                          @Value("${app.push.max-connections-per-player:3}") int maxConnectionsPerPlayer,
+                          @Value("${app.push.heartbeat-interval-ms:25000}") long heartbeatMillis,
+                          @Value("${app.push.threads:2}") int threads,
+                          @Value("${app.push.write-timeout-ms:10000}") long writeTimeoutMillis,
+                          MeterRegistry meterRegistry) {
+        this.emitterTimeoutMillis = emitterTimeoutMillis;
+        this.bufferSize = Math.max(1, bufferSize);
+        this.maxConnectionsPerPlayer = Math.max(1, maxConnectionsPerPlayer);
+        this.writeTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(writeTimeoutMillis);
+        int senderThreads = Math.max(1, threads);
+        // 卡住的线程最多补到初始线程数的4倍，避免大量不读数据的客户端耗尽线程
+        this.maxSenderThreads = senderThreads * 4;
+        this.senders = new ThreadPoolExecutor(senderThreads, senderThreads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), threadFactory("player-events-"));
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(threadFactory("player-events-watchdog-"));
+        this.scheduler.scheduleWithFixedDelay(this::heartbeat, heartbeatMillis, heartbeatMillis, TimeUnit.MILLISECONDS);
+        long checkMillis = Math.max(100, Math.min(1000, writeTimeoutMillis / 2));
+        this.scheduler.scheduleWithFixedDelay(this::checkWriteDeadlines, checkMillis, checkMillis, TimeUnit.MILLISECONDS);
+
+        this.sentCounter = Counter.builder("xiuxian.push.events")
+                .description("已推送的事件数")
+                .register(meterRegistry);
+        this.droppedCounter = Counter.builder("xiuxian.push.dropped")
+                .description("因消费过慢或写入失败被断开的连接数")
+                .register(meterRegistry);
+        meterRegistry.gauge("xiuxian.push.connections", Tags.empty(), connectionCount);
+    }
+
+    private static ThreadFactory threadFactory(String prefix) {
+        AtomicInteger sequence = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + sequence.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * 为玩家建立推送连接，超过单个玩家的连接上限时断开最早的连接
+     */
+    public SseEmitter subscribe(Integer playerId) {
+        SseEmitter emitter = new SseEmitter(emitterTimeoutMillis);
+        Subscriber subscriber = new Subscriber(playerId, emitter, bufferSize);
+        emitter.onCompletion(() -> {
+            subscriber.completed.set(true);
+            remove(subscriber);
+        });
+        emitter.onTimeout(() -> close(subscriber));
+        emitter.onError(e -> close(subscriber));
+
+        List<Subscriber> oldest = new ArrayList<>();
+        subscribers.compute(playerId, (id, list) -> {
+            if (list == null) {
+                list = new CopyOnWriteArrayList<>();
+            }
+            list.add(subscriber);
+            for (int i = 0; i < list.size() - maxConnectionsPerPlayer; i++) {
+                oldest.add(list.get(i));
+            }
+            return list;
+        });
+        connectionCount.incrementAndGet();
+        for (Subscriber stale : oldest) {
+            close(stale);
+        }
+
+        enqueue(subscriber, new Event("ready", Collections.emptyMap()));
+        log.debug("玩家建立推送连接: ID={}", playerId);
+        return emitter;
+    }
+
+    public boolean hasSubscribers(Integer playerId) {
+        return subscribers.containsKey(playerId);
+    }
+
+    public Set<Integer> subscribedPlayerIds() {
+        return subscribers.keySet();
+    }
+
+    /**
+     * 向玩家的所有连接发布事件，只入队不发送，不阻塞调用方
+     */
+    public void publish(Integer playerId, String type, Object data) {
+        List<Subscriber> list = subscribers.get(playerId);
+        if (list == null) {
+            return;
+        }
+        Event event = new Event(type, data);
+        for (Subscriber subscriber : list) {
+            enqueue(subscriber, event);
+        }
+    }
+
+    private void heartbeat() {
+        for (List<Subscriber> list : subscribers.values()) {
+            for (Subscriber subscriber : list) {
+                enqueue(subscriber, HEARTBEAT);
+            }
+        }
+    }
+
+    private void enqueue(Subscriber subscriber, Event event) {
+        if (subscriber.closed.get()) {
+            return;
+        }
+        if (!subscriber.queue.offer(event)) {
+            log.info("推送连接消费过慢，已断开: 玩家ID={}", subscriber.playerId);
+            droppedCounter.increment();
+            close(subscriber);
+            return;
+        }
+        scheduleDrain(subscriber);
+    }
+
+    private void scheduleDrain(Subscriber subscriber) {
+        if (subscriber.draining.compareAndSet(false, true)) {
+            try {
+                senders.execute(() -> drain(subscriber));
+            } catch (RuntimeException e) {
+                // 线程池已关闭
+                subscriber.draining.set(false);
+            }
+        }
+    }
+
+    private void drain(Subscriber subscriber) {
+        subscriber.sender = Thread.currentThread();
+        try {
+            Event event;
+            while (!subscriber.closed.get() && (event = subscriber.queue.poll()) != null) {
+                subscriber.sendStartedAt = System.nanoTime();
+                if (event == HEARTBEAT) {
+                    subscriber.emitter.send(SseEmitter.event().comment("ping"));
+                } else {
+                    subscriber.emitter.send(SseEmitter.event().name(event.type).data(event.data, MediaType.APPLICATION_JSON));
+                }
+                subscriber.sendStartedAt = 0L;
+                sentCounter.increment();
+            }
+            if (subscriber.closed.get()) {
+                complete(subscriber);
+            }
+        } catch (Exception e) {
+            if (remove(subscriber)) {
+                log.debug("推送写入失败，断开连接: 玩家ID={}, 原因={}", subscriber.playerId, e.getMessage());
+                droppedCounter.increment();
+            }
+            complete(subscriber);
+        } finally {
+            subscriber.sendStartedAt = 0L;
+            subscriber.sender = null;
+            // 清除看门狗留下的中断标记，线程还要继续为其他连接服务
+            Thread.interrupted();
+            if (subscriber.compensated.compareAndSet(true, false)) {
+                resizeSenders(-1);
+            }
+            subscriber.draining.set(false);
+            // 释放标记与新事件入队或连接关闭之间存在竞争，补一次调度
+            if (subscriber.closed.get() ? !subscriber.completed.get() : !subscriber.queue.isEmpty()) {
+                scheduleDrain(subscriber);
+            }
+        }
+    }
+
+    /**
+     * 看门狗：单次写入超时的连接直接移除并中断发送线程；emitter的锁被卡住的写入占用，
+     * 关闭emitter要等写入返回（容器写超时或客户端断开）后由发送任务完成
+     */
+    private void checkWriteDeadlines() {
+        long now = System.nanoTime();
+        for (List<Subscriber> list : subscribers.values()) {
+            for (Subscriber subscriber : list) {
+                long startedAt = subscriber.sendStartedAt;
+                if (startedAt == 0L || now - startedAt <= writeTimeoutNanos || !remove(subscriber)) {
+                    continue;
+                }
+                log.info("推送写入超时，已断开: 玩家ID={}", subscriber.playerId);
+                droppedCounter.increment();
+                Thread sender = subscriber.sender;
+                if (sender != null) {
+                    sender.interrupt();
+                }
+                // 先标记再补位，发送线程恰好在两步之间返回时先收回再补回，线程数不会漂移
+                subscriber.compensated.set(true);
+                if (!resizeSenders(1)) {
+                    subscriber.compensated.compareAndSet(true, false);
+                }
+            }
+        }
+    }
+
+    /**
+     * 调整发送线程数，为卡住的线程补位或在其恢复后收回
+     *
+     * @return 是否已调整（补位达到上限时返回false）
+     */
+    private synchronized boolean resizeSenders(int delta) {
+        int size = senders.getCorePoolSize() + delta;
+        if (size > maxSenderThreads) {
+            return false;
+        }
+        if (delta > 0) {
+            senders.setMaximumPoolSize(size);
+            senders.setCorePoolSize(size);
+        } else {
+            senders.setCorePoolSize(size);
+            senders.setMaximumPoolSize(size);
+        }
+        return true;
+    }
+
+    /**
+     * 断开连接：只做标记和移除，emitter由发送任务关闭，调用方（发布方、容器回调）不会等在emitter的锁上
+     */
+    private void close(Subscriber subscriber) {
+        if (remove(subscriber)) {
+            scheduleDrain(subscriber);
+        }
+    }
+
+    private void complete(Subscriber subscriber) {
+        if (subscriber.completed.compareAndSet(false, true)) {
+            try {
+                subscriber.emitter.complete();
+            } catch (Exception e) {
+                log.debug("关闭推送连接失败: 玩家ID={}", subscriber.playerId, e);
+            }
+        }
+    }
+
+    private boolean remove(Subscriber subscriber) {
+        if (!subscriber.closed.compareAndSet(false, true)) {
+            return false;
+        }
+        subscriber.queue.clear();
+        subscribers.computeIfPresent(subscriber.playerId, (id, list) -> {
+            list.remove(subscriber);
+            return list.isEmpty() ? null : list;
+        });
+        connectionCount.decrementAndGet();
+        return true;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        for (List<Subscriber> list : subscribers.values()) {
+            for (Subscriber subscriber : list) {
+                close(subscriber);
+            }
+        }
+        scheduler.shutdownNow();
+        senders.shutdown();
+    }
+
+    private static final class Event {
+        private final String type;
+        private final Object data;
+
+        Event(String type, Object data) {
+            this.type = type;
+            this.data = data;
+        }
+    }
+
+    private static final class Subscriber {
+        private final Integer playerId;
+        private final SseEmitter emitter;
+        private final BlockingQueue<Event> queue;
+        private final AtomicBoolean draining = new AtomicBoolean();
+        private final AtomicBoolean closed = new AtomicBoolean();
+        private final AtomicBoolean completed = new AtomicBoolean();
+        /**
+         * 看门狗是否为本连接卡住的发送线程补过位
+         */
+        private final AtomicBoolean compensated = new AtomicBoolean();
+        /**
+         * 进行中写入的开始时间，0表示没有写入
+         */
+        private volatile long sendStartedAt;
+        private volatile Thread sender;
+
+        Subscriber(Integer playerId, SseEmitter emitter, int bufferSize) {
+            this.playerId = playerId;
+            this.emitter = emitter;
+            this.queue = new ArrayBlockingQueue<>(bufferSize);
+        }
+    }
+}
@@ -0,0 +1,719 @@
+package com.xiuxian.game.service;
+
+import com.xiuxian.game.entity.PlayerProfile;
+import com.xiuxian.game.mapper.PlayerProfileMapper;
+import com.xiuxian.game.mapper.PlayerProfileSqlProvider;
+import com.xiuxian.game.mapper.PlayerProfileSqlProvider.Column;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.ibatis.executor.BatchResult;
+import org.apache.ibatis.session.ExecutorType;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PreDestroy;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * 活跃玩家档案的进程内权威缓存（Write-Behind）
+ * 读取时返回副本（同一事务内共享），保存时在事务提交后把本事务修改的列合并进缓存并标记为脏；事务回滚时缓存保持不变。
+ * 只接受保存当前事务内读取的副本，事务外或其他事务读取的副本无法确定修改了哪些列，直接拒绝。
+ * 脏条目按固定间隔、脏条目数达到上限（交给后台线程，不占用请求线程）以及应用关闭时以JDBC批量方式写回数据库，
+ * 写回时只更新与上次落库快照相比发生变化的列，并以版本号为条件；
+ * 版本冲突（行被其他写入方修改）时以最新行为基准重新叠加本进程的修改：经验、灵石等计数列叠加增量，
+ * 其他列在双方都修改过时以数据库为准并记录日志。灵石扣除和奖励发放直接在数据库中以条件UPDATE增减，
+ * 事务提交后同样以最新行为基准重新合并，未提交的增减不会出现在缓存中。写回失败的条目保持为脏，等待下一轮，
+ * 因此进程崩溃最多丢失一个刷新间隔内、且不超过max-dirty个玩家的未落库修改。
+ * 排行榜等直接查询数据库的读操作可能滞后一个刷新间隔。
+ */
+@Slf4j
+@Component
+public class PlayerProfileCache {
+
+    private static final long FLUSH_WAIT_MILLIS = 2000L;
+
+    private final PlayerProfileMapper playerProfileMapper;
+    private final SqlSessionFactory sqlSessionFactory;
+    private final PlayerStatePublisher playerStatePublisher;
+
+    private final ConcurrentMap<Integer, Entry> entries = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Integer, Integer> playerIdByUserId = new ConcurrentHashMap<>();
+    private final AtomicInteger dirtyCount = new AtomicInteger();
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+    private final ExecutorService flushExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "profile-cache-flush");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Object txResourceKey = new Object();
+
+    private final int maxDirty;
+    private final int batchSize;
+    private final long idleEvictNanos;
+
+    private final Counter hitCounter;
+    private final Counter missCounter;
+    private final Counter flushedCounter;
+    private final Counter flushFailedCounter;
+    private final Counter conflictCounter;
+    private final Timer flushTimer;
+
+    public PlayerProfileCache(PlayerProfileMapper playerProfileMapper,
+                              SqlSessionFactory sqlSessionFactory,
+                              PlayerStatePublisher playerStatePublisher,
+                              @Value("${app.game.profile-cache.max-dirty:500}") int maxDirty,
+                              @Value("${app.game.profile-cache.batch-size:200}") int batchSize,
+                              @Value("${app.game.profile-cache.idle-evict-ms:1800000}") long idleEvictMillis,
+                              MeterRegistry meterRegistry) {
+        this.playerProfileMapper = playerProfileMapper;
+        this.sqlSessionFactory = sqlSessionFactory;
+        this.playerStatePublisher = playerStatePublisher;
+        this.maxDirty = maxDirty;
+        this.batchSize = Math.max(1, batchSize);
+        this.idleEvictNanos = TimeUnit.MILLISECONDS.toNanos(idleEvictMillis);
+
+        this.hitCounter = Counter.builder("xiuxian.player.cache.lookups")
+                .description("玩家档案缓存查找次数")
+                .tag("result", "hit")
+                .register(meterRegistry);
+        this.missCounter = Counter.builder("xiuxian.player.cache.lookups")
+                .description("玩家档案缓存查找次数")
+                .tag("result", "miss")
+                .register(meterRegistry);
+        this.flushedCounter = Counter.builder("xiuxian.player.cache.flushed")
+                .description("写回数据库的玩家档案行数")
+                .register(meterRegistry);
+        this.flushFailedCounter = Counter.builder("xiuxian.player.cache.flush.failed")
+                .description("批量写回失败次数")
+                .register(meterRegistry);
+        this.conflictCounter = Counter.builder("xiuxian.optimistic-lock.conflicts")
+                .description("乐观锁版本冲突次数")
+                .tag("source", "flush")
+                .tag("operation", "player_profiles")
+                .register(meterRegistry);
+        this.flushTimer = Timer.builder("xiuxian.player.cache.flush")
+                .description("单次批量写回耗时")
+                .register(meterRegistry);
+        meterRegistry.gaugeMapSize("xiuxian.player.cache.size", Tags.empty(), entries);
+        meterRegistry.gauge("xiuxian.player.cache.dirty", dirtyCount);
+    }
+
+    /**
+     * 按玩家ID获取档案副本，未缓存时从数据库加载；玩家不存在时返回null
+     */
+    public PlayerProfile get(Integer playerId) {
+        if (playerId == null) {
+            return null;
+        }
+        Map<Integer, TxView> txViews = transactionViews();
+        if (txViews != null) {
+            TxView view = txViews.get(playerId);
+            if (view == null) {
+                PlayerProfile loaded = load(playerId);
+                if (loaded == null) {
+                    return null;
+                }
+                view = new TxView(loaded);
+                txViews.put(playerId, view);
+            }
+            return view.working;
+        }
+        return load(playerId);
+    }
+
+    private PlayerProfile load(Integer playerId) {
+        Entry entry = entries.get(playerId);
+        if (entry == null) {
+            missCounter.increment();
+            PlayerProfile loaded = playerProfileMapper.selectById(playerId);
+            if (loaded == null) {
+                return null;
+            }
+            entry = cache(loaded);
+        } else {
+            hitCounter.increment();
+        }
+        return entry.read();
+    }
+
+    /**
+     * 按用户ID获取档案副本；玩家不存在时返回null
+     */
+    public PlayerProfile getByUserId(Integer userId) {
+        if (userId == null) {
+            return null;
+        }
+        Integer playerId = playerIdByUserId.get(userId);
+        if (playerId == null || !entries.containsKey(playerId)) {
+            missCounter.increment();
+            PlayerProfile loaded = playerProfileMapper.selectByUserId(userId);
+            if (loaded == null) {
+                return null;
+            }
+            cache(loaded);
+            playerId = loaded.getId();
+        }
+        return get(playerId);
+    }
+
+    /**
+     * 事务内同一玩家共享同一个副本（与MyBatis一级缓存的行为一致），事务结束后解绑
+     */
+    @SuppressWarnings("unchecked")
+    private Map<Integer, TxView> transactionViews() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return null;
+        }
+        Map<Integer, TxView> views = (Map<Integer, TxView>) TransactionSynchronizationManager.getResource(txResourceKey);
+        if (views == null) {
+            views = new HashMap<>();
+            TransactionSynchronizationManager.bindResource(txResourceKey, views);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(txResourceKey);
+                }
+            });
+        }
+        return views;
+    }
+
+    /**
+     * 放入刚插入数据库的档案（干净条目），在当前事务提交后生效
+     */
+    public void put(PlayerProfile profile) {
+        final PlayerProfile snapshot = copy(profile);
+        runAfterCommit(() -> cache(snapshot));
+    }
+
+    /**
+     * 保存档案修改：在当前事务提交后生效
+     * 只合并本事务实际修改的列（与读取时的原始副本比较），不覆盖其他请求同时写入的列
+     *
+     * @throws IllegalStateException 不在事务中，或保存的不是当前事务通过get()读取的副本
+     */
+    public void save(PlayerProfile profile) {
+        Map<Integer, TxView> txViews = transactionViews();
+        TxView view = txViews != null ? txViews.get(profile.getId()) : null;
+        if (view == null || view.working != profile) {
+            throw new IllegalStateException("只能保存当前事务内读取的玩家档案: ID=" + profile.getId());
+        }
+
+        long changed = PlayerProfileSqlProvider.diff(view.origin, profile);
+        if (changed == 0) {
+            return;
+        }
+        profile.setUpdatedAt(LocalDateTime.now());
+        view.origin = copy(profile);
+        final PlayerProfile snapshot = copy(profile);
+        runAfterCommit(() -> apply(snapshot, changed));
+    }
+
+    /**
+     * 余额充足时扣除灵石：条件判断和扣除由数据库在一条UPDATE中完成，事务提交后用最新的行刷新缓存
+     * 缓存中有尚未写回的灵石增加时先写回该玩家，避免按滞后的余额拒绝扣除；因此应在本事务锁定该玩家的行之前调用
+     *
+     * @return 是否扣除成功；余额不足时返回false且不做任何修改
+     * @throws IllegalArgumentException 扣除数量为负数
+     */
+    public boolean debitSpiritStones(Integer playerId, long amount) {
+        if (amount < 0) {
+            throw new IllegalArgumentException("扣除数量不能为负数");
+        }
+        if (hasUnflushedSpiritStones(playerId)) {
+            awaitFlush(playerId);
+        }
+        if (playerProfileMapper.debitSpiritStones(playerId, amount, LocalDateTime.now()) != 1) {
+            return false;
+        }
+        afterDelta(playerId, Column.SPIRIT_STONES.mask(),
+                profile -> profile.setSpiritStones(profile.getSpiritStones() - amount));
+        return true;
+    }
+
+    /**
+     * 增加经验、灵石和贡献点：由数据库在一条UPDATE中累加，事务提交后用最新的行刷新缓存
+     *
+     * @throws IllegalArgumentException 玩家不存在
+     */
+    public void credit(Integer playerId, long exp, long spiritStones, long contributionPoints) {
+        if (playerProfileMapper.credit(playerId, exp, spiritStones, contributionPoints, LocalDateTime.now()) != 1) {
+            throw new IllegalArgumentException("玩家不存在");
+        }
+        afterDelta(playerId, Column.EXP.mask() | Column.SPIRIT_STONES.mask() | Column.CONTRIBUTION_POINTS.mask(),
+                profile -> {
+                    profile.setExp(profile.getExp() + exp);
+                    profile.setSpiritStones(profile.getSpiritStones() + spiritStones);
+                    profile.setContributionPoints(profile.getContributionPoints() + contributionPoints);
+                });
+    }
+
+    /**
+     * 数据库中的增减已执行：同步到本事务已读取的副本（原始副本一起修改，之后save()不会把它当成调用方的修改），
+     * 缓存条目在事务提交后以最新的行为基准重新合并，回滚时缓存本来就没有变化
+     */
+    private void afterDelta(Integer playerId, long columns, Consumer<PlayerProfile> change) {
+        Map<Integer, TxView> txViews = transactionViews();
+        TxView view = txViews != null ? txViews.get(playerId) : null;
+        if (view != null) {
+            change.accept(view.working);
+            change.accept(view.origin);
+        }
+        runAfterCommit(() -> {
+            PlayerProfile refreshed = reload(playerId);
+            if (refreshed != null) {
+                playerStatePublisher.profileChanged(refreshed, columns);
+            }
+        });
+    }
+
+    private boolean hasUnflushedSpiritStones(Integer playerId) {
+        Entry entry = entries.get(playerId);
+        if (entry == null || !entry.dirty) {
+            return false;
+        }
+        boolean[] credited = new boolean[1];
+        entries.computeIfPresent(playerId, (id, current) -> {
+            credited[0] = valueOf(current.profile.getSpiritStones()) > valueOf(current.persisted.getSpiritStones());
+            return current;
+        });
+        return credited[0];
+    }
+
+    private static void runAfterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    private Entry cache(PlayerProfile loaded) {
+        Entry fresh = new Entry(loaded);
+        Entry existing = entries.putIfAbsent(loaded.getId(), fresh);
+        if (loaded.getUserId() != null) {
+            playerIdByUserId.put(loaded.getUserId(), loaded.getId());
+        }
+        return existing != null ? existing : fresh;
+    }
+
+    private void apply(PlayerProfile snapshot, long columns) {
+        Entry applied;
+        while (true) {
+            // 条目在读取后已被淘汰时先重新加载，保证总有落库基准，写回和冲突合并只涉及本事务修改的列
+            if (!entries.containsKey(snapshot.getId()) && load(snapshot.getId()) == null) {
+                log.warn("玩家档案已从数据库删除，丢弃修改: ID={}", snapshot.getId());
+                return;
+            }
+            applied = entries.computeIfPresent(snapshot.getId(), (id, entry) -> {
+                PlayerProfile merged = copy(entry.profile);
+                PlayerProfileSqlProvider.copyColumns(columns, snapshot, merged);
+                merged.setUpdatedAt(snapshot.getUpdatedAt());
+                entry.profile = merged;
+                entry.touch();
+                markDirty(entry);
+                return entry;
+            });
+            if (applied != null) {
+                break;
+            }
+        }
+        if (snapshot.getUserId() != null) {
+            playerIdByUserId.put(snapshot.getUserId(), snapshot.getId());
+        }
+        afterWrite();
+        playerStatePublisher.profileChanged(applied.profile, columns);
+    }
+
+    /**
+     * 只能在ConcurrentHashMap.compute内调用
+     */
+    private void markDirty(Entry entry) {
+        entry.version++;
+        if (!entry.dirty) {
+            entry.dirty = true;
+            dirtyCount.incrementAndGet();
+        }
+    }
+
+    private void afterWrite() {
+        // 限制可能丢失的未落库数据量；写回交给后台线程，多次触发只排队一次
+        if (dirtyCount.get() >= maxDirty && flushRequested.compareAndSet(false, true)) {
+            flushExecutor.execute(() -> {
+                flushRequested.set(false);
+                flush();
+            });
+        }
+    }
+
+    /**
+     * 将脏条目批量写回数据库，写回期间再次被修改的条目保持为脏，等待下一轮
+     */
+    @Scheduled(fixedDelayString = "${app.game.profile-cache.flush-interval-ms:5000}")
+    public void flush() {
+        if (!flushLock.tryLock()) {
+            return;
+        }
+        try {
+            flushDirty();
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * 应用关闭时等待进行中的写回结束，再写回剩余脏条目
+     */
+    @PreDestroy
+    public void shutdown() {
+        flushExecutor.shutdown();
+        flushLock.lock();
+        try {
+            flushDirty();
+        } finally {
+            flushLock.unlock();
+        }
+        if (dirtyCount.get() > 0) {
+            log.error("关闭时仍有{}个玩家档案未能写回数据库", dirtyCount.get());
+        }
+    }
+
+    private void flushDirty() {
+        List<PendingWrite> pending = new ArrayList<>();
+        for (Integer playerId : entries.keySet()) {
+            collectDirty(playerId, pending);
+        }
+        // 相同列组合相邻排列，BATCH执行器才能把它们合并成同一个JDBC批次
+        pending.sort(Comparator.comparingLong(write -> write.columns));
+
+        for (int from = 0; from < pending.size(); from += batchSize) {
+            int to = Math.min(from + batchSize, pending.size());
+            if (!writeAndSettle(pending.subList(from, to))) {
+                break;
+            }
+        }
+
+        evictIdle();
+    }
+
+    /**
+     * 在写回线程上立即写回单个玩家并等待结果，超时或失败时不再等待，由调用方按数据库当前的值继续
+     * 不能在当前线程写回：当前线程处于事务中时，MyBatis会使用事务的连接，写回会随事务一起回滚
+     */
+    private void awaitFlush(Integer playerId) {
+        try {
+            flushExecutor.submit(() -> flushPlayer(playerId)).get(FLUSH_WAIT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException | RejectedExecutionException e) {
+            log.warn("立即写回玩家档案未完成: ID={}", playerId, e);
+        }
+    }
+
+    /**
+     * 立即写回单个玩家的脏条目，与定时写回互斥
+     */
+    private void flushPlayer(Integer playerId) {
+        flushLock.lock();
+        try {
+            List<PendingWrite> pending = new ArrayList<>(1);
+            collectDirty(playerId, pending);
+            if (!pending.isEmpty()) {
+                writeAndSettle(pending);
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private void collectDirty(Integer playerId, List<PendingWrite> into) {
+        entries.computeIfPresent(playerId, (id, entry) -> {
+            if (entry.dirty) {
+                into.add(new PendingWrite(entry.profile, entry.version, entry.rowVersion,
+                        PlayerProfileSqlProvider.diff(entry.persisted, entry.profile)));
+            }
+            return entry;
+        });
+    }
+
+    /**
+     * 写回一批并处理结果：成功的标记为干净，版本冲突的基于最新行重新合并
+     *
+     * @return 写库是否成功
+     */
+    private boolean writeAndSettle(List<PendingWrite> batch) {
+        Set<Integer> conflicts = writeBatch(batch);
+        if (conflicts == null) {
+            return false;
+        }
+        for (PendingWrite write : batch) {
+            if (conflicts.contains(write.profile.getId())) {
+                rebase(write.profile.getId());
+            } else {
+                markClean(write);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 批量写回，带版本号条件
+     *
+     * @return 因版本号不一致而未更新的玩家ID；写库失败时返回null
+     */
+    private Set<Integer> writeBatch(List<PendingWrite> batch) {
+        long start = System.nanoTime();
+        int written = 0;
+        Set<Integer> conflicts = new HashSet<>();
+        try (SqlSession session = sqlSessionFactory.openSession(ExecutorType.BATCH, false)) {
+            PlayerProfileMapper mapper = session.getMapper(PlayerProfileMapper.class);
+            for (PendingWrite write : batch) {
+                // 与已落库版本相比没有列变化时无需写库
+                if (write.columns != 0) {
+                    mapper.updateColumns(write.profile, write.columns, write.rowVersion);
+                    written++;
+                }
+            }
+            if (written > 0) {
+                for (BatchResult result : session.flushStatements()) {
+                    int[] counts = result.getUpdateCounts();
+                    List<Object> parameters = result.getParameterObjects();
+                    for (int i = 0; i < counts.length; i++) {
+                        if (counts[i] == 0) {
+                            PlayerProfile profile = (PlayerProfile) ((Map<?, ?>) parameters.get(i)).get("profile");
+                            conflicts.add(profile.getId());
+                        }
+                    }
+                }
+                session.commit();
+            }
+            flushedCounter.increment(written - conflicts.size());
+            conflictCounter.increment(conflicts.size());
+            return conflicts;
+        } catch (Exception e) {
+            flushFailedCounter.increment();
+            log.error("批量写回玩家档案失败: {}条", batch.size(), e);
+            return null;
+        } finally {
+            flushTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void markClean(PendingWrite write) {
+        entries.computeIfPresent(write.profile.getId(), (id, entry) -> {
+            // 写回期间条目已按更新的行重新合并（rowVersion已变化），它的落库基准比这次写回的快照更新
+            if (entry.rowVersion != write.rowVersion) {
+                return entry;
+            }
+            // 写回的快照已是数据库中的状态，后续变更以它为基准计算差异
+            entry.persisted = write.profile;
+            if (write.columns != 0) {
+                entry.rowVersion = write.rowVersion + 1;
+            }
+            if (entry.dirty && entry.version == write.version) {
+                entry.dirty = false;
+                dirtyCount.decrementAndGet();
+            }
+            return entry;
+        });
+    }
+
+    public boolean isCached(Integer playerId) {
+        return entries.containsKey(playerId);
+    }
+
+    /**
+     * 其他写入方（如批量离线结算）直接修改数据库后调用：已缓存的玩家基于最新行重新合并本进程的修改
+     */
+    public void refresh(Collection<Integer> playerIds) {
+        for (Integer playerId : playerIds) {
+            if (entries.containsKey(playerId)) {
+                rebase(playerId);
+            }
+        }
+    }
+
+    /**
+     * 数据库中的行已被其他写入方修改（版本号不一致）：
+     * 以最新的行为基准，计数列叠加本进程的增量，其他列只采用数据库未改动的本地修改，仍有未落库修改时保持为脏等待下一轮写回
+     */
+    private void rebase(Integer playerId) {
+        if (reload(playerId) != null) {
+            log.info("玩家档案已基于数据库最新数据重新合并: ID={}", playerId);
+        }
+    }
+
+    /**
+     * 已缓存的玩家从数据库读取最新的行并重新合并本进程未落库的修改
+     *
+     * @return 合并后的档案；玩家未缓存或已从数据库删除时返回null
+     */
+    private PlayerProfile reload(Integer playerId) {
+        if (!entries.containsKey(playerId)) {
+            return null;
+        }
+        PlayerProfile fresh = playerProfileMapper.selectById(playerId);
+        if (fresh == null) {
+            log.warn("玩家档案已从数据库删除，丢弃缓存: ID={}", playerId);
+            entries.computeIfPresent(playerId, (id, entry) -> {
+                if (entry.dirty) {
+                    dirtyCount.decrementAndGet();
+                }
+                return null;
+            });
+            return null;
+        }
+
+        long[] conflicts = new long[1];
+        Entry reloaded = entries.computeIfPresent(playerId, (id, entry) -> {
+            PlayerProfile merged = copy(fresh);
+            conflicts[0] = PlayerProfileSqlProvider.rebase(entry.persisted, entry.profile, merged);
+            boolean dirty = PlayerProfileSqlProvider.diff(fresh, merged) != 0;
+            if (dirty) {
+                merged.setUpdatedAt(entry.profile.getUpdatedAt());
+            }
+            entry.profile = merged;
+            entry.persisted = fresh;
+            entry.rowVersion = versionOf(fresh);
+            // 版本号递增，进行中的写回不会把条目误标为干净
+            entry.version++;
+            if (dirty != entry.dirty) {
+                entry.dirty = dirty;
+                dirtyCount.addAndGet(dirty ? 1 : -1);
+            }
+            return entry;
+        });
+        if (conflicts[0] != 0) {
+            log.warn("玩家档案与其他写入方修改了相同的列，已以数据库为准: ID={}, 列={}", playerId,
+                    PlayerProfileSqlProvider.toPropertyMap(conflicts[0], fresh).keySet());
+        }
+        return reloaded != null ? reloaded.profile : null;
+    }
+
+    private void evictIdle() {
+        long now = System.nanoTime();
+        for (Integer playerId : entries.keySet()) {
+            entries.computeIfPresent(playerId, (id, entry) -> {
+                if (!entry.dirty && now - entry.lastAccess > idleEvictNanos) {
+                    if (entry.profile.getUserId() != null) {
+                        playerIdByUserId.remove(entry.profile.getUserId(), id);
+                    }
+                    return null;
+                }
+                return entry;
+            });
+        }
+    }
+
+    private static PlayerProfile copy(PlayerProfile profile) {
+        return profile.toBuilder().build();
+    }
+
+    private static long valueOf(Long value) {
+        return value != null ? value : 0L;
+    }
+
+    private static int versionOf(PlayerProfile profile) {
+        return profile.getVersion() != null ? profile.getVersion() : 0;
+    }
+
+    /**
+     * 事务内的共享副本及其读取时（或上次保存时）的原始状态
+     */
+    private static final class TxView {
+
+        private final PlayerProfile working;
+        private PlayerProfile origin;
+
+        TxView(PlayerProfile loaded) {
+            this.working = loaded;
+            this.origin = copy(loaded);
+        }
+    }
+
+    private static final class PendingWrite {
+
+        private final PlayerProfile profile;
+        private final long version;
+        private final int rowVersion;
+        private final long columns;
+
+        PendingWrite(PlayerProfile profile, long version, int rowVersion, long columns) {
+            this.profile = profile;
+            this.version = version;
+            this.rowVersion = rowVersion;
+            this.columns = columns;
+        }
+    }
+
+    /**
+     * 缓存条目；profile/persisted/version/rowVersion/dirty只在ConcurrentHashMap.compute内修改
+     */
+    private static final class Entry {
+
+        private volatile PlayerProfile profile;
+        /**
+         * 最近一次确认与数据库一致的快照，用于计算变更列
+         */
+        private PlayerProfile persisted;
+        private long version;
+        /**
+         * 数据库中该行的乐观锁版本号
+         */
+        private int rowVersion;
+        private volatile boolean dirty;
+        private volatile long lastAccess;
+
+        Entry(PlayerProfile profile) {
+            this.profile = profile;
+            this.persisted = profile;
+            this.rowVersion = versionOf(profile);
+            touch();
+        }
+
+        PlayerProfile read() {
+            touch();
+            PlayerProfile copy = copy(profile);
+            copy.setVersion(rowVersion);
+            return copy;
+        }
+
+        void touch() {
+            lastAccess = System.nanoTime();
+        }
+    }
+}
@@ -1,12 +1,19 @@
 package com.xiuxian.game.service;
 
+import com.xiuxian.game.entity.CultivationLog;
 import com.xiuxian.game.entity.PlayerProfile;
 import com.xiuxian.game.entity.User;
 import com.xiuxian.game.mapper.PlayerProfileMapper;
+import com.xiuxian.game.mapper.PlayerSkillMapper;
 import com.xiuxian.game.mapper.UserMapper;
+import com.xiuxian.game.security.PlayerPrincipal;
+import com.xiuxian.game.util.GameCalculator;
+import com.xiuxian.game.util.GameConstants;
+import com.xiuxian.game.util.LevelProgression;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.security.core.Authentication;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -22,22 +29,32 @@ public class PlayerService {
 
     private final PlayerProfileMapper playerProfileMapper;
     private final UserMapper userMapper;
+    private final PlayerSkillMapper playerSkillMapper;
+    private final PlayerContext playerContext;
+    private final PlayerProfileCache playerProfileCache;
+    private final LevelProgression levelProgression;
+    private final GameCalculator gameCalculator;
+    private final PlayerEventHub playerEventHub;
+    private final PlayerStatePublisher playerStatePublisher;
+    private final CultivationLogWriter cultivationLogWriter;
 
     /**
-     * 创建新玩家档案
+     * 创建新玩家档案并发放初始技能
+     * 插入后直接使用回填的自增主键，不再回查
      */
     @Transactional
     public PlayerProfile createNewPlayer(User user, String nickname) {
         try {
             log.info("为用户创建玩家档案: {}", user.getUsername());
+            LocalDateTime now = LocalDateTime.now();
 
             PlayerProfile playerProfile = PlayerProfile.builder()
                     .userId(user.getId())
                     .nickname(nickname != null ? nickname : user.getUsername())
                     .level(1)
                     .exp(0L)
-                    .expToNext(100L)
-                    .realm("练气期")
+                    .expToNext(levelProgression.expToNext(1))
+                    .realm(levelProgression.realmOf(1).getDisplayName())
                     .cultivationSpeed(BigDecimal.ONE)
                     .spiritStones(1000L)
                     .cultivationPoints(0L)
@@ -48,15 +65,18 @@ public class PlayerService {
                     .mana(50)
                     .speed(10)
                     .isCultivating(false)
-                    .lastOnlineTime(LocalDateTime.now())
+                    .lastOnlineTime(now)
                     .totalCultivationTime(0L)
+                    .createdAt(now)
+                    .updatedAt(now)
                     .build();
 
             playerProfileMapper.insert(playerProfile);
-            PlayerProfile savedProfile = playerProfileMapper.selectById(playerProfile.getId());
-            log.info("玩家档案创建成功: ID={}", savedProfile.getId());
+            playerSkillMapper.insertSkillsUnlockedAt(playerProfile.getId(), 1);
+            playerProfileCache.put(playerProfile);
+            log.info("玩家档案创建成功: ID={}", playerProfile.getId());
 
-            return savedProfile;
+            return playerProfile;
 
         } catch (Exception e) {
             log.error("创建玩家档案失败: {}", user.getUsername(), e);
@@ -69,8 +89,14 @@ public class PlayerService {
      */
     public PlayerProfile getPlayerProfileById(Integer playerId) {
         try {
+            // 当前请求已加载同一玩家时复用该实例
+            PlayerProfile cached = playerContext.find(playerId);
+            if (cached != null) {
+                return cached;
+            }
+
             log.info("获取玩家档案: ID={}", playerId);
-            PlayerProfile profile = playerProfileMapper.selectById(playerId);
+            PlayerProfile profile = playerProfileCache.get(playerId);
             if (profile == null) {
                 throw new RuntimeException("玩家档案不存在");
             }
@@ -82,9 +108,21 @@ public class PlayerService {
     }
 
     /**
-     * 获取当前登录玩家的档案
+     * 获取当前登录玩家的档案，同一请求内只查询一次
      */
     public PlayerProfile getCurrentPlayerProfile() {
+        return playerContext.getOrLoad(this::loadCurrentPlayerProfile);
+    }
+
+    /**
+     * 获取当前登录玩家的档案，修炼中时返回按当前时间推算修炼收益后的副本
+     * 推算只在内存中进行，不写库也不额外查询；收益在停止修炼时才结算保存
+     */
+    public PlayerProfile getCurrentPlayerProfileWithProgress() {
+        return gameCalculator.projectCultivation(getCurrentPlayerProfile(), LocalDateTime.now());
+    }
+
+    private PlayerProfile loadCurrentPlayerProfile() {
         try {
             Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
             if (authentication == null || !authentication.isAuthenticated()) {
@@ -94,6 +132,16 @@ public class PlayerService {
             String username = authentication.getName();
             log.info("获取当前玩家档案: {}", username);
 
+            // 令牌已携带playerId时直接按主键查询，省去users表查询
+            Integer playerId = getPlayerIdFromPrincipal(authentication);
+            if (playerId != null) {
+                PlayerProfile profile = playerProfileCache.get(playerId);
+                if (profile == null) {
+                    throw new RuntimeException("玩家档案不存在");
+                }
+                return profile;
+            }
+
             // 先通过用户名获取用户信息
             User user = userMapper.selectByUsername(username);
             if (user == null) {
@@ -101,7 +149,7 @@ public class PlayerService {
             }
             
             // 然后通过用户ID获取玩家档案
-            PlayerProfile profile = playerProfileMapper.selectByUserId(user.getId());
+            PlayerProfile profile = playerProfileCache.getByUserId(user.getId());
             if (profile == null) {
                 throw new RuntimeException("玩家档案不存在");
             }
@@ -117,6 +165,11 @@ public class PlayerService {
      */
     public Integer getCurrentPlayerId() {
         try {
+            // 直接从认证主体读取，无需查询数据库
+            Integer playerId = getPlayerIdFromPrincipal(SecurityContextHolder.getContext().getAuthentication());
+            if (playerId != null) {
+                return playerId;
+            }
             PlayerProfile profile = getCurrentPlayerProfile();
             return profile.getId();
         } catch (Exception e) {
@@ -125,6 +178,16 @@ public class PlayerService {
         }
     }
 
+    /**
+     * 从JWT构建的认证主体中读取playerId，旧令牌返回null
+     */
+    private Integer getPlayerIdFromPrincipal(Authentication authentication) {
+        if (authentication != null && authentication.getPrincipal() instanceof PlayerPrincipal) {
+            return ((PlayerPrincipal) authentication.getPrincipal()).getPlayerId();
+        }
+        return null;
+    }
+
     /**
      * 开始修炼
      */
@@ -145,7 +208,7 @@ public class PlayerService {
 
             profile.setIsCultivating(true);
             profile.setLastCultivationStart(LocalDateTime.now());
-            playerProfileMapper.updateById(profile);
+            playerProfileCache.save(profile);
             
             log.info("玩家开始修炼: ID={}", profile.getId());
         } catch (Exception e) {
@@ -166,7 +229,7 @@ public class PlayerService {
             if (!profile.getIsCultivating()) {
                 // 即使状态已经是false，也尝试重置以防万一
                 profile.setIsCultivating(false);
-                playerProfileMapper.updateById(profile);
+                playerProfileCache.save(profile);
                 throw new RuntimeException("当前没有在修炼");
             }
 
@@ -178,25 +241,30 @@ public class PlayerService {
                 long cultivationTimeSeconds = java.time.Duration.between(startTime, now).getSeconds();
                 
                 // 限制最大修炼时间为24小时（防止异常情况）
-                long maxCultivationTime = 24 * 60 * 60; // 24小时
-                long actualCultivationTime = Math.min(cultivationTimeSeconds, maxCultivationTime);
+                long actualCultivationTime = Math.min(cultivationTimeSeconds, GameConstants.MAX_ACTIVE_CULTIVATION_SECONDS);
                 
                 // 转换为分钟用于总时间统计
                 long cultivationTimeMinutes = actualCultivationTime / 60;
                 profile.setTotalCultivationTime(profile.getTotalCultivationTime() + cultivationTimeMinutes);
                 
-                // 计算修炼收益（每秒获得基础经验 * 修炼速度）
-                double baseExpPerSecond = 1.0; // 每秒获得1经验（加快速度）
-                long expGained = (long) (actualCultivationTime * baseExpPerSecond * profile.getCultivationSpeed().doubleValue());
-                
-                // 限制单次修炼最大经验获得
-                long maxExpPerCultivation = 3600; // 单次修炼最多获得3600经验（1小时）
-                expGained = Math.min(expGained, maxExpPerCultivation);
-                
+                // 计算修炼收益，与档案接口展示的修炼进度使用同一公式
+                long expGained = gameCalculator.calculatePendingCultivationExp(profile, now);
                 profile.setExp(profile.getExp() + expGained);
                 
                 log.info("玩家修炼完成: ID={}, 修炼时间={}秒, 获得经验={}", 
                         profile.getId(), actualCultivationTime, expGained);
+
+                // 修炼日志在事务提交后异步写入，同时累加每日汇总
+                cultivationLogWriter.submit(CultivationLog.builder()
+                        .playerId(profile.getId())
+                        .cultivationTime((int) actualCultivationTime)
+                        .expGained(expGained)
+                        .spiritStonesGained(0)
+                        .cultivationPointsGained(0)
+                        .cultivationDuration(actualCultivationTime)
+                        .isOffline(false)
+                        .createdAt(now)
+                        .build());
                 
                 // 检查是否升级
                 checkLevelUp(profile);
@@ -204,7 +272,7 @@ public class PlayerService {
 
             profile.setIsCultivating(false);
             profile.setLastCultivationEnd(now);
-            playerProfileMapper.updateById(profile);
+            playerProfileCache.save(profile);
             
             log.info("玩家停止修炼: ID={}", profile.getId());
         } catch (Exception e) {
@@ -214,16 +282,36 @@ public class PlayerService {
     }
 
     /**
-     * 保存玩家档案
+     * 向已建立推送连接且正在修炼的玩家推送修炼进度，替代客户端轮询档案
+     * 只读缓存并在内存中推算，不写库
+     */
+    @Scheduled(fixedDelayString = "${app.push.cultivation-progress-interval-ms:30000}")
+    public void pushCultivationProgress() {
+        for (Integer playerId : playerEventHub.subscribedPlayerIds()) {
+            try {
+                PlayerProfile profile = playerProfileCache.get(playerId);
+                if (profile != null) {
+                    playerStatePublisher.cultivationProgress(profile);
+                }
+            } catch (Exception e) {
+                log.warn("推送修炼进度失败: ID={}", playerId, e);
+            }
+        }
+    }
+
+    /**
+     * 重置修炼状态（不结算修炼收益）
      */
     @Transactional
-    public void savePlayerProfile(PlayerProfile playerProfile) {
+    public void resetCultivation() {
         try {
-            playerProfileMapper.updateById(playerProfile);
-            log.info("保存玩家档案成功: ID={}", playerProfile.getId());
+            PlayerProfile profile = getCurrentPlayerProfile();
+            profile.setIsCultivating(false);
+            playerProfileCache.save(profile);
+            log.info("重置修炼状态成功: ID={}", profile.getId());
         } catch (Exception e) {
-            log.error("保存玩家档案失败: ID={}", playerProfile.getId(), e);
-            throw new RuntimeException("保存玩家档案失败: " + e.getMessage());
+            log.error("重置修炼状态失败", e);
+            throw new RuntimeException("重置修炼状态失败: " + e.getMessage());
         }
     }
 
@@ -231,46 +319,10 @@ public class PlayerService {
      * 检查并处理升级
      */
     private void checkLevelUp(PlayerProfile profile) {
-        // 防止无限循环，最多升级100次
-        int maxLevelUps = 100;
-        int levelUps = 0;
-        
-        while (profile.getExp() >= profile.getExpToNext() && levelUps < maxLevelUps) {
-            profile.setLevel(profile.getLevel() + 1);
-            profile.setExp(profile.getExp() - profile.getExpToNext());
-            profile.setExpToNext(profile.getExpToNext() * 2); // 下一级所需经验翻倍
-            
-            // 升级属性提升
-            profile.setAttack(profile.getAttack() + 5);
-            profile.setDefense(profile.getDefense() + 3);
-            profile.setHealth(profile.getHealth() + 20);
-            profile.setMana(profile.getMana() + 10);
-            profile.setSpeed(profile.getSpeed() + 1);
-            
-            // 更新境界
-            updateRealm(profile);
-            
-            log.info("玩家升级: ID={}, 新等级={}, 新境界={}", profile.getId(), profile.getLevel(), profile.getRealm());
-            levelUps++;
+        int levelsGained = levelProgression.applyLevelUps(profile);
+        if (levelsGained > 0) {
+            log.info("玩家升级: ID={}, 提升{}级, 新等级={}, 新境界={}",
+                    profile.getId(), levelsGained, profile.getLevel(), profile.getRealm());
         }
-        
-        if (levelUps >= maxLevelUps) {
-            log.warn("玩家升级次数过多，可能存在问题: ID={}", profile.getId());
-        }
-    }
-    
-    /**
-     * 根据等级更新境界
-     */
-    private void updateRealm(PlayerProfile profile) {
-        int level = profile.getLevel();
-        if (level >= 2001) profile.setRealm("渡劫期");
-        else if (level >= 1501) profile.setRealm("大乘期");
-        else if (level >= 1001) profile.setRealm("合体期");
-        else if (level >= 701) profile.setRealm("化神期");
-        else if (level >= 401) profile.setRealm("元婴期");
-        else if (level >= 201) profile.setRealm("金丹期");
-        else if (level >= 101) profile.setRealm("筑基期");
-        else profile.setRealm("练气期");
     }
 }
\ No newline at end of file
@@ -0,0 +1,119 @@
+package com.xiuxian.game.service;
+
+import com.xiuxian.game.entity.PlayerItem;
+import com.xiuxian.game.entity.PlayerProfile;
+import com.xiuxian.game.entity.PlayerQuest;
+import com.xiuxian.game.mapper.PlayerProfileSqlProvider;
+import com.xiuxian.game.mapper.PlayerProfileSqlProvider.Column;
+import com.xiuxian.game.util.GameCalculator;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 把玩家档案、任务和背包的变更整理成增量事件，交给PlayerEventHub推送
+ * 没有推送连接的玩家直接跳过，不构建事件内容
+ */
+@Component
+@RequiredArgsConstructor
+public class PlayerStatePublisher {
+
+    public static final String PROFILE = "profile";
+    public static final String QUEST = "quest";
+    public static final String INVENTORY = "inventory";
+
+    /**
+     * 修炼进度推算会改变的列
+     */
+    private static final long PROGRESS_COLUMNS = Column.LEVEL.mask() | Column.EXP.mask() | Column.EXP_TO_NEXT.mask()
+            | Column.REALM.mask() | Column.ATTACK.mask() | Column.DEFENSE.mask() | Column.HEALTH.mask()
+            | Column.MANA.mask() | Column.SPEED.mask();
+
+    private final PlayerEventHub playerEventHub;
+    private final GameCalculator gameCalculator;
+
+    /**
+     * 推送已提交的档案变更；修炼中的玩家推送计入未结算修炼经验后的数值，与档案接口一致
+     *
+     * @param profile 变更后的档案，只读
+     * @param columns 变更列的位掩码
+     */
+    public void profileChanged(PlayerProfile profile, long columns) {
+        if (!playerEventHub.hasSubscribers(profile.getId())) {
+            return;
+        }
+        PlayerProfile view = gameCalculator.projectCultivation(profile, LocalDateTime.now());
+        if (view != profile) {
+            columns |= PROGRESS_COLUMNS;
+        }
+        if (columns == 0) {
+            return;
+        }
+
+        Map<String, Object> delta = PlayerProfileSqlProvider.toPropertyMap(columns, view);
+        delta.put("id", view.getId());
+        if (view.getPendingCultivationExp() != null) {
+            delta.put("pendingCultivationExp", view.getPendingCultivationExp());
+        }
+        playerEventHub.publish(profile.getId(), PROFILE, delta);
+    }
+
+    /**
+     * 推送修炼进度，未在修炼的玩家不推送
+     */
+    public void cultivationProgress(PlayerProfile profile) {
+        if (Boolean.TRUE.equals(profile.getIsCultivating())) {
+            profileChanged(profile, 0L);
+        }
+    }
+
+    public void questChanged(PlayerQuest playerQuest) {
+        publishAfterCommit(playerQuest.getPlayerId(), QUEST, playerQuest);
+    }
+
+    /**
+     * 任务列表整体重建（如日常任务刷新），客户端收到后重新拉取列表
+     */
+    public void questsReset(Integer playerId) {
+        publishAfterCommit(playerId, QUEST, Collections.singletonMap("reset", true));
+    }
+
+    /**
+     * 背包格子变更，数量为0表示物品已移除
+     */
+    public void inventoryChanged(PlayerItem playerItem) {
+        if (!playerEventHub.hasSubscribers(playerItem.getPlayerId())) {
+            return;
+        }
+        Map<String, Object> delta = new LinkedHashMap<>();
+        delta.put("id", playerItem.getId());
+        delta.put("itemId", playerItem.getItemId());
+        delta.put("quantity", Math.max(0, playerItem.getQuantity()));
+        publishAfterCommit(playerItem.getPlayerId(), INVENTORY, delta);
+    }
+
+    /**
+     * 事务提交后再推送，回滚的修改不会被客户端看到
+     */
+    private void publishAfterCommit(Integer playerId, String type, Object data) {
+        if (!playerEventHub.hasSubscribers(playerId)) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    playerEventHub.publish(playerId, type, data);
+                }
+            });
+        } else {
+            playerEventHub.publish(playerId, type, data);
+        }
+    }
+}
@@ -7,7 +7,6 @@ import com.xiuxian.game.dto.response.PlayerQuestDetailResponse;
 import com.xiuxian.game.dto.response.QuestResponse;
 import com.xiuxian.game.mapper.PlayerQuestMapper;
 import com.xiuxian.game.mapper.QuestMapper;
-import com.xiuxian.game.mapper.PlayerProfileMapper;
 import com.xiuxian.game.util.GameCalculator;
 import com.xiuxian.game.util.GameConstants;
 import lombok.RequiredArgsConstructor;
@@ -28,8 +27,9 @@ public class QuestService {
 
     private final QuestMapper questMapper;
     private final PlayerQuestMapper playerQuestMapper;
-    private final PlayerProfileMapper playerProfileMapper;
+    private final PlayerProfileCache playerProfileCache;
     private final PlayerService playerService;
+    private final PlayerStatePublisher playerStatePublisher;
     private final GameCalculator gameCalculator;
     private final Random random = new Random();
 
@@ -130,6 +130,7 @@ public class QuestService {
                 })
                 .collect(Collectors.toList());
         
+        playerStatePublisher.questsReset(player.getId());
         return newQuests;
     }
 
@@ -191,7 +192,9 @@ public class QuestService {
         
         playerQuest.setUpdatedAt(LocalDateTime.now());
         playerQuestMapper.updateById(playerQuest);
-        return playerQuestMapper.selectById(playerQuest.getId());
+        PlayerQuest updated = playerQuestMapper.selectById(playerQuest.getId());
+        playerStatePublisher.questChanged(updated);
+        return updated;
     }
 
     @Transactional
@@ -215,19 +218,21 @@ public class QuestService {
             throw new IllegalArgumentException("奖励已领取");
         }
 
+        // 先以条件更新抢占领取资格，并发请求中只有更新到一行的那个才发放奖励
+        LocalDateTime now = LocalDateTime.now();
+        if (playerQuestMapper.markRewardClaimed(playerQuest.getId(), now) != 1) {
+            throw new IllegalArgumentException("奖励已领取");
+        }
+
         Quest quest = questMapper.selectById(questId);
-        PlayerProfile player = playerProfileMapper.selectById(playerId);
 
-        // 发放奖励
-        player.setExp(player.getExp() + quest.getRewardExp());
-        player.setSpiritStones(player.getSpiritStones() + quest.getRewardSpiritStones());
-        player.setContributionPoints(player.getContributionPoints() + quest.getRewardContributionPoints());
-        playerProfileMapper.updateById(player);
+        // 原子发放奖励，无需先读取玩家档案
+        playerProfileCache.credit(playerId, quest.getRewardExp(), quest.getRewardSpiritStones(),
+                quest.getRewardContributionPoints());
 
-        // 标记奖励已领取
         playerQuest.setRewardClaimed(true);
-        playerQuest.setUpdatedAt(LocalDateTime.now());
-        playerQuestMapper.updateById(playerQuest);
+        playerQuest.setUpdatedAt(now);
+        playerStatePublisher.questChanged(playerQuest);
     }
 
     // 根据类型获取玩家任务
@@ -285,12 +290,12 @@ public class QuestService {
     // 根据任务类型更新进度
     @Transactional
     public void updateQuestProgressByType(Quest.QuestType questType, int progress) {
-        PlayerProfile player = playerService.getCurrentPlayerProfile();
+        Integer playerId = playerService.getCurrentPlayerId();
         List<PlayerQuest> quests = getPlayerQuestsByType(questType);
         
         for (PlayerQuest pq : quests) {
             if (!pq.getCompleted()) {
-                updateQuestProgress(player.getId(), pq.getQuestId(), progress);
+                updateQuestProgress(playerId, pq.getQuestId(), progress);
             }
         }
     }
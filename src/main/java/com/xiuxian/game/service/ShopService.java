@@ -1,5 +1,6 @@
 package com.xiuxian.game.service;
 
+import com.xiuxian.game.aop.RetryOnConflict;
 import com.xiuxian.game.entity.Equipment;
 import com.xiuxian.game.entity.Item;
 import com.xiuxian.game.entity.PlayerProfile;
@@ -8,7 +9,6 @@ import com.xiuxian.game.dto.response.ShopItemResponse;
 import com.xiuxian.game.mapper.ItemMapper;
 import com.xiuxian.game.mapper.ShopItemMapper;
 import com.xiuxian.game.mapper.EquipmentMapper;
-import com.xiuxian.game.mapper.PlayerProfileMapper;
 import com.xiuxian.game.util.GameConstants;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
@@ -29,7 +29,7 @@ public class ShopService {
 
     private final ItemMapper itemMapper;
     private final ShopItemMapper shopItemMapper;
-    private final PlayerProfileMapper playerProfileMapper;
+    private final PlayerProfileCache playerProfileCache;
     private final InventoryService inventoryService;
     private final EquipmentService equipmentService;
     private final EquipmentMapper equipmentMapper;
@@ -90,12 +90,8 @@ public class ShopService {
     }
 
     @Transactional
+    @RetryOnConflict
     public void buyShopItem(Integer playerId, Integer shopItemId, Integer quantity) {
-        PlayerProfile player = playerProfileMapper.selectById(playerId);
-        if (player == null) {
-            throw new IllegalArgumentException("玩家不存在");
-        }
-
         ShopItem shopItem = shopItemMapper.selectById(shopItemId);
         if (shopItem == null) {
             throw new IllegalArgumentException("商品不存在");
@@ -113,15 +109,11 @@ public class ShopService {
         // 计算总价
         long totalPrice = shopItem.getTotalPrice(quantity);
         
-        // 检查玩家灵石
-        if (player.getSpiritStones() < totalPrice) {
+        // 余额充足时原子扣除灵石，无需先读取玩家档案
+        if (!playerProfileCache.debitSpiritStones(playerId, totalPrice)) {
             throw new IllegalArgumentException("灵石不足");
         }
 
-        // 扣除灵石
-        player.setSpiritStones(player.getSpiritStones() - totalPrice);
-        playerProfileMapper.updateById(player);
-
         // 减少库存
         shopItem.decreaseStock(quantity);
         shopItemMapper.updateById(shopItem);
@@ -136,14 +128,16 @@ public class ShopService {
 
     // Controller调用的buyItem方法
     @Transactional
+    @RetryOnConflict
     public void buyItem(Integer shopItemId, Integer quantity, Integer playerId) {
         buyShopItem(playerId, shopItemId, quantity);
     }
 
     // 出售物品
     @Transactional
+    @RetryOnConflict
     public void sellItem(Long playerItemId, Integer quantity, Integer playerId) {
-        PlayerProfile player = playerProfileMapper.selectById(playerId);
+        PlayerProfile player = playerProfileCache.get(playerId);
         if (player == null) {
             throw new IllegalArgumentException("玩家不存在");
         }
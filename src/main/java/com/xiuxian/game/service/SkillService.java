@@ -3,7 +3,6 @@ package com.xiuxian.game.service;
 import com.xiuxian.game.entity.PlayerProfile;
 import com.xiuxian.game.entity.PlayerSkill;
 import com.xiuxian.game.entity.Skill;
-import com.xiuxian.game.mapper.PlayerProfileMapper;
 import com.xiuxian.game.mapper.PlayerSkillMapper;
 import com.xiuxian.game.mapper.SkillMapper;
 import com.xiuxian.game.util.GameCalculator;
@@ -23,7 +22,7 @@ public class SkillService {
 
     private final SkillMapper skillMapper;
     private final PlayerSkillMapper playerSkillMapper;
-    private final PlayerProfileMapper playerProfileMapper;
+    private final PlayerProfileCache playerProfileCache;
     private final GameCalculator gameCalculator;
 
     public List<Skill> getAllSkills() {
@@ -31,7 +30,7 @@ public class SkillService {
     }
 
     public List<Skill> getAvailableSkills(Integer playerId) {
-        PlayerProfile player = playerProfileMapper.selectById(playerId);
+        PlayerProfile player = playerProfileCache.get(playerId);
         if (player == null) throw new IllegalArgumentException("玩家不存在");
         return skillMapper.selectByUnlockLevelLessThanEqual(player.getLevel());
     }
@@ -46,7 +45,7 @@ public class SkillService {
 
     @Transactional
     public PlayerSkill learnSkill(Integer skillId, Integer playerId) {
-        PlayerProfile player = playerProfileMapper.selectById(playerId);
+        PlayerProfile player = playerProfileCache.get(playerId);
         if (player == null) throw new IllegalArgumentException("玩家不存在");
         Skill skill = skillMapper.selectById(skillId);
         if (skill == null) throw new IllegalArgumentException("技能不存在");
@@ -74,24 +73,8 @@ public class SkillService {
      */
     @Transactional
     public void initializePlayerSkills(PlayerProfile player) {
-        // 获取所有1级解锁的技能
-        List<Skill> basicSkills = skillMapper.selectByUnlockLevelLessThanEqual(1);
-        
-        for (Skill skill : basicSkills) {
-            // 检查玩家是否已经拥有该技能
-            PlayerSkill existingSkill = playerSkillMapper.selectByPlayerIdAndSkillId(player.getId(), skill.getId());
-            if (existingSkill == null) {
-                PlayerSkill playerSkill = PlayerSkill.builder()
-                        .playerId(player.getId())
-                        .skillId(skill.getId())
-                        .level(1)
-                        .experience(0)
-                        .equipped(false)
-                        .slotNumber(0)
-                        .build();
-                playerSkillMapper.insert(playerSkill);
-            }
-        }
+        // 单条INSERT ... SELECT发放所有1级解锁的技能，已拥有的由唯一键忽略
+        playerSkillMapper.insertSkillsUnlockedAt(player.getId(), 1);
     }
 
     /**
@@ -1,72 +1,83 @@
 package com.xiuxian.game.util;
 
 import com.xiuxian.game.entity.PlayerProfile;
+import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Component;
 
 import java.math.BigDecimal;
-import java.util.Map;
+import java.time.Duration;
+import java.time.LocalDateTime;
 
 @Component
+@RequiredArgsConstructor
 public class GameCalculator {
 
-    private static final Map<String, BigDecimal> REALM_BONUS = Java8Compatibility.mapOf(
-        "练气期", BigDecimal.ZERO,
-        "筑基期", BigDecimal.valueOf(0.5),
-        "金丹期", BigDecimal.ONE,
-        "元婴期", BigDecimal.valueOf(2),
-        "化神期", BigDecimal.valueOf(4),
-        "合体期", BigDecimal.valueOf(8),
-        "大乘期", BigDecimal.valueOf(16),
-        "渡劫期", BigDecimal.valueOf(32)
-    );
+    private final LevelProgression levelProgression;
 
+    /**
+     * 定点数比例：倍率和修炼速度都以百分之一为单位
+     */
+    private static final long HUNDREDTHS = 100L;
+
+    /**
+     * 每秒修炼经验 = 基础经验 × (1 + 境界加成) × 修炼速度，结果向下取整
+     * 全程使用long定点运算，不创建对象；境界按等级查表，不解析境界名称
+     */
     public long calculateExpPerSecond(PlayerProfile player) {
-        BigDecimal baseExp = BigDecimal.valueOf(10);
-        BigDecimal realmBonus = REALM_BONUS.getOrDefault(player.getRealm(), BigDecimal.ZERO);
+        long realmMultiplier = HUNDREDTHS + realmOf(player).getBonusHundredths();
+        return GameConstants.BASE_EXP_PER_SECOND * realmMultiplier * speedHundredths(player.getCultivationSpeed())
+                / (HUNDREDTHS * HUNDREDTHS);
+    }
+
+    public long calculateSpiritStonesPerSecond(PlayerProfile player) {
         BigDecimal cultivationSpeed = player.getCultivationSpeed();
-        
+
         // 确保cultivationSpeed不为null，使用默认值1.0
         if (cultivationSpeed == null) {
-            cultivationSpeed = BigDecimal.ONE;
+            return 1L;
         }
 
-        return baseExp
-            .multiply(BigDecimal.ONE.add(realmBonus))
-            .multiply(cultivationSpeed)
-            .longValue();
+        return Math.max(1, (long) cultivationSpeed.doubleValue());
     }
 
-    public long calculateSpiritStonesPerSecond(PlayerProfile player) {
-        BigDecimal cultivationSpeed = player.getCultivationSpeed();
-        
-        // 确保cultivationSpeed不为null，使用默认值1.0
-        if (cultivationSpeed == null) {
-            cultivationSpeed = BigDecimal.ONE;
+    /**
+     * 进行中修炼已累积、尚未结算的经验，由开始时间、修炼速度和境界加成推算，不修改玩家档案
+     * 每秒经验 = 基础经验 × (1 + 境界加成) × 修炼速度
+     */
+    public long calculatePendingCultivationExp(PlayerProfile player, LocalDateTime now) {
+        LocalDateTime start = player.getLastCultivationStart();
+        if (!Boolean.TRUE.equals(player.getIsCultivating()) || start == null) {
+            return 0L;
         }
-        
-        return Math.max(1, cultivationSpeed.longValue());
+
+        long seconds = Math.max(0, Math.min(Duration.between(start, now).getSeconds(),
+                GameConstants.MAX_ACTIVE_CULTIVATION_SECONDS));
+        long realmMultiplier = HUNDREDTHS + realmOf(player).getBonusHundredths();
+        long exp = seconds * GameConstants.ACTIVE_CULTIVATION_EXP_PER_SECOND * realmMultiplier
+                * speedHundredths(player.getCultivationSpeed()) / (HUNDREDTHS * HUNDREDTHS);
+        return Math.min(exp, GameConstants.MAX_ACTIVE_CULTIVATION_EXP);
     }
 
-    public void checkLevelUp(PlayerProfile player) {
-        long expNeeded = player.getLevel() * 100L;
-        while (player.getExp() >= expNeeded) {
-            player.setExp(player.getExp() - expNeeded);
-            player.setLevel(player.getLevel() + 1);
-            updateRealm(player);
-            expNeeded = player.getLevel() * 100L;
+    /**
+     * 修炼中时返回计入未结算修炼经验后的档案副本（等级、境界和属性同步推算），否则原样返回
+     * 只在内存中计算，不修改传入的档案
+     */
+    public PlayerProfile projectCultivation(PlayerProfile player, LocalDateTime now) {
+        if (!Boolean.TRUE.equals(player.getIsCultivating())) {
+            return player;
         }
+        long pendingExp = calculatePendingCultivationExp(player, now);
+        PlayerProfile projected = player.toBuilder().build();
+        levelProgression.applyExp(projected, pendingExp);
+        projected.setPendingCultivationExp(pendingExp);
+        return projected;
     }
 
-    private void updateRealm(PlayerProfile player) {
-        int level = player.getLevel();
-        if (level >= 2001) player.setRealm("渡劫期");
-        else if (level >= 1501) player.setRealm("大乘期");
-        else if (level >= 1001) player.setRealm("合体期");
-        else if (level >= 701) player.setRealm("化神期");
-        else if (level >= 401) player.setRealm("元婴期");
-        else if (level >= 201) player.setRealm("金丹期");
-        else if (level >= 101) player.setRealm("筑基期");
-        else player.setRealm("练气期");
+    /**
+     * 结算升级（等级、剩余经验、境界和属性成长）
+     */
+    public void checkLevelUp(PlayerProfile player) {
+        levelProgression.applyLevelUps(player);
     }
 
     public long calculateOfflineRewards(PlayerProfile player, long offlineSeconds) {
@@ -114,7 +125,7 @@ public class GameCalculator {
      * 计算技能伤害修正（基于玩家境界）
      */
     public double calculateRealmDamageBonus(String realm) {
-        return REALM_BONUS.getOrDefault(realm, BigDecimal.ZERO).doubleValue();
+        return Realm.fromDisplayName(realm).getBonus();
     }
 
     /**
@@ -133,7 +144,25 @@ public class GameCalculator {
      */
     public double calculateRealmCooldownBonus(String realm) {
         // 高境界可以略微减少技能冷却时间
-        BigDecimal bonus = REALM_BONUS.getOrDefault(realm, BigDecimal.ZERO);
-        return Math.min(bonus.doubleValue() * 0.1, 0.5); // 最多减少50%冷却时间
+        return Math.min(Realm.fromDisplayName(realm).getBonus() * 0.1, 0.5); // 最多减少50%冷却时间
+    }
+
+    /**
+     * 按等级从成长表取境界（数组下标访问），境界的中文名称只在展示时使用
+     */
+    private Realm realmOf(PlayerProfile player) {
+        Integer level = player.getLevel();
+        return levelProgression.realmOf(level != null ? level : 1);
+    }
+
+    /**
+     * 修炼速度换算为百分之一单位（数据库精度为两位小数），为null时按1.0计算
+     * BigDecimal.doubleValue对精度较小的数值不创建对象
+     */
+    private static long speedHundredths(BigDecimal cultivationSpeed) {
+        if (cultivationSpeed == null) {
+            return HUNDREDTHS;
+        }
+        return Math.round(cultivationSpeed.doubleValue() * HUNDREDTHS);
     }
 }
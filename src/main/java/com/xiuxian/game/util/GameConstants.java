@@ -7,20 +7,22 @@ public class GameConstants {
     public static final long BASE_SPIRIT_STONES_PER_SECOND = 1L;
     public static final long MAX_OFFLINE_TIME_SECONDS = 24 * 60 * 60; // 24小时
     public static final long MIN_OFFLINE_TIME_FOR_REWARD = 60; // 1分钟
+    public static final long ACTIVE_CULTIVATION_EXP_PER_SECOND = 1L;
+    public static final long MAX_ACTIVE_CULTIVATION_SECONDS = 24 * 60 * 60; // 单次修炼最多按24小时计算
+    public static final long MAX_ACTIVE_CULTIVATION_EXP = 3600; // 单次修炼最多获得3600经验
 
     // 等级相关常量
     public static final int BASE_EXP_PER_LEVEL = 100;
     public static final int REALM_CHANGE_INTERVAL = 100; // 每100级提升一个境界
 
-    // 境界配置
-    public static final String[] REALMS = {
-        "练气期", "筑基期", "金丹期", "元婴期", 
-        "化神期", "合体期", "大乘期", "渡劫期"
-    };
+    // 每升一级的属性成长
+    public static final int LEVEL_UP_ATTACK = 5;
+    public static final int LEVEL_UP_DEFENSE = 3;
+    public static final int LEVEL_UP_HEALTH = 20;
+    public static final int LEVEL_UP_MANA = 10;
+    public static final int LEVEL_UP_SPEED = 1;
 
-    public static final int[] REALM_LEVEL_THRESHOLDS = {
-        1, 101, 201, 401, 701, 1001, 1501, 2001
-    };
+    // 境界配置见Realm枚举
 
     // 装备相关常量
     public static final String[] EQUIPMENT_SLOTS = {
@@ -76,6 +78,9 @@ public class GameConstants {
     public static final int MAX_SKILL_LEVEL = 100;
     public static final int MAX_EQUIPMENT_ENHANCE_LEVEL = 20;
     public static final int MAX_INVENTORY_SLOTS = 200;
+    public static final int DEFAULT_CULTIVATION_LOG_PAGE_SIZE = 20;
+    public static final int MAX_CULTIVATION_LOG_PAGE_SIZE = 100;
+    public static final int MAX_CULTIVATION_STATS_DAYS = 90;
 
     // 错误消息
     public static final String ERROR_PLAYER_NOT_FOUND = "玩家不存在";
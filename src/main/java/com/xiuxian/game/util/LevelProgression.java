@@ -0,0 +1,266 @@
+package com.xiuxian.game.util;
+
+import com.xiuxian.game.entity.CultivationLevel;
+import com.xiuxian.game.entity.PlayerProfile;
+import com.xiuxian.game.mapper.CultivationLevelMapper;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 等级成长引擎
+ * 成长表来自cultivation_levels：表中定义的等级使用其经验区间、境界和属性加成；
+ * 表外的等级从表的最后一级接着按公式成长：每级所需经验在最后一个区间的基础上每级增加BASE_EXP_PER_LEVEL，
+ * 属性按GameConstants.LEVEL_UP_*累加，境界按Realm各境界的等级跨度顺延（表中最后一个境界从它在表中出现的等级起算）。
+ * 没有配置表时等同于原公式（第L级升到L+1级需要 L * BASE_EXP_PER_LEVEL 经验，境界按Realm.minLevel划分）。
+ * 成长表是只读的基本类型数组，启动时加载、定时重新加载后整体替换引用，读取方不加锁也不访问数据库。
+ * 升级时把(等级, 当前经验, 获得经验)换算成累计经验后二分查找新等级，耗时O(log n)，与获得经验的多少无关。
+ */
+@Slf4j
+@Component
+public class LevelProgression {
+
+    private final CultivationLevelMapper cultivationLevelMapper;
+    private final int maxLevel;
+
+    private volatile Table table;
+
+    public LevelProgression(CultivationLevelMapper cultivationLevelMapper) {
+        this.cultivationLevelMapper = cultivationLevelMapper;
+        this.maxLevel = GameConstants.MAX_PLAYER_LEVEL;
+        this.table = Table.build(Collections.<CultivationLevel>emptyList(), maxLevel);
+    }
+
+    @PostConstruct
+    public void init() {
+        reload();
+        log.info("等级成长表加载完成: 配置等级数={}, 最高等级={}", table.configuredLevels, maxLevel);
+    }
+
+    /**
+     * 从cultivation_levels重新构建成长表，配置无效或查询失败时保留当前成长表
+     */
+    @Scheduled(fixedDelayString = "${app.game.progression.reload-interval-ms:300000}",
+            initialDelayString = "${app.game.progression.reload-interval-ms:300000}")
+    public void reload() {
+        try {
+            table = Table.build(cultivationLevelMapper.selectAllOrderByLevel(), maxLevel);
+        } catch (Exception e) {
+            log.warn("加载修炼等级配置失败，继续使用当前成长表: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 从level级升到下一级所需的经验
+     */
+    public long expToNext(int level) {
+        return table.expToNext[clampLevel(level)];
+    }
+
+    public Realm realmOf(int level) {
+        return table.realmByLevel[clampLevel(level)];
+    }
+
+    /**
+     * 计算获得经验后的等级、剩余经验和属性成长
+     *
+     * @param level  当前等级
+     * @param exp    当前等级内已有的经验
+     * @param gained 新获得的经验
+     */
+    public LevelUpResult advance(int level, long exp, long gained) {
+        Table t = table;
+        int current = clampLevel(level);
+        long total = saturatedAdd(saturatedAdd(t.cumulativeExp[current], Math.max(0, exp)), Math.max(0, gained));
+
+        // 最后一个累计经验不超过total的等级
+        int index = Arrays.binarySearch(t.cumulativeExp, 1, maxLevel + 1, total);
+        int newLevel = index >= 0 ? index : -index - 2;
+        newLevel = Math.max(current, Math.min(newLevel, maxLevel));
+
+        return new LevelUpResult(newLevel,
+                total - t.cumulativeExp[newLevel],
+                t.expToNext[newLevel],
+                t.realmByLevel[newLevel],
+                newLevel - current,
+                t.attack[newLevel] - t.attack[current],
+                t.defense[newLevel] - t.defense[current],
+                t.health[newLevel] - t.health[current],
+                t.mana[newLevel] - t.mana[current],
+                t.speed[newLevel] - t.speed[current]);
+    }
+
+    /**
+     * 按玩家当前经验结算升级，直接修改玩家档案
+     *
+     * @return 提升的等级数
+     */
+    public int applyLevelUps(PlayerProfile player) {
+        return applyExp(player, 0L);
+    }
+
+    /**
+     * 为玩家增加经验并结算升级，直接修改玩家档案
+     *
+     * @return 提升的等级数
+     */
+    public int applyExp(PlayerProfile player, long gained) {
+        LevelUpResult result = advance(player.getLevel(), player.getExp(), gained);
+
+        player.setLevel(result.getLevel());
+        player.setExp(result.getRemainingExp());
+        player.setExpToNext(result.getExpToNext());
+        player.setRealm(result.getRealm().getDisplayName());
+
+        int levels = result.getLevelsGained();
+        if (levels > 0) {
+            player.setAttack(player.getAttack() + result.getAttackDelta());
+            player.setDefense(player.getDefense() + result.getDefenseDelta());
+            player.setHealth(player.getHealth() + result.getHealthDelta());
+            player.setMana(player.getMana() + result.getManaDelta());
+            player.setSpeed(player.getSpeed() + result.getSpeedDelta());
+        }
+        return levels;
+    }
+
+    private int clampLevel(int level) {
+        return Math.max(1, Math.min(level, maxLevel));
+    }
+
+    private static long saturatedAdd(long a, long b) {
+        long sum = a + b;
+        return sum < 0 ? Long.MAX_VALUE : sum;
+    }
+
+    /**
+     * 不可变成长表，数组下标为等级，下标0不使用
+     */
+    static final class Table {
+
+        final int configuredLevels;
+
+        /**
+         * cumulativeExp[L]：从1级升到L级所需的累计经验
+         */
+        final long[] cumulativeExp;
+        final long[] expToNext;
+        final Realm[] realmByLevel;
+
+        /**
+         * 各属性相对1级的累计成长，两级之差即升级获得的属性
+         */
+        final int[] attack;
+        final int[] defense;
+        final int[] health;
+        final int[] mana;
+        final int[] speed;
+
+        private Table(int configuredLevels, int maxLevel) {
+            this.configuredLevels = configuredLevels;
+            this.cumulativeExp = new long[maxLevel + 1];
+            this.expToNext = new long[maxLevel + 1];
+            this.realmByLevel = new Realm[maxLevel + 1];
+            this.attack = new int[maxLevel + 1];
+            this.defense = new int[maxLevel + 1];
+            this.health = new int[maxLevel + 1];
+            this.mana = new int[maxLevel + 1];
+            this.speed = new int[maxLevel + 1];
+        }
+
+        /**
+         * 由按等级升序的配置行构建成长表，配置行须从1级开始连续且经验区间首尾相接，境界只升不降
+         */
+        static Table build(List<CultivationLevel> rows, int maxLevel) {
+            int configured = Math.min(rows.size(), maxLevel);
+            Table t = new Table(configured, maxLevel);
+            CultivationLevel first = configured > 0 ? rows.get(0) : null;
+            Realm realm = Realm.LIAN_QI;
+            int realmStart = 1;
+
+            for (int level = 1; level <= maxLevel; level++) {
+                if (level <= configured) {
+                    CultivationLevel row = rows.get(level - 1);
+                    validate(row, level, level < configured ? rows.get(level) : null);
+
+                    t.expToNext[level] = row.getMaxExp() - row.getMinExp();
+                    t.attack[level] = row.getAttackBonus() - first.getAttackBonus();
+                    t.defense[level] = row.getDefenseBonus() - first.getDefenseBonus();
+                    t.health[level] = row.getHealthBonus() - first.getHealthBonus();
+                    t.mana[level] = row.getManaBonus() - first.getManaBonus();
+                    Realm named = Realm.ofStageName(row.getName());
+                    if (named != null && named.ordinal() < realm.ordinal()) {
+                        throw new IllegalArgumentException("修炼等级境界倒退: 等级" + level + ", " + row.getName());
+                    }
+                    if (named != null && named != realm) {
+                        realm = named;
+                        realmStart = level;
+                    }
+                } else {
+                    // 接着表的最后一个区间增长，没有配置表时即 level * BASE_EXP_PER_LEVEL
+                    t.expToNext[level] = level > 1
+                            ? t.expToNext[level - 1] + GameConstants.BASE_EXP_PER_LEVEL
+                            : GameConstants.BASE_EXP_PER_LEVEL;
+                    if (level > 1) {
+                        t.attack[level] = t.attack[level - 1] + GameConstants.LEVEL_UP_ATTACK;
+                        t.defense[level] = t.defense[level - 1] + GameConstants.LEVEL_UP_DEFENSE;
+                        t.health[level] = t.health[level - 1] + GameConstants.LEVEL_UP_HEALTH;
+                        t.mana[level] = t.mana[level - 1] + GameConstants.LEVEL_UP_MANA;
+                    }
+                    // 当前境界在表中从realmStart开始，对应Realm中的minLevel，按同样的偏移顺延后续境界
+                    Realm next = Realm.ofLevel(level - realmStart + realm.getMinLevel());
+                    if (next != realm) {
+                        realm = next;
+                        realmStart = level;
+                    }
+                }
+                if (level > 1) {
+                    t.cumulativeExp[level] = t.cumulativeExp[level - 1] + t.expToNext[level - 1];
+                }
+                t.speed[level] = (level - 1) * GameConstants.LEVEL_UP_SPEED;
+                t.realmByLevel[level] = realm;
+            }
+            return t;
+        }
+
+        private static void validate(CultivationLevel row, int level, CultivationLevel next) {
+            if (row.getLevel() == null || row.getLevel() != level) {
+                throw new IllegalArgumentException("修炼等级不连续: 期望等级" + level + ", 实际" + row.getLevel());
+            }
+            if (row.getMinExp() == null || row.getMaxExp() == null || row.getMaxExp() <= row.getMinExp()) {
+                throw new IllegalArgumentException("修炼等级经验区间无效: 等级" + level);
+            }
+            if (level == 1 && row.getMinExp() != 0) {
+                throw new IllegalArgumentException("1级的最低经验必须为0");
+            }
+            if (next != null && next.getMinExp() != null && !next.getMinExp().equals(row.getMaxExp())) {
+                throw new IllegalArgumentException("修炼等级经验区间不连续: 等级" + level);
+            }
+            if (row.getAttackBonus() == null || row.getDefenseBonus() == null
+                    || row.getHealthBonus() == null || row.getManaBonus() == null) {
+                throw new IllegalArgumentException("修炼等级属性加成缺失: 等级" + level);
+            }
+        }
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class LevelUpResult {
+        private final int level;
+        private final long remainingExp;
+        private final long expToNext;
+        private final Realm realm;
+        private final int levelsGained;
+        private final int attackDelta;
+        private final int defenseDelta;
+        private final int healthDelta;
+        private final int manaDelta;
+        private final int speedDelta;
+    }
+}
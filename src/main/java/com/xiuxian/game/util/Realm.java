@@ -0,0 +1,96 @@
+package com.xiuxian.game.util;
+
+/**
+ * 修炼境界
+ * 携带起始等级和修炼加成；加成以百分之一为单位的定点整数保存，计算时不需要BigDecimal。
+ */
+public enum Realm {
+
+    LIAN_QI("练气期", 1, 0),
+    ZHU_JI("筑基期", 101, 50),
+    JIN_DAN("金丹期", 201, 100),
+    YUAN_YING("元婴期", 401, 200),
+    HUA_SHEN("化神期", 701, 400),
+    HE_TI("合体期", 1001, 800),
+    DA_CHENG("大乘期", 1501, 1600),
+    DU_JIE("渡劫期", 2001, 3200);
+
+    private static final Realm[] VALUES = values();
+
+    private final String displayName;
+    private final int minLevel;
+    private final int bonusHundredths;
+    private final double bonus;
+
+    Realm(String displayName, int minLevel, int bonusHundredths) {
+        this.displayName = displayName;
+        this.minLevel = minLevel;
+        this.bonusHundredths = bonusHundredths;
+        this.bonus = bonusHundredths / 100.0;
+    }
+
+    public String getDisplayName() {
+        return displayName;
+    }
+
+    public int getMinLevel() {
+        return minLevel;
+    }
+
+    /**
+     * 修炼加成（百分之一为单位），例如筑基期为50，表示+0.5
+     */
+    public int getBonusHundredths() {
+        return bonusHundredths;
+    }
+
+    public double getBonus() {
+        return bonus;
+    }
+
+    /**
+     * 等级对应的境界
+     */
+    public static Realm ofLevel(int level) {
+        for (int i = VALUES.length - 1; i > 0; i--) {
+            if (level >= VALUES[i].minLevel) {
+                return VALUES[i];
+            }
+        }
+        return LIAN_QI;
+    }
+
+    /**
+     * 按等级名称（如“筑基期三层”）解析所属境界，无法识别时返回null
+     */
+    public static Realm ofStageName(String stageName) {
+        if (stageName == null) {
+            return null;
+        }
+        for (Realm realm : VALUES) {
+            if (stageName.startsWith(realm.displayName)) {
+                return realm;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 按中文名称查找境界，未知名称返回练气期（无加成）
+     */
+    public static Realm fromDisplayName(String displayName) {
+        if (displayName == null) {
+            return LIAN_QI;
+        }
+        switch (displayName) {
+            case "筑基期": return ZHU_JI;
+            case "金丹期": return JIN_DAN;
+            case "元婴期": return YUAN_YING;
+            case "化神期": return HUA_SHEN;
+            case "合体期": return HE_TI;
+            case "大乘期": return DA_CHENG;
+            case "渡劫期": return DU_JIE;
+            default: return LIAN_QI;
+        }
+    }
+}
@@ -15,6 +15,48 @@ Date: 2025-11-13 13:47:59
 
 SET FOREIGN_KEY_CHECKS=0;
 
+-- 已有数据库升级（乐观锁版本号）：
+-- ALTER TABLE `player_profiles` ADD COLUMN `version` int NOT NULL DEFAULT '0';
+-- ALTER TABLE `player_items` ADD COLUMN `version` int NOT NULL DEFAULT '0';
+-- ALTER TABLE `player_equipment` ADD COLUMN `version` int NOT NULL DEFAULT '0';
+
+-- 已有数据库升级（修炼日志游标分页覆盖索引）：
+-- ALTER TABLE `cultivation_logs` ADD KEY `idx_player_created_id` (`player_id`,`created_at`,`id`,`exp_gained`,`spirit_stones_gained`,`cultivation_duration`,`is_offline`), DROP KEY `idx_player_id`;
+
+-- 已有数据库升级（修炼每日汇总）：执行下方cultivation_daily_player_stats、cultivation_daily_stats的建表语句
+
+-- ----------------------------
+-- Table structure for cultivation_daily_player_stats
+-- ----------------------------
+DROP TABLE IF EXISTS `cultivation_daily_player_stats`;
+CREATE TABLE `cultivation_daily_player_stats` (
+  `stat_date` date NOT NULL,
+  `player_id` int NOT NULL,
+  `log_count` int NOT NULL DEFAULT '0',
+  `offline_count` int NOT NULL DEFAULT '0',
+  `cultivation_seconds` bigint NOT NULL DEFAULT '0',
+  `exp_gained` bigint NOT NULL DEFAULT '0',
+  `spirit_stones_gained` bigint NOT NULL DEFAULT '0',
+  `updated_at` timestamp NOT NULL,
+  PRIMARY KEY (`stat_date`,`player_id`),
+  KEY `idx_player_date` (`player_id`,`stat_date`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
+
+-- ----------------------------
+-- Table structure for cultivation_daily_stats
+-- ----------------------------
+DROP TABLE IF EXISTS `cultivation_daily_stats`;
+CREATE TABLE `cultivation_daily_stats` (
+  `stat_date` date NOT NULL,
+  `log_count` int NOT NULL DEFAULT '0',
+  `offline_count` int NOT NULL DEFAULT '0',
+  `cultivation_seconds` bigint NOT NULL DEFAULT '0',
+  `exp_gained` bigint NOT NULL DEFAULT '0',
+  `spirit_stones_gained` bigint NOT NULL DEFAULT '0',
+  `updated_at` timestamp NOT NULL,
+  PRIMARY KEY (`stat_date`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
+
 -- ----------------------------
 -- Table structure for cultivation_levels
 -- ----------------------------
@@ -73,7 +115,7 @@ CREATE TABLE `cultivation_logs` (
   `is_offline` bit(1) NOT NULL,
   `spirit_stones_gained` int NOT NULL,
   PRIMARY KEY (`id`),
-  KEY `idx_player_id` (`player_id`),
+  KEY `idx_player_created_id` (`player_id`,`created_at`,`id`,`exp_gained`,`spirit_stones_gained`,`cultivation_duration`,`is_offline`),
   KEY `idx_created_at` (`created_at`),
   CONSTRAINT `cultivation_logs_ibfk_1` FOREIGN KEY (`player_id`) REFERENCES `player_profiles` (`id`) ON DELETE CASCADE
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
@@ -232,6 +274,7 @@ CREATE TABLE `player_equipment` (
   `max_durability` int NOT NULL DEFAULT '100',
   `created_at` timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP,
   `updated_at` timestamp NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
+  `version` int NOT NULL DEFAULT '0',
   PRIMARY KEY (`id`),
   KEY `idx_player_id` (`player_id`),
   KEY `idx_equipment_id` (`equipment_id`),
@@ -281,6 +324,7 @@ CREATE TABLE `player_items` (
   `quantity` int NOT NULL DEFAULT '1',
   `created_at` timestamp NOT NULL,
   `updated_at` timestamp NOT NULL,
+  `version` int NOT NULL DEFAULT '0',
   PRIMARY KEY (`id`),
   UNIQUE KEY `uk_player_item` (`player_id`,`item_id`),
   KEY `idx_player_id` (`player_id`),
@@ -326,6 +370,7 @@ CREATE TABLE `player_profiles` (
   `last_cultivation_end` datetime(6) DEFAULT NULL,
   `last_cultivation_start` datetime(6) DEFAULT NULL,
   `exp_to_next` bigint NOT NULL,
+  `version` int NOT NULL DEFAULT '0',
   PRIMARY KEY (`id`),
   UNIQUE KEY `user_id` (`user_id`),
   KEY `idx_user_id` (`user_id`),
@@ -337,8 +382,8 @@ CREATE TABLE `player_profiles` (
 -- ----------------------------
 -- Records of player_profiles
 -- ----------------------------
-INSERT INTO `player_profiles` VALUES ('4', '4', 'shaun', '601', '3702', '元婴期', '1.00', '1004', '4', '0', '2025-11-07 14:43:06', '65', '3010', '1810', '12100', '6050', '610', '2025-11-07 14:43:06', '2025-11-12 17:09:17', '0', '0', '0', '0', '0', '', '2025-11-12 17:00:20.228000', '2025-11-12 17:09:17.042000', '0');
-INSERT INTO `player_profiles` VALUES ('5', '5', 'shaun1', '1', '31', '练气期', '1.00', '1000', '0', '0', '2025-11-12 11:05:59', '0', '10', '5', '100', '50', '10', '2025-11-12 11:05:59', '2025-11-12 11:06:53', '0', '0', '0', '0', '0', '\0', '2025-11-12 11:06:52.748000', '2025-11-12 11:06:32.957000', '100');
+INSERT INTO `player_profiles` VALUES ('4', '4', 'shaun', '601', '3702', '元婴期', '1.00', '1004', '4', '0', '2025-11-07 14:43:06', '65', '3010', '1810', '12100', '6050', '610', '2025-11-07 14:43:06', '2025-11-12 17:09:17', '0', '0', '0', '0', '0', '', '2025-11-12 17:00:20.228000', '2025-11-12 17:09:17.042000', '0', '0');
+INSERT INTO `player_profiles` VALUES ('5', '5', 'shaun1', '1', '31', '练气期', '1.00', '1000', '0', '0', '2025-11-12 11:05:59', '0', '10', '5', '100', '50', '10', '2025-11-12 11:05:59', '2025-11-12 11:06:53', '0', '0', '0', '0', '0', '\0', '2025-11-12 11:06:52.748000', '2025-11-12 11:06:32.957000', '100', '0');
 
 -- ----------------------------
 -- Table structure for player_quests
@@ -9,6 +9,8 @@ class ApiClient {
     constructor() {
         this.baseURL = API_CONFIG.baseURL;
         this.token = localStorage.getItem('authToken');
+        this.refreshToken = localStorage.getItem('refreshToken');
+        this.refreshing = null;
     }
 
     setToken(token) {
@@ -16,12 +18,47 @@ class ApiClient {
         localStorage.setItem('authToken', token);
     }
 
+    setRefreshToken(refreshToken) {
+        this.refreshToken = refreshToken;
+        localStorage.setItem('refreshToken', refreshToken);
+    }
+
     clearToken() {
         this.token = null;
+        this.refreshToken = null;
         localStorage.removeItem('authToken');
+        localStorage.removeItem('refreshToken');
+    }
+
+    // 使用刷新令牌换取新的访问令牌，并发请求共享同一次刷新
+    async refreshAccessToken() {
+        if (!this.refreshToken) {
+            return false;
+        }
+        if (!this.refreshing) {
+            this.refreshing = fetch(this.baseURL + '/auth/refresh', {
+                method: 'POST',
+                headers: { 'Content-Type': 'application/json' },
+                body: JSON.stringify({ refreshToken: this.refreshToken })
+            })
+                .then(response => response.ok ? response.json() : null)
+                .then(result => {
+                    if (result && result.success && result.data?.token) {
+                        this.setToken(result.data.token);
+                        this.setRefreshToken(result.data.refreshToken);
+                        return true;
+                    }
+                    return false;
+                })
+                .catch(() => false)
+                .finally(() => {
+                    this.refreshing = null;
+                });
+        }
+        return this.refreshing;
     }
 
-    async request(method, url, data = null) {
+    async request(method, url, data = null, retried = false) {
         const config = {
             method,
             headers: {
@@ -41,6 +78,12 @@ class ApiClient {
             const response = await fetch(this.baseURL + url, config);
 
             if (!response.ok) {
+                // 访问令牌过期时先尝试刷新，成功后重试一次
+                if ((response.status === 401 || response.status === 403) && !retried && this.refreshToken
+                        && await this.refreshAccessToken()) {
+                    return this.request(method, url, data, true);
+                }
+
                 // 处理401未授权和403禁止访问
                 if (response.status === 401) {
                     this.clearToken();
@@ -99,6 +142,115 @@ class ApiClient {
 // 创建API客户端实例
 const api = new ApiClient();
 
+// 玩家状态推送订阅（SSE）
+// 使用fetch读取事件流以便携带Authorization头，断线后按指数退避自动重连
+class PlayerEventStream {
+    constructor(client, handlers) {
+        this.client = client;
+        this.handlers = handlers || {};
+        this.controller = null;
+        this.connected = false;
+        this.closed = false;
+        this.retryDelay = 1000;
+    }
+
+    open() {
+        this.closed = false;
+        this.connect();
+        return this;
+    }
+
+    close() {
+        this.closed = true;
+        this.connected = false;
+        if (this.controller) {
+            this.controller.abort();
+            this.controller = null;
+        }
+    }
+
+    async connect(retried = false) {
+        if (this.closed || !this.client.token) {
+            return;
+        }
+        this.controller = new AbortController();
+        try {
+            const response = await fetch(this.client.baseURL + '/player/events', {
+                headers: {
+                    'Accept': 'text/event-stream',
+                    'Authorization': `Bearer ${this.client.token}`
+                },
+                signal: this.controller.signal
+            });
+
+            if ((response.status === 401 || response.status === 403) && !retried
+                    && await this.client.refreshAccessToken()) {
+                return this.connect(true);
+            }
+            if (!response.ok || !response.body) {
+                throw new Error(`HTTP ${response.status}`);
+            }
+
+            this.connected = true;
+            this.retryDelay = 1000;
+            await this.read(response.body.getReader());
+        } catch (error) {
+            if (!this.closed) {
+                console.warn('推送连接中断:', error.message);
+            }
+        }
+
+        this.connected = false;
+        if (!this.closed) {
+            setTimeout(() => this.connect(), this.retryDelay);
+            this.retryDelay = Math.min(this.retryDelay * 2, 30000);
+        }
+    }
+
+    async read(reader) {
+        const decoder = new TextDecoder();
+        let buffer = '';
+        while (true) {
+            const { value, done } = await reader.read();
+            if (done) {
+                return;
+            }
+            buffer += decoder.decode(value, { stream: true });
+
+            let boundary;
+            while ((boundary = buffer.indexOf('\n\n')) >= 0) {
+                this.dispatch(buffer.slice(0, boundary));
+                buffer = buffer.slice(boundary + 2);
+            }
+        }
+    }
+
+    dispatch(frame) {
+        let type = 'message';
+        const data = [];
+        frame.split('\n').forEach(line => {
+            if (line.startsWith('event:')) {
+                type = line.slice(6).trim();
+            } else if (line.startsWith('data:')) {
+                data.push(line.slice(5).trim());
+            }
+        });
+        // 只有注释的心跳帧没有数据
+        if (data.length === 0) {
+            return;
+        }
+
+        const handler = this.handlers[type];
+        if (handler) {
+            try {
+                handler(JSON.parse(data.join('\n')));
+            } catch (error) {
+                console.error('处理推送事件失败:', type, error);
+            }
+        }
+    }
+}
+
 // 游戏API方法
 const gameAPI = {
     // 认证相关
@@ -106,6 +258,9 @@ const gameAPI = {
         const response = await api.post('/auth/login', { username, password });
         if (response.success && response.data?.token) {
             api.setToken(response.data.token);
+            if (response.data.refreshToken) {
+                api.setRefreshToken(response.data.refreshToken);
+            }
         }
         return response;
     },
@@ -123,7 +278,7 @@ const gameAPI = {
     },
 
     async logout() {
-        const response = await api.post('/auth/logout');
+        const response = await api.post('/auth/logout', { refreshToken: api.refreshToken });
         api.clearToken();
         return response;
     },
@@ -133,6 +288,11 @@ const gameAPI = {
         return await api.get('/player/profile');
     },
 
+    // 订阅玩家状态推送，handlers按事件类型（profile、quest、inventory）处理增量
+    subscribePlayerEvents(handlers) {
+        return new PlayerEventStream(api, handlers).open();
+    },
+
     // 修炼相关
     async startCultivation() {
         return await api.post('/player/cultivate');
@@ -142,6 +302,10 @@ const gameAPI = {
         return await api.post('/player/cultivate/stop');
     },
 
+    async previewOfflineRewards() {
+        return await api.get('/player/offline-rewards/preview');
+    },
+
     async claimOfflineRewards() {
         return await api.post('/player/claim-offline-rewards');
     },
@@ -336,10 +336,14 @@ class AuthManager {
         }
 
         localStorage.removeItem('authToken');
+        localStorage.removeItem('refreshToken');
     }
 
     // 登出
     async logout() {
+        if (window.gameManager) {
+            window.gameManager.closeEvents();
+        }
         try {
             await gameAPI.logout();
         } catch (error) {
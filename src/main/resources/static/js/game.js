@@ -7,6 +7,7 @@ class GameManager {
         this.lastCultivationStart = null;
         this.isInitialized = false;
         this.dataRefreshTimer = null;
+        this.eventStream = null;
     }
 
     // 初始化 - 只在认证后调用
@@ -15,9 +16,56 @@ class GameManager {
         
         this.bindEvents();
         await this.initCultivationStatus();
+        this.subscribeEvents();
+        this.showOfflineRewardsPreview();
         this.isInitialized = true;
     }
 
+    // 展示离线期间的收益（只读预览，领取前不改变档案）
+    async showOfflineRewardsPreview() {
+        try {
+            const response = await gameAPI.previewOfflineRewards();
+            const rewards = response.success ? response.data : null;
+            if (rewards && rewards.offlineMinutes > 0) {
+                this.addCultivationLog(`离线${rewards.offlineMinutes}分钟，可领取修为 x ${rewards.expGained}，灵石 x ${rewards.spiritStonesGained}`);
+            }
+        } catch (error) {
+            console.warn('获取离线收益预览失败:', error);
+        }
+    }
+
+    // 订阅服务端推送，档案、任务、背包变化时由服务端推送增量，不再轮询
+    subscribeEvents() {
+        if (this.eventStream) return;
+
+        this.eventStream = gameAPI.subscribePlayerEvents({
+            profile: (delta) => {
+                if (window.authManager && window.authManager.player) {
+                    Object.assign(window.authManager.player, delta);
+                    window.authManager.updatePlayerUI();
+                }
+            },
+            quest: () => {
+                if (typeof this.loadQuests === 'function') {
+                    this.loadQuests();
+                }
+            },
+            inventory: () => {
+                if (typeof this.loadInventory === 'function') {
+                    this.loadInventory();
+                }
+            }
+        });
+    }
+
+    // 关闭推送订阅（登出时调用）
+    closeEvents() {
+        if (this.eventStream) {
+            this.eventStream.close();
+            this.eventStream = null;
+        }
+    }
+
     // 初始化修炼状态 - 页面刷新时自动停止修炼
     async initCultivationStatus() {
         try {
@@ -200,8 +248,9 @@ class GameManager {
             this.cultivationTime++;
             this.updateCultivationDisplay();
             
-            // 每30秒刷新一次玩家数据，显示经验变化
-            if (this.cultivationTime % 30 === 0) {
+            // 修炼进度由服务端推送；推送连接不可用时退回每30秒刷新一次
+            const streaming = this.eventStream && this.eventStream.connected;
+            if (!streaming && this.cultivationTime % 30 === 0) {
                 this.refreshPlayerData();
             }
         }, 1000);
@@ -388,6 +437,9 @@ window.initGameManager = async function() {
         
         // 导出到全局作用域
         window.gameManager = gameManager;
+    } else {
+        // 重新登录后恢复推送订阅
+        gameManager.subscribeEvents();
     }
     return gameManager;
 };
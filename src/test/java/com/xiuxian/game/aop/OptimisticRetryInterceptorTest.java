@@ -0,0 +1,233 @@
+package com.xiuxian.game.aop;
+
+import com.xiuxian.game.config.RetryConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.aop.Advisor;
+import org.springframework.aop.framework.Advised;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.support.PropertySourcesPlaceholderConfigurer;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.EnableTransactionManagement;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.interceptor.TransactionInterceptor;
+import org.springframework.transaction.support.AbstractPlatformTransactionManager;
+import org.springframework.transaction.support.DefaultTransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 通过与生产环境相同的基础设施自动代理织入重试和事务拦截器，验证每次重试都在新事务中执行
+ */
+class OptimisticRetryInterceptorTest {
+
+    private AnnotationConfigApplicationContext context;
+    private ConflictingService service;
+    private RecordingTransactionManager transactionManager;
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        context = new AnnotationConfigApplicationContext();
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("app.game.retry.max-attempts", "3");
+        // 测试中不等待退避
+        properties.put("app.game.retry.base-backoff-ms", "0");
+        properties.put("app.game.retry.max-backoff-ms", "0");
+        context.getEnvironment().getPropertySources().addFirst(new MapPropertySource("test", properties));
+        context.register(TestConfig.class, RetryConfig.class);
+        context.refresh();
+
+        service = context.getBean(ConflictingService.class);
+        transactionManager = context.getBean(RecordingTransactionManager.class);
+        meterRegistry = context.getBean(SimpleMeterRegistry.class);
+    }
+
+    @AfterEach
+    void tearDown() {
+        context.close();
+    }
+
+    @Test
+    void retryAdvisorIsOrderedOutsideTransactionAdvisor() {
+        Advisor[] advisors = ((Advised) service).getAdvisors();
+
+        assertEquals(2, advisors.length);
+        assertTrue(advisors[0].getAdvice() instanceof OptimisticRetryInterceptor);
+        assertTrue(advisors[1].getAdvice() instanceof TransactionInterceptor);
+    }
+
+    @Test
+    void eachAttemptRunsInFreshTransaction() {
+        service.setConflicts(2);
+
+        assertEquals(3, service.update());
+
+        List<Object> attempts = service.getAttempts();
+        assertEquals(3, attempts.size());
+        assertEquals(3, new HashSet<>(attempts).size(), "每次尝试使用不同的事务");
+        assertEquals(transactionManager.begun, attempts);
+        assertEquals(2, transactionManager.rollbacks);
+        assertEquals(1, transactionManager.commits);
+        assertEquals(2.0, meterRegistry.get("xiuxian.optimistic-lock.conflicts").tag("source", "service").counter().count());
+    }
+
+    @Test
+    void rethrowsAfterMaxAttempts() {
+        service.setConflicts(Integer.MAX_VALUE);
+
+        assertThrows(OptimisticLockingFailureException.class, () -> service.update());
+
+        assertEquals(3, service.getAttempts().size());
+        assertEquals(3, transactionManager.rollbacks);
+        assertEquals(0, transactionManager.commits);
+        assertEquals(1.0, meterRegistry.get("xiuxian.optimistic-lock.retries.exhausted").counter().count());
+    }
+
+    @Test
+    void doesNotRetryInsideOuterTransaction() {
+        service.setConflicts(1);
+        TransactionTemplate outer = new TransactionTemplate(transactionManager);
+
+        assertThrows(OptimisticLockingFailureException.class, () -> outer.execute(status -> service.update()));
+
+        // 外层事务已被标记为回滚，只执行一次并交给外层处理
+        assertEquals(1, service.getAttempts().size());
+        assertEquals(1, transactionManager.begun.size());
+        assertEquals(1, transactionManager.rollbacks);
+    }
+
+    @Configuration
+    @EnableTransactionManagement
+    static class TestConfig {
+
+        @Bean
+        static PropertySourcesPlaceholderConfigurer propertySourcesPlaceholderConfigurer() {
+            return new PropertySourcesPlaceholderConfigurer();
+        }
+
+        @Bean
+        RecordingTransactionManager transactionManager() {
+            return new RecordingTransactionManager();
+        }
+
+        @Bean
+        SimpleMeterRegistry meterRegistry() {
+            return new SimpleMeterRegistry();
+        }
+
+        @Bean
+        ConflictingService conflictingService(RecordingTransactionManager transactionManager) {
+            return new ConflictingService(transactionManager);
+        }
+    }
+
+    /**
+     * 前若干次调用抛出乐观锁冲突，并记录每次调用时所在的事务
+     */
+    static class ConflictingService {
+
+        private final RecordingTransactionManager transactionManager;
+        private final List<Object> attempts = new ArrayList<>();
+        private int conflicts;
+
+        ConflictingService(RecordingTransactionManager transactionManager) {
+            this.transactionManager = transactionManager;
+        }
+
+        @RetryOnConflict
+        @Transactional
+        public int update() {
+            attempts.add(transactionManager.currentTransaction());
+            if (attempts.size() <= conflicts) {
+                throw new OptimisticLockingFailureException("版本冲突");
+            }
+            return attempts.size();
+        }
+
+        public void setConflicts(int conflicts) {
+            this.conflicts = conflicts;
+        }
+
+        public List<Object> getAttempts() {
+            return attempts;
+        }
+    }
+
+    /**
+     * 不连接数据库的事务管理器，记录开启、提交和回滚的事务
+     */
+    static class RecordingTransactionManager extends AbstractPlatformTransactionManager {
+
+        private final ThreadLocal<Object> current = new ThreadLocal<>();
+        private final List<Object> begun = new ArrayList<>();
+        private int commits;
+        private int rollbacks;
+
+        Object currentTransaction() {
+            return current.get();
+        }
+
+        @Override
+        protected Object doGetTransaction() {
+            return new TransactionHolder(current.get());
+        }
+
+        @Override
+        protected boolean isExistingTransaction(Object transaction) {
+            return ((TransactionHolder) transaction).id != null;
+        }
+
+        @Override
+        protected void doBegin(Object transaction, TransactionDefinition definition) {
+            Object id = new Object();
+            ((TransactionHolder) transaction).id = id;
+            current.set(id);
+            begun.add(id);
+        }
+
+        @Override
+        protected void doCommit(DefaultTransactionStatus status) {
+            commits++;
+        }
+
+        @Override
+        protected void doRollback(DefaultTransactionStatus status) {
+            rollbacks++;
+        }
+
+        @Override
+        protected void doSetRollbackOnly(DefaultTransactionStatus status) {
+            // 参与外层事务时只标记回滚，由外层事务回滚
+        }
+
+        @Override
+        protected void doCleanupAfterCompletion(Object transaction) {
+            current.remove();
+        }
+    }
+
+    private static final class TransactionHolder {
+
+        private Object id;
+
+        TransactionHolder(Object id) {
+            this.id = id;
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.xiuxian.game.security;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.ExpiredJwtException;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.security.Keys;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class JwtTokenProviderTest {
+
+    private static final String SECRET = "test-secret-key-for-jwt-token-provider-0123456789";
+    private static final long EXPIRATION_MS = 60_000L;
+
+    private JwtTokenProvider provider;
+
+    @BeforeEach
+    void setUp() {
+        provider = provider(EXPIRATION_MS);
+    }
+
+    @Test
+    void roundTripReturnsClaimsAndPrincipal() {
+        String token = provider.generateToken(7, 42, "shaun");
+
+        Claims claims = provider.verifyAndGetClaims(token);
+        assertNotNull(claims);
+        assertEquals("shaun", claims.getSubject());
+        assertTrue(provider.validateToken(token));
+        assertEquals("shaun", provider.getUsernameFromToken(token));
+
+        PlayerPrincipal principal = provider.toPrincipal(claims);
+        assertNotNull(principal);
+        assertEquals(Integer.valueOf(7), principal.getUserId());
+        assertEquals(Integer.valueOf(42), principal.getPlayerId());
+        assertEquals("shaun", principal.getUsername());
+        assertEquals(claims.getId(), principal.getTokenId());
+        assertEquals(claims.getExpiration().getTime(), principal.getTokenExpiresAt());
+        assertEquals(JwtTokenProvider.DEFAULT_ROLE, principal.getAuthorities().iterator().next().getAuthority());
+    }
+
+    @Test
+    void matchesPerCallParserUsedBefore() {
+        String token = provider.generateToken(7, 42, "shaun");
+
+        // 改造前每次调用都重新构建密钥和解析器
+        Claims expected = Jwts.parserBuilder()
+                .setSigningKey(Keys.hmacShaKeyFor(SECRET.getBytes(StandardCharsets.UTF_8)))
+                .build()
+                .parseClaimsJws(token)
+                .getBody();
+
+        assertEquals(expected, provider.verifyAndGetClaims(token));
+    }
+
+    @Test
+    void rejectsExpiredToken() {
+        String token = provider(-1_000L).generateToken(7, 42, "shaun");
+
+        assertThrows(ExpiredJwtException.class, () -> Jwts.parserBuilder()
+                .setSigningKey(Keys.hmacShaKeyFor(SECRET.getBytes(StandardCharsets.UTF_8)))
+                .build()
+                .parseClaimsJws(token));
+        assertNull(provider.verifyAndGetClaims(token));
+        assertFalse(provider.validateToken(token));
+        assertThrows(RuntimeException.class, () -> provider.getUsernameFromToken(token));
+    }
+
+    @Test
+    void rejectsTamperedPayload() {
+        String token = provider.generateToken(7, 42, "shaun");
+        String forged = provider.generateToken(1, 1, "admin");
+        String[] parts = token.split("\\.");
+        String[] forgedParts = forged.split("\\.");
+        // 换上另一个令牌的载荷，签名不再匹配
+        String tampered = parts[0] + "." + forgedParts[1] + "." + parts[2];
+
+        assertNull(provider.verifyAndGetClaims(tampered));
+        assertFalse(provider.validateToken(tampered));
+    }
+
+    @Test
+    void rejectsTamperedSignature() {
+        String token = provider.generateToken(7, 42, "shaun");
+        // 改签名的第一个字符：最后一个字符含有不参与解码的填充位，改动后可能仍解出相同的签名
+        int signatureStart = token.lastIndexOf('.') + 1;
+        char first = token.charAt(signatureStart);
+        String tampered = token.substring(0, signatureStart) + (first == 'A' ? 'B' : 'A') + token.substring(signatureStart + 1);
+
+        assertNull(provider.verifyAndGetClaims(tampered));
+    }
+
+    @Test
+    void rejectsTokenSignedWithAnotherKey() {
+        String token = Jwts.builder()
+                .setSubject("shaun")
+                .setExpiration(new Date(System.currentTimeMillis() + EXPIRATION_MS))
+                .signWith(Keys.hmacShaKeyFor("another-secret-key-for-jwt-token-provider-98765".getBytes(StandardCharsets.UTF_8)),
+                        SignatureAlgorithm.HS256)
+                .compact();
+
+        assertNull(provider.verifyAndGetClaims(token));
+    }
+
+    @Test
+    void rejectsMalformedToken() {
+        assertNull(provider.verifyAndGetClaims("not-a-jwt"));
+        assertNull(provider.verifyAndGetClaims(""));
+    }
+
+    @Test
+    void legacyTokenWithoutIdsHasNoPrincipal() {
+        String token = Jwts.builder()
+                .setSubject("shaun")
+                .setExpiration(new Date(System.currentTimeMillis() + EXPIRATION_MS))
+                .signWith(Keys.hmacShaKeyFor(SECRET.getBytes(StandardCharsets.UTF_8)), SignatureAlgorithm.HS256)
+                .compact();
+
+        Claims claims = provider.verifyAndGetClaims(token);
+        assertNotNull(claims);
+        assertNull(provider.toPrincipal(claims));
+    }
+
+    private static JwtTokenProvider provider(long expirationMillis) {
+        JwtTokenProvider provider = new JwtTokenProvider();
+        ReflectionTestUtils.setField(provider, "jwtSecret", SECRET);
+        ReflectionTestUtils.setField(provider, "jwtExpiration", expirationMillis);
+        provider.init();
+        return provider;
+    }
+}
@@ -0,0 +1,104 @@
+package com.xiuxian.game.service;
+
+import com.xiuxian.game.dto.request.RegisterRequest;
+import com.xiuxian.game.entity.User;
+import com.xiuxian.game.mapper.UserMapper;
+import com.xiuxian.game.security.JwtTokenProvider;
+import com.xiuxian.game.security.RefreshTokenStore;
+import com.xiuxian.game.security.TokenDenylist;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.SQLIntegrityConstraintViolationException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class AuthServiceTest {
+
+    // MyBatis转换后的消息包含整条INSERT语句，其中总有email列
+    private static final String TRANSLATED_SQL = "\n### Error updating database.  Cause: %s\n"
+            + "### SQL: INSERT INTO users  ( username, password, email, created_at, updated_at )  VALUES  ( ?, ?, ?, ?, ? )\n";
+
+    @Mock
+    private UserMapper userMapper;
+    @Mock
+    private PlayerProfileCache playerProfileCache;
+    @Mock
+    private PasswordEncoder passwordEncoder;
+    @Mock
+    private JwtTokenProvider tokenProvider;
+    @Mock
+    private AuthenticationManager authenticationManager;
+    @Mock
+    private PlayerService playerService;
+    @Mock
+    private TokenDenylist tokenDenylist;
+    @Mock
+    private RefreshTokenStore refreshTokenStore;
+    @Mock
+    private TransactionTemplate transactionTemplate;
+
+    private AuthService authService;
+
+    @BeforeEach
+    void setUp() {
+        authService = new AuthService(userMapper, playerProfileCache, passwordEncoder, tokenProvider,
+                authenticationManager, playerService, tokenDenylist, refreshTokenStore, transactionTemplate);
+        when(passwordEncoder.encode(anyString())).thenReturn("hash");
+        when(transactionTemplate.execute(any())).thenAnswer(invocation ->
+                invocation.<TransactionCallback<?>>getArgument(0).doInTransaction(null));
+    }
+
+    @Test
+    void duplicateUsernameIsReportedAsUsername() {
+        failInsertWith("Duplicate entry 'shaun' for key 'users.username'");
+
+        RuntimeException e = assertThrows(RuntimeException.class, () -> authService.register(request()));
+        assertEquals("注册失败: 用户名已存在", e.getMessage());
+    }
+
+    @Test
+    void duplicateEmailIsReportedAsEmail() {
+        failInsertWith("Duplicate entry 'shaun88@88.com' for key 'users.email'");
+
+        RuntimeException e = assertThrows(RuntimeException.class, () -> authService.register(request()));
+        assertEquals("注册失败: 邮箱已被使用", e.getMessage());
+    }
+
+    @Test
+    void keyNameWithoutTablePrefixIsRecognized() {
+        failInsertWith("Duplicate entry 'shaun88@88.com' for key 'email'");
+
+        RuntimeException e = assertThrows(RuntimeException.class, () -> authService.register(request()));
+        assertEquals("注册失败: 邮箱已被使用", e.getMessage());
+    }
+
+    private void failInsertWith(String sqlMessage) {
+        SQLIntegrityConstraintViolationException cause = new SQLIntegrityConstraintViolationException(sqlMessage, "23000", 1062);
+        doThrow(new DuplicateKeyException(String.format(TRANSLATED_SQL, sqlMessage), cause))
+                .when(userMapper).insert(any(User.class));
+    }
+
+    private static RegisterRequest request() {
+        RegisterRequest request = new RegisterRequest();
+        request.setUsername("shaun");
+        request.setPassword("secret1");
+        request.setEmail("shaun88@88.com");
+        request.setNickname("shaun");
+        return request;
+    }
+}
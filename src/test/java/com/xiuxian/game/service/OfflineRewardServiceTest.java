@@ -0,0 +1,120 @@
+package com.xiuxian.game.service;
+
+import com.xiuxian.game.dto.response.OfflineRewardResponse;
+import com.xiuxian.game.entity.CultivationLog;
+import com.xiuxian.game.entity.PlayerProfile;
+import com.xiuxian.game.mapper.CultivationLogMapper;
+import com.xiuxian.game.mapper.PlayerProfileMapper;
+import com.xiuxian.game.service.OfflineRewardService.OfflineGain;
+import com.xiuxian.game.util.GameCalculator;
+import com.xiuxian.game.util.LevelProgression;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class OfflineRewardServiceTest {
+
+    private static final LocalDateTime NOW = LocalDateTime.of(2024, 6, 1, 12, 0);
+
+    @Mock
+    private PlayerService playerService;
+    @Mock
+    private PlayerProfileCache playerProfileCache;
+    @Mock
+    private PlayerProfileMapper playerProfileMapper;
+    @Mock
+    private CultivationLogMapper cultivationLogMapper;
+    @Mock
+    private CultivationLogWriter cultivationLogWriter;
+    @Mock
+    private CultivationLogArchive cultivationLogArchive;
+
+    private OfflineRewardService offlineRewardService;
+
+    @BeforeEach
+    void setUp() {
+        offlineRewardService = new OfflineRewardService(playerService, playerProfileCache, playerProfileMapper,
+                cultivationLogMapper, cultivationLogWriter, cultivationLogArchive,
+                new GameCalculator(new LevelProgression(null)));
+        ReflectionTestUtils.setField(offlineRewardService, "previewTtlMillis", 60_000L);
+    }
+
+    @Test
+    void buildLogKeepsExactGains() {
+        OfflineGain gain = new OfflineGain(86_400L, 2_851_200L, Integer.MAX_VALUE, 288L);
+
+        CultivationLog cultivationLog = offlineRewardService.buildLog(7, gain, NOW);
+
+        assertEquals(Integer.valueOf(7), cultivationLog.getPlayerId());
+        assertEquals(Integer.valueOf(86_400), cultivationLog.getCultivationTime());
+        assertEquals(Long.valueOf(86_400L), cultivationLog.getCultivationDuration());
+        assertEquals(Long.valueOf(2_851_200L), cultivationLog.getExpGained());
+        assertEquals(Integer.valueOf(Integer.MAX_VALUE), cultivationLog.getSpiritStonesGained());
+        assertEquals(Integer.valueOf(288), cultivationLog.getCultivationPointsGained());
+        assertTrue(cultivationLog.getIsOffline());
+        assertEquals(NOW, cultivationLog.getCreatedAt());
+    }
+
+    @Test
+    void buildLogRejectsSpiritStonesBeyondLogColumn() {
+        // 截断后会以负数或错误的值计入每日汇总
+        OfflineGain gain = new OfflineGain(86_400L, 1_000L, Integer.MAX_VALUE + 1L, 288L);
+
+        assertThrows(IllegalArgumentException.class, () -> offlineRewardService.buildLog(7, gain, NOW));
+    }
+
+    @Test
+    void previewIsMemoizedWhileLastOnlineTimeIsUnchanged() {
+        AtomicReference<PlayerProfile> cached = stubCurrentPlayer(LocalDateTime.now().minusHours(2));
+
+        OfflineRewardResponse first = offlineRewardService.previewOfflineRewards();
+
+        assertSame(first, offlineRewardService.previewOfflineRewards());
+        assertEquals(120L, first.getOfflineMinutes());
+        // 预览在副本上计算，不修改缓存中的档案
+        assertEquals(Long.valueOf(0L), cached.get().getExp());
+    }
+
+    @Test
+    void previewIsRecomputedWhenLastOnlineTimeChanges() {
+        AtomicReference<PlayerProfile> cached = stubCurrentPlayer(LocalDateTime.now().minusHours(2));
+        OfflineRewardResponse beforeClaim = offlineRewardService.previewOfflineRewards();
+
+        // 领取或批量结算把最后在线时间更新为结算时刻，TTL内的旧预览不再使用
+        cached.set(profile(LocalDateTime.now().minusHours(1)));
+        OfflineRewardResponse afterClaim = offlineRewardService.previewOfflineRewards();
+
+        assertNotSame(beforeClaim, afterClaim);
+        assertEquals(60L, afterClaim.getOfflineMinutes());
+        assertTrue(afterClaim.getExpGained() < beforeClaim.getExpGained());
+        assertSame(afterClaim, offlineRewardService.previewOfflineRewards());
+    }
+
+    private AtomicReference<PlayerProfile> stubCurrentPlayer(LocalDateTime lastOnlineTime) {
+        AtomicReference<PlayerProfile> cached = new AtomicReference<>(profile(lastOnlineTime));
+        when(playerService.getCurrentPlayerId()).thenReturn(7);
+        when(playerProfileCache.get(7)).thenAnswer(invocation -> cached.get());
+        return cached;
+    }
+
+    private static PlayerProfile profile(LocalDateTime lastOnlineTime) {
+        return PlayerProfile.builder()
+                .id(7).userId(70).nickname("道友")
+                .lastOnlineTime(lastOnlineTime)
+                .build();
+    }
+}
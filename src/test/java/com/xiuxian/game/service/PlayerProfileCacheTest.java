@@ -0,0 +1,331 @@
+package com.xiuxian.game.service;
+
+import com.xiuxian.game.entity.PlayerProfile;
+import com.xiuxian.game.mapper.PlayerProfileMapper;
+import com.xiuxian.game.mapper.PlayerProfileSqlProvider.Column;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.ibatis.executor.BatchResult;
+import org.apache.ibatis.session.ExecutorType;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class PlayerProfileCacheTest {
+
+    private static final Integer PLAYER_ID = 1;
+    private static final LocalDateTime LAST_ONLINE = LocalDateTime.of(2024, 6, 1, 12, 0);
+
+    @Mock
+    private PlayerProfileMapper playerProfileMapper;
+    @Mock
+    private PlayerProfileMapper batchMapper;
+    @Mock
+    private SqlSessionFactory sqlSessionFactory;
+    @Mock
+    private SqlSession batchSession;
+    @Mock
+    private PlayerStatePublisher playerStatePublisher;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    /**
+     * 数据库中的当前行，selectById每次返回新的副本
+     */
+    private final AtomicReference<PlayerProfile> row = new AtomicReference<>();
+    /**
+     * 本轮批次中的updateColumns参数，flushStatements时转换为BatchResult
+     */
+    private final List<Map<String, Object>> batched = new ArrayList<>();
+    /**
+     * 写回时按版本冲突处理（更新行数为0）的玩家
+     */
+    private final Set<Integer> conflicting = new HashSet<>();
+    private final List<Long> writtenColumns = new ArrayList<>();
+    private final List<Integer> writtenVersions = new ArrayList<>();
+    private boolean failFlush;
+
+    private PlayerProfileCache cache;
+
+    @BeforeEach
+    void setUp() {
+        row.set(row(3, 100L, 50L, "道友", "练气期"));
+        lenient().when(playerProfileMapper.selectById(PLAYER_ID)).thenAnswer(invocation -> {
+            PlayerProfile current = row.get();
+            return current != null ? current.toBuilder().build() : null;
+        });
+        lenient().when(sqlSessionFactory.openSession(ExecutorType.BATCH, false)).thenReturn(batchSession);
+        lenient().when(batchSession.getMapper(PlayerProfileMapper.class)).thenReturn(batchMapper);
+        lenient().when(batchMapper.updateColumns(any(PlayerProfile.class), anyLong(), anyInt())).thenAnswer(invocation -> {
+            Map<String, Object> params = new HashMap<>();
+            params.put("profile", invocation.getArgument(0));
+            params.put("columns", invocation.getArgument(1));
+            params.put("version", invocation.getArgument(2));
+            batched.add(params);
+            writtenColumns.add(invocation.getArgument(1));
+            writtenVersions.add(invocation.getArgument(2));
+            return 0;
+        });
+        lenient().when(batchSession.flushStatements()).thenAnswer(invocation -> {
+            if (failFlush) {
+                throw new IllegalStateException("数据库不可用");
+            }
+            BatchResult result = new BatchResult(null, "UPDATE player_profiles");
+            int[] counts = new int[batched.size()];
+            for (int i = 0; i < batched.size(); i++) {
+                PlayerProfile profile = (PlayerProfile) batched.get(i).get("profile");
+                result.addParameterObject(batched.get(i));
+                counts[i] = conflicting.contains(profile.getId()) ? 0 : 1;
+            }
+            result.setUpdateCounts(counts);
+            batched.clear();
+            return Collections.singletonList(result);
+        });
+
+        cache = newCache(1_800_000L);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void saveMergesAfterCommitAndFlushWritesOnlyChangedColumns() {
+        inTransaction(() -> {
+            PlayerProfile profile = cache.get(PLAYER_ID);
+            assertSame(profile, cache.get(PLAYER_ID), "同一事务内共享同一个副本");
+            profile.setExp(150L);
+            profile.setRealm("筑基期");
+            cache.save(profile);
+            // 提交前缓存不变
+            verify(playerStatePublisher, never()).profileChanged(any(PlayerProfile.class), anyLong());
+        });
+
+        PlayerProfile cached = cachedOutsideTransaction();
+        assertEquals(150L, cached.getExp().longValue());
+        assertEquals("筑基期", cached.getRealm());
+        assertEquals(3, cached.getVersion().intValue());
+        assertEquals(1.0, dirtyGauge());
+        verify(playerStatePublisher).profileChanged(any(PlayerProfile.class),
+                eq(Column.EXP.mask() | Column.REALM.mask()));
+
+        cache.flush();
+
+        assertEquals(Collections.singletonList(Column.EXP.mask() | Column.REALM.mask()), writtenColumns);
+        assertEquals(Collections.singletonList(3), writtenVersions);
+        verify(batchSession).commit();
+        assertEquals(0.0, dirtyGauge());
+        assertEquals(4, cachedOutsideTransaction().getVersion().intValue());
+
+        // 已干净的条目不再写库
+        cache.flush();
+        assertEquals(1, writtenColumns.size());
+    }
+
+    @Test
+    void rollbackLeavesCacheUnchanged() {
+        inTransaction(() -> {
+            PlayerProfile profile = cache.get(PLAYER_ID);
+            profile.setExp(999L);
+            cache.save(profile);
+        }, false);
+
+        assertEquals(100L, cachedOutsideTransaction().getExp().longValue());
+        assertEquals(0.0, dirtyGauge());
+        cache.flush();
+        verify(sqlSessionFactory, never()).openSession(any(ExecutorType.class), eq(false));
+    }
+
+    @Test
+    void saveRejectsProfileNotReadInCurrentTransaction() {
+        PlayerProfile outside = cache.get(PLAYER_ID);
+        outside.setExp(200L);
+
+        assertThrows(IllegalStateException.class, () -> cache.save(outside));
+        inTransaction(() -> assertThrows(IllegalStateException.class, () -> cache.save(outside)));
+        assertEquals(100L, cachedOutsideTransaction().getExp().longValue());
+    }
+
+    @Test
+    void versionConflictRebasesLocalChangesOnLatestRow() {
+        inTransaction(() -> {
+            PlayerProfile profile = cache.get(PLAYER_ID);
+            profile.setExp(150L);
+            profile.setSpiritStones(40L);
+            profile.setRealm("筑基期");
+            profile.setNickname("本地");
+            cache.save(profile);
+        });
+
+        // 其他写入方已把行改到版本4：经验+400、灵石+30，并修改了昵称
+        row.set(row(4, 500L, 80L, "他处", "练气期"));
+        conflicting.add(PLAYER_ID);
+        cache.flush();
+
+        PlayerProfile merged = cachedOutsideTransaction();
+        assertEquals(550L, merged.getExp().longValue(), "计数列叠加本地增量");
+        assertEquals(70L, merged.getSpiritStones().longValue(), "计数列叠加本地增量");
+        assertEquals("筑基期", merged.getRealm(), "数据库未改动的列采用本地值");
+        assertEquals("他处", merged.getNickname(), "双方都修改的列以数据库为准");
+        assertEquals(4, merged.getVersion().intValue());
+        assertEquals(1.0, dirtyGauge(), "仍有未落库修改");
+        assertEquals(1.0, meterRegistry.get("xiuxian.optimistic-lock.conflicts").counter().count());
+
+        conflicting.clear();
+        cache.flush();
+
+        assertEquals(Column.EXP.mask() | Column.SPIRIT_STONES.mask() | Column.REALM.mask(),
+                writtenColumns.get(1).longValue());
+        assertEquals(4, writtenVersions.get(1).intValue());
+        assertEquals(0.0, dirtyGauge());
+    }
+
+    @Test
+    void idleEvictionKeepsDirtyEntries() {
+        cache = newCache(0L);
+        inTransaction(() -> {
+            PlayerProfile profile = cache.get(PLAYER_ID);
+            profile.setExp(150L);
+            cache.save(profile);
+        });
+
+        failFlush = true;
+        cache.flush();
+
+        assertTrue(cache.isCached(PLAYER_ID), "写回失败的脏条目不能被淘汰");
+        assertEquals(1.0, dirtyGauge());
+        assertEquals(150L, cachedOutsideTransaction().getExp().longValue());
+
+        failFlush = false;
+        cache.flush();
+
+        assertEquals(0.0, dirtyGauge());
+        assertFalse(cache.isCached(PLAYER_ID), "写回成功后空闲条目被淘汰");
+    }
+
+    @Test
+    void saveAfterEvictionReloadsAndMergesOnlyChangedColumns() {
+        cache = newCache(0L);
+        inTransaction(() -> {
+            PlayerProfile profile = cache.get(PLAYER_ID);
+            // 事务进行中条目被空闲淘汰，同时其他写入方修改了灵石
+            cache.flush();
+            assertFalse(cache.isCached(PLAYER_ID));
+            row.set(row(4, 100L, 80L, "道友", "练气期"));
+
+            profile.setExp(150L);
+            cache.save(profile);
+        });
+
+        PlayerProfile cached = cachedOutsideTransaction();
+        assertEquals(150L, cached.getExp().longValue());
+        assertEquals(80L, cached.getSpiritStones().longValue(), "未修改的列不覆盖其他写入方的值");
+
+        cache.flush();
+        assertEquals(Collections.singletonList(Column.EXP.mask()), writtenColumns);
+        assertEquals(Collections.singletonList(4), writtenVersions);
+    }
+
+    @Test
+    void debitFlushesUnwrittenCreditFirst() {
+        inTransaction(() -> {
+            PlayerProfile profile = cache.get(PLAYER_ID);
+            profile.setSpiritStones(90L);
+            cache.save(profile);
+        });
+        when(playerProfileMapper.debitSpiritStones(eq(PLAYER_ID), eq(90L), any(LocalDateTime.class))).thenReturn(1);
+
+        assertTrue(cache.debitSpiritStones(PLAYER_ID, 90L));
+
+        InOrder order = inOrder(batchMapper, playerProfileMapper);
+        order.verify(batchMapper).updateColumns(any(PlayerProfile.class), eq(Column.SPIRIT_STONES.mask()), eq(3));
+        order.verify(playerProfileMapper).debitSpiritStones(eq(PLAYER_ID), eq(90L), any(LocalDateTime.class));
+    }
+
+    private PlayerProfileCache newCache(long idleEvictMillis) {
+        // 每个缓存实例使用独立的注册表，否则脏条目数的gauge仍指向先前的实例
+        meterRegistry = new SimpleMeterRegistry();
+        return new PlayerProfileCache(playerProfileMapper, sqlSessionFactory, playerStatePublisher,
+                500, 200, idleEvictMillis, meterRegistry);
+    }
+
+    private PlayerProfile cachedOutsideTransaction() {
+        assertFalse(TransactionSynchronizationManager.isSynchronizationActive());
+        return cache.get(PLAYER_ID);
+    }
+
+    private double dirtyGauge() {
+        return meterRegistry.get("xiuxian.player.cache.dirty").gauge().value();
+    }
+
+    private static void inTransaction(Runnable body) {
+        inTransaction(body, true);
+    }
+
+    /**
+     * 模拟事务管理器的同步回调顺序：提交时先afterCommit再afterCompletion，回调结束后才清除同步
+     */
+    private static void inTransaction(Runnable body, boolean commit) {
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            body.run();
+            List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+            if (commit) {
+                for (TransactionSynchronization synchronization : synchronizations) {
+                    synchronization.afterCommit();
+                }
+            }
+            int status = commit ? TransactionSynchronization.STATUS_COMMITTED : TransactionSynchronization.STATUS_ROLLED_BACK;
+            for (TransactionSynchronization synchronization : synchronizations) {
+                synchronization.afterCompletion(status);
+            }
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    private static PlayerProfile row(int version, long exp, long spiritStones, String nickname, String realm) {
+        return PlayerProfile.builder()
+                .id(PLAYER_ID).userId(10).nickname(nickname)
+                .exp(exp).spiritStones(spiritStones).realm(realm)
+                .lastOnlineTime(LAST_ONLINE)
+                .version(version)
+                .build();
+    }
+}
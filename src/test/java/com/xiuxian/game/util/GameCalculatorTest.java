@@ -0,0 +1,110 @@
+package com.xiuxian.game.util;
+
+import com.xiuxian.game.entity.PlayerProfile;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * 定点数计算的结果须与改造前按境界名称查BigDecimal加成表的结果一致
+ */
+class GameCalculatorTest {
+
+    /**
+     * 改造前GameCalculator.REALM_BONUS
+     */
+    private static final Map<String, BigDecimal> OLD_REALM_BONUS = new HashMap<>();
+
+    static {
+        OLD_REALM_BONUS.put("练气期", BigDecimal.ZERO);
+        OLD_REALM_BONUS.put("筑基期", BigDecimal.valueOf(0.5));
+        OLD_REALM_BONUS.put("金丹期", BigDecimal.ONE);
+        OLD_REALM_BONUS.put("元婴期", BigDecimal.valueOf(2));
+        OLD_REALM_BONUS.put("化神期", BigDecimal.valueOf(4));
+        OLD_REALM_BONUS.put("合体期", BigDecimal.valueOf(8));
+        OLD_REALM_BONUS.put("大乘期", BigDecimal.valueOf(16));
+        OLD_REALM_BONUS.put("渡劫期", BigDecimal.valueOf(32));
+    }
+
+    private final GameCalculator calculator = new GameCalculator(new LevelProgression(null));
+
+    @Test
+    void expPerSecondMatchesBigDecimalForEveryRealmAndSpeed() {
+        for (Realm realm : Realm.values()) {
+            for (int level : new int[]{realm.getMinLevel(), realm.getMinLevel() + 50}) {
+                // 修炼速度在数据库中为两位小数
+                for (int hundredths = 1; hundredths <= 2_000; hundredths++) {
+                    assertExpPerSecondMatches(level, realm, BigDecimal.valueOf(hundredths, 2));
+                }
+                assertExpPerSecondMatches(level, realm, BigDecimal.ONE);
+                assertExpPerSecondMatches(level, realm, new BigDecimal("123.45"));
+                assertExpPerSecondMatches(level, realm, null);
+            }
+        }
+    }
+
+    @Test
+    void expPerSecondUsesLevelWhenRealmNameIsStale() {
+        PlayerProfile player = PlayerProfile.builder()
+                .level(2001).realm("练气期").cultivationSpeed(new BigDecimal("1.50"))
+                .build();
+
+        assertEquals(oldExpPerSecond("渡劫期", new BigDecimal("1.50")), calculator.calculateExpPerSecond(player));
+    }
+
+    @Test
+    void offlineRewardsMatchOldRate() {
+        PlayerProfile player = PlayerProfile.builder()
+                .level(Realm.HUA_SHEN.getMinLevel()).realm("化神期").cultivationSpeed(new BigDecimal("2.35"))
+                .build();
+        long oldRate = oldExpPerSecond("化神期", new BigDecimal("2.35"));
+
+        assertEquals(0L, calculator.calculateOfflineRewards(player, 59));
+        assertEquals(oldRate * 3_600, calculator.calculateOfflineRewards(player, 3_600));
+        assertEquals(oldRate * 24 * 60 * 60, calculator.calculateOfflineRewards(player, 7 * 24 * 60 * 60));
+    }
+
+    @Test
+    void spiritStonesPerSecondMatchesOldTruncation() {
+        for (int hundredths = 1; hundredths <= 2_000; hundredths++) {
+            BigDecimal speed = BigDecimal.valueOf(hundredths, 2);
+            PlayerProfile player = PlayerProfile.builder().cultivationSpeed(speed).build();
+            assertEquals(Math.max(1, speed.longValue()), calculator.calculateSpiritStonesPerSecond(player), speed.toPlainString());
+        }
+        assertEquals(1L, calculator.calculateSpiritStonesPerSecond(PlayerProfile.builder().cultivationSpeed(null).build()));
+    }
+
+    @Test
+    void realmBonusesMatchOldTable() {
+        for (String name : new String[]{"练气期", "筑基期", "金丹期", "元婴期", "化神期", "合体期", "大乘期", "渡劫期", "未知", null}) {
+            BigDecimal bonus = OLD_REALM_BONUS.getOrDefault(name, BigDecimal.ZERO);
+            assertEquals(bonus.doubleValue(), calculator.calculateRealmDamageBonus(name), String.valueOf(name));
+            assertEquals(Math.min(bonus.doubleValue() * 0.1, 0.5), calculator.calculateRealmCooldownBonus(name), String.valueOf(name));
+        }
+    }
+
+    private void assertExpPerSecondMatches(int level, Realm realm, BigDecimal speed) {
+        PlayerProfile player = PlayerProfile.builder()
+                .level(level).realm(realm.getDisplayName()).cultivationSpeed(speed)
+                .build();
+
+        assertEquals(oldExpPerSecond(realm.getDisplayName(), speed), calculator.calculateExpPerSecond(player),
+                "level=" + level + ", speed=" + speed);
+    }
+
+    /**
+     * 改造前的calculateExpPerSecond
+     */
+    private static long oldExpPerSecond(String realm, BigDecimal cultivationSpeed) {
+        BigDecimal realmBonus = OLD_REALM_BONUS.getOrDefault(realm, BigDecimal.ZERO);
+        BigDecimal speed = cultivationSpeed != null ? cultivationSpeed : BigDecimal.ONE;
+        return BigDecimal.valueOf(10)
+                .multiply(BigDecimal.ONE.add(realmBonus))
+                .multiply(speed)
+                .longValue();
+    }
+}
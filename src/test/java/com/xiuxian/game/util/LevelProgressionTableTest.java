@@ -0,0 +1,107 @@
+package com.xiuxian.game.util;
+
+import com.xiuxian.game.entity.CultivationLevel;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class LevelProgressionTableTest {
+
+    private static final int MAX_LEVEL = 1000;
+
+    @Test
+    void emptyTableFollowsFormula() {
+        LevelProgression.Table t = LevelProgression.Table.build(Collections.<CultivationLevel>emptyList(), MAX_LEVEL);
+
+        for (int level = 1; level <= MAX_LEVEL; level++) {
+            assertEquals((long) level * GameConstants.BASE_EXP_PER_LEVEL, t.expToNext[level]);
+            assertEquals(Realm.ofLevel(level), t.realmByLevel[level]);
+        }
+        assertEquals(0L, t.cumulativeExp[1]);
+        assertEquals(GameConstants.BASE_EXP_PER_LEVEL, t.cumulativeExp[2]);
+        assertEquals(9L * GameConstants.LEVEL_UP_ATTACK, t.attack[10]);
+    }
+
+    @Test
+    void formulaContinuesFromLastConfiguredLevel() {
+        List<CultivationLevel> rows = Arrays.asList(
+                row(1, "练气期一层", 0, 100, 10),
+                row(2, "练气期二层", 100, 250, 12),
+                row(3, "筑基期一层", 250, 450, 20));
+        LevelProgression.Table t = LevelProgression.Table.build(rows, MAX_LEVEL);
+
+        assertEquals(3, t.configuredLevels);
+        assertEquals(150L, t.expToNext[2]);
+        assertEquals(250L, t.cumulativeExp[3]);
+
+        // 经验区间和属性接着第3级增长，不退回公式值
+        assertEquals(200L + GameConstants.BASE_EXP_PER_LEVEL, t.expToNext[4]);
+        assertEquals(10 + GameConstants.LEVEL_UP_ATTACK, t.attack[4]);
+        assertEquals(450L, t.cumulativeExp[4]);
+
+        // 筑基期从第3级开始，按Realm中筑基期的跨度顺延到金丹期
+        int zhuJiSpan = Realm.JIN_DAN.getMinLevel() - Realm.ZHU_JI.getMinLevel();
+        assertEquals(Realm.ZHU_JI, t.realmByLevel[3]);
+        assertEquals(Realm.ZHU_JI, t.realmByLevel[3 + zhuJiSpan - 1]);
+        assertEquals(Realm.JIN_DAN, t.realmByLevel[3 + zhuJiSpan]);
+    }
+
+    @Test
+    void unrecognizedStageNameKeepsPreviousRealm() {
+        List<CultivationLevel> rows = Arrays.asList(
+                row(1, "练气期一层", 0, 100, 10),
+                row(2, "筑基期一层", 100, 250, 12),
+                row(3, "闭关", 250, 450, 20));
+        LevelProgression.Table t = LevelProgression.Table.build(rows, MAX_LEVEL);
+
+        assertEquals(Realm.ZHU_JI, t.realmByLevel[3]);
+    }
+
+    @Test
+    void rejectsInvalidRows() {
+        assertThrows(IllegalArgumentException.class, () -> LevelProgression.Table.build(Arrays.asList(
+                row(1, "练气期一层", 0, 100, 10),
+                row(3, "练气期三层", 100, 250, 12)), MAX_LEVEL));
+        assertThrows(IllegalArgumentException.class, () -> LevelProgression.Table.build(Collections.singletonList(
+                row(1, "练气期一层", 10, 100, 10)), MAX_LEVEL));
+        assertThrows(IllegalArgumentException.class, () -> LevelProgression.Table.build(Arrays.asList(
+                row(1, "练气期一层", 0, 100, 10),
+                row(2, "练气期二层", 120, 250, 12)), MAX_LEVEL));
+        assertThrows(IllegalArgumentException.class, () -> LevelProgression.Table.build(Arrays.asList(
+                row(1, "筑基期一层", 0, 100, 10),
+                row(2, "练气期二层", 100, 250, 12)), MAX_LEVEL));
+    }
+
+    @Test
+    void rowsBeyondMaxLevelAreIgnored() {
+        List<CultivationLevel> rows = new ArrayList<>();
+        long minExp = 0;
+        for (int level = 1; level <= 5; level++) {
+            rows.add(row(level, "练气期", minExp, minExp + 100, level));
+            minExp += 100;
+        }
+        LevelProgression.Table t = LevelProgression.Table.build(rows, 3);
+
+        assertEquals(3, t.configuredLevels);
+        assertEquals(200L, t.cumulativeExp[3]);
+    }
+
+    private static CultivationLevel row(int level, String name, long minExp, long maxExp, int attackBonus) {
+        return CultivationLevel.builder()
+                .level(level)
+                .name(name)
+                .minExp(minExp)
+                .maxExp(maxExp)
+                .attackBonus(attackBonus)
+                .defenseBonus(0)
+                .healthBonus(0)
+                .manaBonus(0)
+                .build();
+    }
+}
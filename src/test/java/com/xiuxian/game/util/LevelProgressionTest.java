@@ -0,0 +1,147 @@
+package com.xiuxian.game.util;
+
+import com.xiuxian.game.entity.PlayerProfile;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * 没有配置表时，闭式求解的结果须与改造前GameCalculator.checkLevelUp的逐级循环一致
+ */
+class LevelProgressionTest {
+
+    private static final int MAX_LEVEL = GameConstants.MAX_PLAYER_LEVEL;
+
+    private final LevelProgression progression = new LevelProgression(null);
+
+    @Test
+    void matchesLoopWithinFirstLevel() {
+        assertMatchesLoop(1, 0, 0);
+        assertMatchesLoop(1, 0, 99);
+        assertMatchesLoop(1, 0, 100);
+        assertMatchesLoop(1, 99, 1);
+    }
+
+    @Test
+    void matchesLoopAcrossRealmBoundaries() {
+        for (Realm realm : Realm.values()) {
+            int boundary = realm.getMinLevel();
+            if (boundary <= 1) {
+                continue;
+            }
+            // 差一点到达、恰好到达、越过境界起始等级
+            long toBoundary = loopExpBetween(boundary - 1, boundary);
+            assertMatchesLoop(boundary - 1, 0, toBoundary - 1);
+            assertMatchesLoop(boundary - 1, 0, toBoundary);
+            assertMatchesLoop(boundary - 2, 5, loopExpBetween(boundary - 2, boundary + 3));
+        }
+    }
+
+    @Test
+    void matchesLoopAtMaxLevel() {
+        long toMax = loopExpBetween(1, MAX_LEVEL);
+        assertMatchesLoop(1, 0, toMax - 1);
+        assertMatchesLoop(1, 0, toMax);
+        // 到达最高等级后多余的经验留在当前等级
+        assertMatchesLoop(1, 0, toMax + 12_345);
+        assertMatchesLoop(MAX_LEVEL, 0, 1_000_000);
+        assertMatchesLoop(MAX_LEVEL - 1, 0, (long) (MAX_LEVEL - 1) * GameConstants.BASE_EXP_PER_LEVEL);
+    }
+
+    @Test
+    void matchesLoopForLargeOfflineGains() {
+        Random random = new Random(20240601L);
+        for (int i = 0; i < 2_000; i++) {
+            int level = 1 + random.nextInt(MAX_LEVEL);
+            long exp = (long) (random.nextDouble() * level * GameConstants.BASE_EXP_PER_LEVEL);
+            // 最高境界24小时离线：每秒10 × 33倍 × 修炼速度，取到十亿量级
+            long gained = (long) (random.nextDouble() * 3_000_000_000L);
+            assertMatchesLoop(level, exp, gained);
+        }
+    }
+
+    @Test
+    void applyExpUpdatesProfileLikeLoop() {
+        PlayerProfile player = PlayerProfile.builder()
+                .level(99).exp(9_000L).realm("练气期")
+                .attack(10).defense(10).health(100).mana(50).speed(10)
+                .build();
+
+        int levels = progression.applyExp(player, 25_000L);
+
+        LoopResult expected = loop(99, 34_000L);
+        assertEquals(expected.level - 99, levels);
+        assertEquals(expected.level, player.getLevel().intValue());
+        assertEquals(expected.exp, player.getExp().longValue());
+        assertEquals(expected.realm, player.getRealm());
+        assertEquals(10 + levels * GameConstants.LEVEL_UP_ATTACK, player.getAttack().intValue());
+        assertEquals(10 + levels * GameConstants.LEVEL_UP_SPEED, player.getSpeed().intValue());
+        assertEquals((long) expected.level * GameConstants.BASE_EXP_PER_LEVEL, player.getExpToNext().longValue());
+    }
+
+    private void assertMatchesLoop(int level, long exp, long gained) {
+        LoopResult expected = loop(level, exp + gained);
+        LevelProgression.LevelUpResult actual = progression.advance(level, exp, gained);
+        String input = "level=" + level + ", exp=" + exp + ", gained=" + gained;
+
+        int levels = expected.level - level;
+        assertEquals(expected.level, actual.getLevel(), input);
+        assertEquals(expected.exp, actual.getRemainingExp(), input);
+        assertEquals(expected.realm, actual.getRealm().getDisplayName(), input);
+        assertEquals(levels, actual.getLevelsGained(), input);
+        assertEquals(levels * GameConstants.LEVEL_UP_ATTACK, actual.getAttackDelta(), input);
+        assertEquals(levels * GameConstants.LEVEL_UP_DEFENSE, actual.getDefenseDelta(), input);
+        assertEquals(levels * GameConstants.LEVEL_UP_HEALTH, actual.getHealthDelta(), input);
+        assertEquals(levels * GameConstants.LEVEL_UP_MANA, actual.getManaDelta(), input);
+        assertEquals(levels * GameConstants.LEVEL_UP_SPEED, actual.getSpeedDelta(), input);
+    }
+
+    /**
+     * 改造前GameCalculator.checkLevelUp的逐级循环，加上最高等级的上限
+     */
+    private static LoopResult loop(int level, long exp) {
+        long expNeeded = level * 100L;
+        while (exp >= expNeeded && level < MAX_LEVEL) {
+            exp -= expNeeded;
+            level++;
+            expNeeded = level * 100L;
+        }
+        return new LoopResult(level, exp, realmOf(level));
+    }
+
+    /**
+     * 改造前的updateRealm
+     */
+    private static String realmOf(int level) {
+        if (level >= 2001) return "渡劫期";
+        else if (level >= 1501) return "大乘期";
+        else if (level >= 1001) return "合体期";
+        else if (level >= 701) return "化神期";
+        else if (level >= 401) return "元婴期";
+        else if (level >= 201) return "金丹期";
+        else if (level >= 101) return "筑基期";
+        else return "练气期";
+    }
+
+    private static long loopExpBetween(int from, int to) {
+        long total = 0L;
+        for (int level = from; level < to; level++) {
+            total += level * 100L;
+        }
+        return total;
+    }
+
+    private static final class LoopResult {
+        private final int level;
+        private final long exp;
+        private final String realm;
+
+        LoopResult(int level, long exp, String realm) {
+            this.level = level;
+            this.exp = exp;
+            this.realm = realm;
+        }
+    }
+}